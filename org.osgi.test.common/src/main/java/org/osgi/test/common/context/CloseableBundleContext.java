@@ -19,34 +19,37 @@
 package org.osgi.test.common.context;
 
 import static java.util.Objects.requireNonNull;
-import static java.util.stream.Collectors.toMap;
+import static java.util.stream.Collectors.toList;
 import static org.osgi.test.common.exceptions.ConsumerWithException.asConsumer;
 import static org.osgi.test.common.exceptions.ConsumerWithException.asConsumerIgnoreException;
 
 import java.io.InputStream;
-import java.lang.invoke.MethodHandle;
-import java.lang.invoke.MethodHandles;
 import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.lang.reflect.Modifier;
 import java.lang.reflect.Proxy;
-import java.util.Arrays;
-import java.util.Collections;
+import java.time.Duration;
+import java.util.Collection;
 import java.util.Dictionary;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
-import java.util.function.BiFunction;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Consumer;
-import java.util.function.Function;
 import java.util.function.Predicate;
 
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.BundleException;
 import org.osgi.framework.BundleListener;
+import org.osgi.framework.Constants;
 import org.osgi.framework.FrameworkListener;
 import org.osgi.framework.InvalidSyntaxException;
 import org.osgi.framework.ServiceFactory;
@@ -54,6 +57,8 @@ import org.osgi.framework.ServiceListener;
 import org.osgi.framework.ServiceObjects;
 import org.osgi.framework.ServiceReference;
 import org.osgi.framework.ServiceRegistration;
+import org.osgi.framework.wiring.FrameworkWiring;
+import org.osgi.test.common.context.ResourceReport.Kind;
 import org.osgi.test.common.exceptions.Exceptions;
 
 public class CloseableBundleContext implements AutoCloseable, InvocationHandler {
@@ -65,90 +70,243 @@ public class CloseableBundleContext implements AutoCloseable, InvocationHandler
 		.getState() & Bundle.UNINSTALLED) != Bundle.UNINSTALLED;
 	private static final Consumer<Bundle>									uninstallBundle					= asConsumer(
 		Bundle::uninstall);
+	private static final long												REFRESH_TIMEOUT					= 10_000L;
 	static final ClassLoader												PROXY_CLASS_LOADER				= CloseableBundleContext.class
 		.getClassLoader();
 
+	private final CloseableBundleContext									parent;
 	private final BundleContext												bundleContext;
-	private final Set<ServiceRegistration<?>>								regs							= Collections
-		.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<>()));
-	private final Set<FrameworkListener>									fwListeners						= Collections
-		.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<>()));
-	private final Set<ServiceListener>										sListeners						= Collections
-		.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<>()));
-	private final Set<BundleListener>										bListeners						= Collections
-		.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<>()));
-	private final Set<Bundle>												bundlesToBeUninstalledOnClose	= Collections
-		.synchronizedSet(new HashSet<>());
-	private final Map<ServiceReference<?>, Integer>							services						= Collections
-		.synchronizedMap(new HashMap<>());
-	private final Set<ServiceObjects<?>>									serviceobjects					= Collections
-		.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<>()));
-
-	private static final Map<Method, BiFunction<Object, Object[], Object>>	methods;
+	// The ledgers are concurrent so that tests running in parallel against a
+	// shared bundle context do not serialize on a common monitor
+	private final IdentityLedger<CloseableBundleContext>					children						= new IdentityLedger<>();
+	private final IdentityLedger<ServiceRegistration<?>>					regs							= new IdentityLedger<>();
+	private final IdentityLedger<FrameworkListener>							fwListeners						= new IdentityLedger<>();
+	private final IdentityLedger<ServiceListener>							sListeners						= new IdentityLedger<>();
+	private final IdentityLedger<BundleListener>							bListeners						= new IdentityLedger<>();
+	private final IdentityLedger<Bundle>									bundlesToBeUninstalledOnClose	= new IdentityLedger<>();
+	private final ConcurrentMap<ServiceReference<?>, UseCount>				services						= new ConcurrentHashMap<>();
+	private final IdentityLedger<ServiceObjects<?>>							serviceobjects					= new IdentityLedger<>();
+	private final LongAdder[]												acquired						= new LongAdder[Kind
+		.values().length];
+	private final Consumer<? super ResourceReport>							reporter;
+	private final int														stackTraceSampling;
+	private final AtomicLong												samples							= new AtomicLong();
+	private volatile boolean												servicesClosed;
+
+	/**
+	 * Pre-bound invokers of the methods of the proxy. They call the bundle
+	 * context or the closeable bundle context directly, without reflection.
+	 */
+	private static final Map<Method, Invoker>								methods							= new HashMap<>();
 	static {
-		methods = Arrays.stream(BundleContext.class.getMethods())
-			.collect(toMap(Function.identity(), method -> {
-				try {
-					return invoker(CloseableBundleContext.class.getMethod(method.getName(), method.getParameterTypes()),
-						CloseableBundleContext::closeableBundleContext);
-				} catch (NoSuchMethodException e) {
-					return invoker(method, CloseableBundleContext::realBundleContext);
-				}
-			}));
+		bind(Object.class, "toString", (c, proxy, args) -> "CloseableBundleContext[" + System.identityHashCode(proxy)
+			+ "]:" + c.bundleContext.toString());
+		bind(Object.class, "hashCode", (c, proxy, args) -> c.bundleContext.hashCode());
+		bind(Object.class, "equals", (c, proxy, args) -> {
+			BundleContext real = realBundleContext(args[0]);
+			return c.bundleContext.equals((real != null) ? real : args[0]);
+		}, Object.class);
+		bind(AutoCloseable.class, "close", (c, proxy, args) -> {
+			c.close();
+			return null;
+		});
+		bind("getProperty", (c, proxy, args) -> c.bundleContext.getProperty((String) args[0]), String.class);
+		bind("getBundle", (c, proxy, args) -> c.bundleContext.getBundle());
+		bind("installBundle", (c, proxy, args) -> c.installBundle((String) args[0], (InputStream) args[1]),
+			String.class, InputStream.class);
+		bind("installBundle", (c, proxy, args) -> c.installBundle((String) args[0]), String.class);
+		bind("getBundle", (c, proxy, args) -> c.bundleContext.getBundle((Long) args[0]), long.class);
+		bind("getBundles", (c, proxy, args) -> c.bundleContext.getBundles());
+		bind("addServiceListener", (c, proxy, args) -> {
+			c.addServiceListener((ServiceListener) args[0], (String) args[1]);
+			return null;
+		}, ServiceListener.class, String.class);
+		bind("addServiceListener", (c, proxy, args) -> {
+			c.addServiceListener((ServiceListener) args[0]);
+			return null;
+		}, ServiceListener.class);
+		bind("removeServiceListener", (c, proxy, args) -> {
+			c.removeServiceListener((ServiceListener) args[0]);
+			return null;
+		}, ServiceListener.class);
+		bind("addBundleListener", (c, proxy, args) -> {
+			c.addBundleListener((BundleListener) args[0]);
+			return null;
+		}, BundleListener.class);
+		bind("removeBundleListener", (c, proxy, args) -> {
+			c.removeBundleListener((BundleListener) args[0]);
+			return null;
+		}, BundleListener.class);
+		bind("addFrameworkListener", (c, proxy, args) -> {
+			c.addFrameworkListener((FrameworkListener) args[0]);
+			return null;
+		}, FrameworkListener.class);
+		bind("removeFrameworkListener", (c, proxy, args) -> {
+			c.removeFrameworkListener((FrameworkListener) args[0]);
+			return null;
+		}, FrameworkListener.class);
+		bind("registerService",
+			(c, proxy, args) -> c.registerService((String[]) args[0], args[1], dictionary(args[2])), String[].class,
+			Object.class, Dictionary.class);
+		bind("registerService",
+			(c, proxy, args) -> c.registerService((String) args[0], args[1], dictionary(args[2])), String.class,
+			Object.class, Dictionary.class);
+		bind("registerService", (c, proxy, args) -> c.registerService(type(args[0]), args[1], dictionary(args[2])),
+			Class.class, Object.class, Dictionary.class);
+		bind("registerService", (c, proxy, args) -> registerFactory(c, type(args[0]), factory(args[1]), args[2]),
+			Class.class, ServiceFactory.class, Dictionary.class);
+		bind("getServiceReferences",
+			(c, proxy, args) -> c.bundleContext.getServiceReferences((String) args[0], (String) args[1]),
+			String.class, String.class);
+		bind("getAllServiceReferences",
+			(c, proxy, args) -> c.bundleContext.getAllServiceReferences((String) args[0], (String) args[1]),
+			String.class, String.class);
+		bind("getServiceReference", (c, proxy, args) -> c.bundleContext.getServiceReference((String) args[0]),
+			String.class);
+		bind("getServiceReference", (c, proxy, args) -> c.bundleContext.getServiceReference((Class<?>) args[0]),
+			Class.class);
+		bind("getServiceReferences",
+			(c, proxy, args) -> c.bundleContext.getServiceReferences((Class<?>) args[0], (String) args[1]),
+			Class.class, String.class);
+		bind("getService", (c, proxy, args) -> c.getService((ServiceReference<?>) args[0]), ServiceReference.class);
+		bind("ungetService", (c, proxy, args) -> c.ungetService((ServiceReference<?>) args[0]),
+			ServiceReference.class);
+		bind("getServiceObjects", (c, proxy, args) -> c.getServiceObjects((ServiceReference<?>) args[0]),
+			ServiceReference.class);
+		bind("getDataFile", (c, proxy, args) -> c.bundleContext.getDataFile((String) args[0]), String.class);
+		bind("createFilter", (c, proxy, args) -> c.bundleContext.createFilter((String) args[0]), String.class);
+		bind("getBundle", (c, proxy, args) -> c.bundleContext.getBundle((String) args[0]), String.class);
+	}
+
+	@FunctionalInterface
+	interface Invoker {
+		Object invoke(CloseableBundleContext closeableBundleContext, Object proxy, Object[] args) throws Throwable;
+	}
+
+	private static void bind(String name, Invoker invoker, Class<?>... parameterTypes) {
+		bind(BundleContext.class, name, invoker, parameterTypes);
+	}
+
+	private static void bind(Class<?> type, String name, Invoker invoker, Class<?>... parameterTypes) {
 		try {
-			methods.put(AutoCloseable.class.getMethod("close"), CloseableBundleContext::delegatedClose);
-			methods.put(Object.class.getMethod("toString"), CloseableBundleContext::delegatedToString);
-			methods.put(Object.class.getMethod("hashCode"), CloseableBundleContext::delegatedHashCode);
-			methods.put(Object.class.getMethod("equals", Object.class), CloseableBundleContext::delegatedEquals);
+			methods.put(type.getMethod(name, parameterTypes), invoker);
 		} catch (NoSuchMethodException e) {
 			throw Exceptions.duck(e);
 		}
 	}
 
-	static BiFunction<Object, Object[], Object> invoker(Method method, Function<? super Object, Object> mapper) {
-		try {
-			MethodHandle mh = MethodHandles.publicLookup()
-				.unreflect(method);
-			if (Modifier.isStatic(method.getModifiers())) {
-				return (Object proxy, Object[] args) -> {
-					try {
-						return mh.invokeWithArguments(args);
-					} catch (Throwable e) {
-						throw Exceptions.duck(e);
-					}
-				};
-			} else {
-				return (Object proxy, Object[] args) -> {
-					try {
-						return mh.bindTo(mapper.apply(proxy))
-							.invokeWithArguments(args);
-					} catch (Throwable e) {
-						throw Exceptions.duck(e);
-					}
-				};
-			}
-		} catch (Exception e) {
-			throw Exceptions.duck(e);
-		}
+	@SuppressWarnings("unchecked")
+	private static Dictionary<String, ?> dictionary(Object properties) {
+		return (Dictionary<String, ?>) properties;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Class<Object> type(Object clazz) {
+		return (Class<Object>) clazz;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static ServiceFactory<Object> factory(Object factory) {
+		return (ServiceFactory<Object>) factory;
+	}
+
+	private static <S> ServiceRegistration<S> registerFactory(CloseableBundleContext c, Class<S> clazz,
+		ServiceFactory<S> factory, Object properties) {
+		return c.registerService(clazz, factory, dictionary(properties));
 	}
 
+	/**
+	 * Return a bundle context which delegates to the specified bundle context
+	 * and which releases the resources acquired through it when it is closed.
+	 * <p>
+	 * The returned bundle context implements {@link AutoCloseable}. Its
+	 * methods are dispatched to pre-bound invokers which call the specified
+	 * bundle context directly, without reflection. Only methods which a later
+	 * framework version adds to {@link BundleContext} are called reflectively.
+	 * <p>
+	 * If the specified bundle context is itself a closeable bundle context, the
+	 * returned bundle context is a nested scope of it. A nested scope calls the
+	 * real bundle context directly, however deeply scopes are nested, and
+	 * records the resources acquired through it in its own ledger. Closing a
+	 * scope closes its nested scopes which are still open.
+	 *
+	 * @param bundleContext the bundle context to delegate to
+	 * @return the closeable bundle context
+	 */
 	public static BundleContext proxy(BundleContext bundleContext) {
+		return proxy(bundleContext, null, 0);
+	}
+
+	/**
+	 * Return a bundle context which delegates to the specified bundle context
+	 * and which reports the resources acquired through it when it is closed.
+	 *
+	 * @param bundleContext the bundle context to delegate to
+	 * @param reporter receives the {@link ResourceReport} of the returned
+	 *            bundle context when it is closed, or {@code null}
+	 * @param stackTraceSampling capture the stack trace of every n-th
+	 *            acquisition of a resource for the report, or {@code 0} to
+	 *            capture no stack traces
+	 * @return the closeable bundle context
+	 * @see #proxy(BundleContext)
+	 * @since 1.2
+	 */
+	public static BundleContext proxy(BundleContext bundleContext, Consumer<? super ResourceReport> reporter,
+		int stackTraceSampling) {
+		CloseableBundleContext closeableBundleContext = new CloseableBundleContext(bundleContext, reporter,
+			stackTraceSampling);
 		return (BundleContext) Proxy.newProxyInstance(PROXY_CLASS_LOADER, new Class<?>[] {
 			BundleContext.class, AutoCloseable.class
-		}, new CloseableBundleContext(bundleContext));
+		}, closeableBundleContext);
 	}
 
 	public CloseableBundleContext(BundleContext bundleContext) {
-		this.bundleContext = requireNonNull(bundleContext);
+		this(bundleContext, null, 0);
+	}
+
+	/**
+	 * @see #proxy(BundleContext, Consumer, int)
+	 * @since 1.2
+	 */
+	public CloseableBundleContext(BundleContext bundleContext, Consumer<? super ResourceReport> reporter,
+		int stackTraceSampling) {
+		requireNonNull(bundleContext);
+		if (stackTraceSampling < 0) {
+			throw new IllegalArgumentException("stackTraceSampling must be zero or greater");
+		}
+		this.reporter = reporter;
+		this.stackTraceSampling = stackTraceSampling;
+		for (int i = 0; i < acquired.length; i++) {
+			acquired[i] = new LongAdder();
+		}
+		parent = closeableBundleContext(bundleContext);
+		if (parent != null) {
+			// Delegate straight to the real bundle context of the parent scope
+			this.bundleContext = parent.bundleContext;
+			if (!parent.children.add(this)) {
+				// a scope of a closed scope
+				close();
+			}
+		} else {
+			this.bundleContext = bundleContext;
+		}
 	}
 
 	@Override
 	public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
-		BiFunction<Object, Object[], Object> invoker = methods.get(method);
-		if (invoker == null) {
-			throw new IllegalArgumentException();
+		Invoker invoker = methods.get(method);
+		if (invoker != null) {
+			return invoker.invoke(this, proxy, args);
+		}
+		if (method.getDeclaringClass() != BundleContext.class) {
+			throw new IllegalArgumentException(method.toString());
+		}
+		// A method added by a later framework version
+		try {
+			return method.invoke(bundleContext, args);
+		} catch (InvocationTargetException e) {
+			throw e.getCause();
 		}
-		return invoker.apply(proxy, args);
 	}
 
 	private static CloseableBundleContext closeableBundleContext(Object proxy) {
@@ -164,70 +322,195 @@ public class CloseableBundleContext implements AutoCloseable, InvocationHandler
 		return null;
 	}
 
-	private static BundleContext realBundleContext(Object proxy) {
+	static BundleContext realBundleContext(Object proxy) {
 		CloseableBundleContext closeableBundleContext = closeableBundleContext(proxy);
 		if (closeableBundleContext == null) {
 			return null;
 		}
-		BundleContext real = closeableBundleContext.bundleContext;
-		while ((closeableBundleContext = closeableBundleContext(real)) != null) {
-			real = closeableBundleContext.bundleContext;
-		}
-		return real;
-	}
-
-	private static Void delegatedClose(Object proxy, Object[] args) {
-		closeableBundleContext(proxy).close();
-		return null;
+		return closeableBundleContext.bundleContext;
 	}
 
+	/**
+	 * Release all resources acquired through this bundle context.
+	 * <p>
+	 * Open nested scopes are closed first. All installed bundles are
+	 * uninstalled and then refreshed with a single
+	 * {@link FrameworkWiring#refreshBundles} call, if their wirings are still
+	 * in use.
+	 * <p>
+	 * If this bundle context reports its resources, the report also contains
+	 * the time spent in each phase of closing and whether the refresh of the
+	 * uninstalled bundles timed out.
+	 */
 	@Override
 	public void close() {
-		bundlesToBeUninstalledOnClose.stream()
-			.filter(installed)
-			.forEach(uninstallBundle);
-		bundlesToBeUninstalledOnClose.clear();
+		ResourceReport.Builder report = (reporter != null) ? new ResourceReport.Builder() : null;
+		phase(report, "nested", this::closeNested);
+		if (report != null) {
+			leaks(report);
+		}
+		phase(report, "bundles", () -> {
+			if (!uninstallBundles() && (report != null)) {
+				report.refreshTimedOut();
+			}
+		});
+		phase(report, "services", this::ungetServices);
+		phase(report, "serviceObjects", () -> serviceobjects.close()
+			.stream()
+			.map(AutoCloseable.class::cast)
+			.forEach(autoclose));
+		phase(report, "registrations", () -> regs.close()
+			.forEach(unregisterService));
+		phase(report, "listeners", () -> {
+			bListeners.close()
+				.forEach(bundleContext::removeBundleListener);
+			sListeners.close()
+				.forEach(bundleContext::removeServiceListener);
+			fwListeners.close()
+				.forEach(bundleContext::removeFrameworkListener);
+		});
+		if (report != null) {
+			reporter.accept(report.build());
+		}
+	}
 
+	private void leaks(ResourceReport.Builder builder) {
+		for (Kind kind : Kind.values()) {
+			builder.acquired(kind, acquired[kind.ordinal()].sum());
+		}
+		bundlesToBeUninstalledOnClose.forEach((bundle, origin) -> {
+			if (installed.test(bundle)) {
+				String symbolicName = bundle.getSymbolicName();
+				builder.leaked(Kind.BUNDLE, (symbolicName != null) ? symbolicName : bundle.getLocation(), 1L,
+					origin);
+			}
+		});
 		services.forEach((reference, useCount) -> {
-			for (int i = useCount; i > 0; i--) {
-				bundleContext.ungetService(reference);
+			int count = useCount.get();
+			if (count > 0) {
+				builder.leaked(Kind.SERVICE_GET, objectClass(reference), count, useCount.origin);
 			}
 		});
-		services.clear();
+		serviceobjects.forEach((so, origin) -> builder.leaked(Kind.SERVICE_OBJECTS,
+			objectClass(so.getServiceReference()), 1L, origin));
+		regs.forEach((reg, origin) -> {
+			ServiceReference<?> reference;
+			try {
+				reference = reg.getReference();
+			} catch (IllegalStateException unregistered) {
+				return;
+			}
+			builder.leaked(Kind.SERVICE_REGISTRATION, objectClass(reference), 1L, origin);
+		});
+		sListeners.forEach((listener, origin) -> builder.leaked(Kind.SERVICE_LISTENER, listener.getClass()
+			.getName(), 1L, origin));
+		bListeners.forEach((listener, origin) -> builder.leaked(Kind.BUNDLE_LISTENER, listener.getClass()
+			.getName(), 1L, origin));
+		fwListeners.forEach((listener, origin) -> builder.leaked(Kind.FRAMEWORK_LISTENER, listener.getClass()
+			.getName(), 1L, origin));
+	}
 
-		serviceobjects.stream()
-			.map(AutoCloseable.class::cast)
-			.forEach(autoclose);
-		serviceobjects.clear();
+	private static String objectClass(ServiceReference<?> reference) {
+		Object objectClass = (reference != null) ? reference.getProperty(Constants.OBJECTCLASS) : null;
+		if (objectClass instanceof String[]) {
+			return String.join(",", (String[]) objectClass);
+		}
+		return String.valueOf(reference);
+	}
 
-		regs.forEach(unregisterService);
-		regs.clear();
+	/**
+	 * Count the acquisition of a resource and return its stack trace if it is
+	 * sampled.
+	 */
+	private Throwable acquire(Kind kind) {
+		acquired[kind.ordinal()].increment();
+		if ((stackTraceSampling > 0) && ((samples.incrementAndGet() % stackTraceSampling) == 0L)) {
+			return new Throwable(kind.toString());
+		}
+		return null;
+	}
 
-		bListeners.forEach(bundleContext::removeBundleListener);
-		bListeners.clear();
+	/**
+	 * Record a resource acquired through this bundle context, or release it
+	 * right away if this bundle context was closed meanwhile.
+	 */
+	private <E> void record(IdentityLedger<E> ledger, E element, Kind kind, Consumer<? super E> release) {
+		if (!ledger.add(element, acquire(kind))) {
+			release.accept(element);
+		}
+	}
 
-		sListeners.forEach(bundleContext::removeServiceListener);
-		sListeners.clear();
+	private static void phase(ResourceReport.Builder report, String name, Runnable action) {
+		if (report == null) {
+			action.run();
+			return;
+		}
+		long start = System.nanoTime();
+		action.run();
+		report.teardown(name, Duration.ofNanos(System.nanoTime() - start));
+	}
 
-		fwListeners.forEach(bundleContext::removeFrameworkListener);
-		fwListeners.clear();
+	private void closeNested() {
+		children.close()
+			.forEach(CloseableBundleContext::close);
+		if (parent != null) {
+			parent.children.remove(this);
+		}
 	}
 
-	private static String delegatedToString(Object proxy, Object[] args) {
-		return "CloseableBundleContext[" + System.identityHashCode(proxy) + "]:" + realBundleContext(proxy).toString();
+	/**
+	 * @return {@code false} if the refresh of the uninstalled bundles did not
+	 *         complete in time.
+	 */
+	private boolean uninstallBundles() {
+		List<Bundle> uninstalled = bundlesToBeUninstalledOnClose.close()
+			.stream()
+			.filter(installed)
+			.collect(toList());
+		uninstalled.forEach(uninstallBundle);
+		return uninstalled.isEmpty() || refreshBundles(uninstalled);
 	}
 
-	private static int delegatedHashCode(Object proxy, Object[] args) {
-		return realBundleContext(proxy).hashCode();
+	/**
+	 * Refresh the uninstalled bundles whose wirings are still in use with a
+	 * single refresh operation. Nothing is refreshed if the refresh would
+	 * affect the bundle of this bundle context.
+	 *
+	 * @return {@code false} if the refresh did not complete in time.
+	 */
+	private boolean refreshBundles(Collection<Bundle> uninstalled) {
+		Bundle systemBundle = bundleContext.getBundle(Constants.SYSTEM_BUNDLE_LOCATION);
+		FrameworkWiring frameworkWiring = (systemBundle != null) ? systemBundle.adapt(FrameworkWiring.class) : null;
+		if (frameworkWiring == null) {
+			return true;
+		}
+		Collection<Bundle> pending = new HashSet<>(frameworkWiring.getRemovalPendingBundles());
+		pending.retainAll(uninstalled);
+		if (pending.isEmpty() || frameworkWiring.getDependencyClosure(pending)
+			.contains(bundleContext.getBundle())) {
+			return true;
+		}
+		CountDownLatch refreshed = new CountDownLatch(1);
+		frameworkWiring.refreshBundles(pending, event -> refreshed.countDown());
+		try {
+			return refreshed.await(REFRESH_TIMEOUT, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread()
+				.interrupt();
+			return false;
+		}
 	}
 
-	private static boolean delegatedEquals(Object proxy, Object[] args) {
-		BundleContext bundleContext = realBundleContext(proxy);
-		BundleContext real = realBundleContext(args[0]);
-		if (real != null) {
-			return bundleContext.equals(real);
+	private void ungetServices() {
+		servicesClosed = true;
+		for (ServiceReference<?> reference : services.keySet()) {
+			UseCount useCount = services.remove(reference);
+			if (useCount != null) {
+				for (int i = useCount.getAndSet(0); i > 0; i--) {
+					bundleContext.ungetService(reference);
+				}
+			}
 		}
-		return bundleContext.equals(args[0]);
 	}
 
 	public Bundle installBundle(String location, InputStream input) throws BundleException {
@@ -240,7 +523,7 @@ public class CloseableBundleContext implements AutoCloseable, InvocationHandler
 		// before. Same in installBundle(String location)
 		if (bundle == null) {
 			bundle = bundleContext.installBundle(location, input);
-			bundlesToBeUninstalledOnClose.add(bundle);
+			record(bundlesToBeUninstalledOnClose, bundle, Kind.BUNDLE, uninstallBundle);
 		}
 		return bundle;
 	}
@@ -251,95 +534,127 @@ public class CloseableBundleContext implements AutoCloseable, InvocationHandler
 		// see installBundle(String location, InputStream input)
 		if (bundle == null) {
 			bundle = bundleContext.installBundle(location);
-			bundlesToBeUninstalledOnClose.add(bundle);
+			record(bundlesToBeUninstalledOnClose, bundle, Kind.BUNDLE, uninstallBundle);
 		}
 		return bundle;
 	}
 
 	public void addServiceListener(ServiceListener listener, String filter) throws InvalidSyntaxException {
 		bundleContext.addServiceListener(listener, filter);
-		sListeners.add(listener);
+		record(sListeners, listener, Kind.SERVICE_LISTENER, bundleContext::removeServiceListener);
 	}
 
 	public void addServiceListener(ServiceListener listener) {
 		bundleContext.addServiceListener(listener);
-		sListeners.add(listener);
+		record(sListeners, listener, Kind.SERVICE_LISTENER, bundleContext::removeServiceListener);
 	}
 
 	public void removeServiceListener(ServiceListener listener) {
 		bundleContext.removeServiceListener(listener);
-		sListeners.remove(listener);
+		// the listener may have been added in an enclosing scope
+		for (CloseableBundleContext scope = this; scope != null; scope = scope.parent) {
+			scope.sListeners.remove(listener);
+		}
 	}
 
 	public void addBundleListener(BundleListener listener) {
 		bundleContext.addBundleListener(listener);
-		bListeners.add(listener);
+		record(bListeners, listener, Kind.BUNDLE_LISTENER, bundleContext::removeBundleListener);
 	}
 
 	public void removeBundleListener(BundleListener listener) {
 		bundleContext.removeBundleListener(listener);
-		bListeners.remove(listener);
+		for (CloseableBundleContext scope = this; scope != null; scope = scope.parent) {
+			scope.bListeners.remove(listener);
+		}
 	}
 
 	public void addFrameworkListener(FrameworkListener listener) {
 		bundleContext.addFrameworkListener(listener);
-		fwListeners.add(listener);
+		record(fwListeners, listener, Kind.FRAMEWORK_LISTENER, bundleContext::removeFrameworkListener);
 	}
 
 	public void removeFrameworkListener(FrameworkListener listener) {
 		bundleContext.removeFrameworkListener(listener);
-		fwListeners.remove(listener);
+		for (CloseableBundleContext scope = this; scope != null; scope = scope.parent) {
+			scope.fwListeners.remove(listener);
+		}
 	}
 
 	public <S> S getService(ServiceReference<S> reference) {
 		S service = bundleContext.getService(reference);
-		Integer count = services.merge(reference, 1, (oldValue, dummy) -> oldValue + 1);
+		UseCount useCount = services.get(reference);
+		if (useCount == null) {
+			useCount = services.computeIfAbsent(reference, key -> new UseCount());
+		}
+		useCount.incrementAndGet();
+		Throwable origin = acquire(Kind.SERVICE_GET);
+		if (origin != null) {
+			useCount.origin = origin;
+		}
+		// whoever takes the use back from the count releases it
+		if (servicesClosed && useCount.decrementIfPositive()) {
+			bundleContext.ungetService(reference);
+		}
 		return service;
 	}
 
 	public <S> ServiceObjects<S> getServiceObjects(ServiceReference<S> reference) {
 		final ServiceObjects<S> so = bundleContext.getServiceObjects(reference);
 		ServiceObjects<S> serviceObjects = CloseableServiceObjects.proxy(so);
-		serviceobjects.add(serviceObjects);
+		record(serviceobjects, serviceObjects, Kind.SERVICE_OBJECTS, o -> autoclose.accept((AutoCloseable) o));
 		return serviceObjects;
 	}
 
 	public ServiceRegistration<?> registerService(String[] clazzes, Object service, Dictionary<String, ?> properties) {
 		ServiceRegistration<?> reg = bundleContext.registerService(clazzes, service, properties);
-		regs.add(reg);
+		record(regs, reg, Kind.SERVICE_REGISTRATION, unregisterService);
 		return reg;
 	}
 
 	public ServiceRegistration<?> registerService(String clazz, Object service, Dictionary<String, ?> properties) {
 		ServiceRegistration<?> reg = bundleContext.registerService(clazz, service, properties);
-		regs.add(reg);
+		record(regs, reg, Kind.SERVICE_REGISTRATION, unregisterService);
 		return reg;
 	}
 
 	public <S> ServiceRegistration<S> registerService(Class<S> clazz, S service, Dictionary<String, ?> properties) {
 		ServiceRegistration<S> reg = bundleContext.registerService(clazz, service, properties);
-		regs.add(reg);
+		record(regs, reg, Kind.SERVICE_REGISTRATION, unregisterService);
 		return reg;
 	}
 
 	public <S> ServiceRegistration<S> registerService(Class<S> clazz, ServiceFactory<S> factory,
 		Dictionary<String, ?> properties) {
 		ServiceRegistration<S> reg = bundleContext.registerService(clazz, factory, properties);
-		regs.add(reg);
+		record(regs, reg, Kind.SERVICE_REGISTRATION, unregisterService);
 		return reg;
 	}
 
 	public boolean ungetService(ServiceReference<?> reference) {
-		Integer count = services.compute(reference, (key, oldValue) -> {
-			if ((oldValue == null) || (oldValue == 0)) {
-				return null;
-			}
-			return oldValue - 1;
-		});
-		if (count != null) {
+		UseCount useCount = services.get(reference);
+		if (useCount == null) {
+			return false;
+		}
+		if (useCount.decrementIfPositive()) {
 			bundleContext.ungetService(reference);
 			return true;
 		}
 		return false;
 	}
+
+	@SuppressWarnings("serial")
+	static final class UseCount extends AtomicInteger {
+		// the most recently sampled acquisition site
+		volatile Throwable origin;
+
+		boolean decrementIfPositive() {
+			for (int count; (count = get()) > 0;) {
+				if (compareAndSet(count, count - 1)) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
 }
@@ -20,10 +20,12 @@ package org.osgi.test.common.context;
 
 import static java.util.stream.Collectors.toMap;
 import static org.osgi.test.common.context.CloseableBundleContext.PROXY_CLASS_LOADER;
-import static org.osgi.test.common.context.CloseableBundleContext.invoker;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.lang.reflect.Proxy;
 import java.util.Arrays;
 import java.util.Collections;
@@ -59,6 +61,33 @@ public class CloseableServiceObjects<S> implements AutoCloseable, InvocationHand
 		}
 	}
 
+	static BiFunction<Object, Object[], Object> invoker(Method method, Function<? super Object, Object> mapper) {
+		try {
+			MethodHandle mh = MethodHandles.publicLookup()
+				.unreflect(method);
+			if (Modifier.isStatic(method.getModifiers())) {
+				return (Object proxy, Object[] args) -> {
+					try {
+						return mh.invokeWithArguments(args);
+					} catch (Throwable e) {
+						throw Exceptions.duck(e);
+					}
+				};
+			} else {
+				return (Object proxy, Object[] args) -> {
+					try {
+						return mh.bindTo(mapper.apply(proxy))
+							.invokeWithArguments(args);
+					} catch (Throwable e) {
+						throw Exceptions.duck(e);
+					}
+				};
+			}
+		} catch (Exception e) {
+			throw Exceptions.duck(e);
+		}
+	}
+
 	private final ServiceObjects<S>	serviceObjects;
 	private final Map<S, Integer>	instances	= Collections.synchronizedMap(new IdentityHashMap<>());
 
@@ -0,0 +1,425 @@
+/*******************************************************************************
+ * Copyright (c) Contributors to the Eclipse Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+
+package org.osgi.test.common.context;
+
+import static java.util.Collections.unmodifiableList;
+import static java.util.Objects.requireNonNull;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleException;
+import org.osgi.framework.Constants;
+import org.osgi.framework.InvalidSyntaxException;
+import org.osgi.framework.ServiceReference;
+import org.osgi.framework.startlevel.BundleStartLevel;
+import org.osgi.framework.startlevel.FrameworkStartLevel;
+import org.osgi.framework.wiring.BundleRevision;
+import org.osgi.framework.wiring.FrameworkWiring;
+import org.osgi.test.common.exceptions.Exceptions;
+
+/**
+ * A snapshot of the bundle states, start levels and registered services of a
+ * framework.
+ * <p>
+ * A snapshot can later {@link #restore() restore} the framework to the
+ * snapshot state. Only the differences are undone: bundles installed since
+ * the snapshot are uninstalled, changed start levels are reset and bundles
+ * which were started or stopped are stopped or started again. A bundle whose
+ * state in the snapshot came from the start level rather than from a
+ * persistent start or stop is only started or stopped transiently, so its
+ * autostart setting is kept. Services are
+ * not unregistered directly since only their registering bundle can do that,
+ * but services registered by bundles which are stopped or uninstalled by the
+ * restore go away with them. The system bundle and the bundle of the bundle
+ * context used to take the snapshot are never stopped or uninstalled.
+ * <p>
+ * Bundles uninstalled since the snapshot cannot be reinstalled and are only
+ * reported.
+ *
+ * @since 1.2
+ */
+public final class FrameworkSnapshot {
+	private static final long				TIMEOUT	= 10_000L;
+
+	private final BundleContext				bundleContext;
+	private final Map<Long, BundleSnapshot>	bundles;
+	private final int						frameworkStartLevel;
+	private final Map<String, Integer>		services;
+
+	private FrameworkSnapshot(BundleContext bundleContext, Map<Long, BundleSnapshot> bundles,
+		int frameworkStartLevel, Map<String, Integer> services) {
+		this.bundleContext = bundleContext;
+		this.bundles = bundles;
+		this.frameworkStartLevel = frameworkStartLevel;
+		this.services = services;
+	}
+
+	/**
+	 * Take a snapshot of the framework of the specified bundle context.
+	 *
+	 * @param bundleContext a bundle context of the framework
+	 * @return the snapshot
+	 */
+	public static FrameworkSnapshot take(BundleContext bundleContext) {
+		requireNonNull(bundleContext);
+		Map<Long, BundleSnapshot> bundles = new HashMap<>();
+		for (Bundle bundle : bundleContext.getBundles()) {
+			bundles.put(bundle.getBundleId(), new BundleSnapshot(bundle));
+		}
+		return new FrameworkSnapshot(bundleContext, bundles, frameworkStartLevel(bundleContext).getStartLevel(),
+			serviceKeys(allServices(bundleContext)));
+	}
+
+	/**
+	 * Compute the differences between the current state of the framework and
+	 * this snapshot.
+	 *
+	 * @return the differences
+	 */
+	public Diff diff() {
+		Diff diff = new Diff();
+		Set<Long> seen = new HashSet<>();
+		for (Bundle bundle : bundleContext.getBundles()) {
+			long id = bundle.getBundleId();
+			seen.add(id);
+			BundleSnapshot snapshot = bundles.get(id);
+			if (snapshot == null) {
+				if (isProtected(bundle)) {
+					continue;
+				}
+				diff.installed.add(bundle);
+				continue;
+			}
+			if (!isProtected(bundle) && !snapshot.fragment && snapshot.differs(bundle)) {
+				diff.stateChanged.add(bundle);
+			}
+			BundleStartLevel startLevel = bundle.adapt(BundleStartLevel.class);
+			if ((startLevel != null) && (startLevel.getStartLevel() != snapshot.startLevel)) {
+				diff.startLevelChanged.add(bundle);
+			}
+		}
+		bundles.forEach((id, snapshot) -> {
+			if (!seen.contains(id)) {
+				diff.uninstalled.add(snapshot.location);
+			}
+		});
+		diff.frameworkStartLevelChanged = frameworkStartLevel(bundleContext).getStartLevel() != frameworkStartLevel;
+		Map<String, Integer> remaining = new HashMap<>(services);
+		for (ServiceReference<?> reference : allServices(bundleContext)) {
+			String key = serviceKey(reference);
+			Integer count = remaining.get(key);
+			if (count == null) {
+				diff.registered.add(reference);
+			} else if (count == 1) {
+				remaining.remove(key);
+			} else {
+				remaining.put(key, count - 1);
+			}
+		}
+		diff.unregistered = remaining.values()
+			.stream()
+			.mapToInt(Integer::intValue)
+			.sum();
+		return diff;
+	}
+
+	/**
+	 * Restore the framework to the state of this snapshot, changing only what
+	 * differs.
+	 *
+	 * @return the differences found before the restore
+	 */
+	public Diff restore() {
+		Diff diff = diff();
+		if (diff.isEmpty()) {
+			return diff;
+		}
+		for (Bundle bundle : diff.installed) {
+			try {
+				bundle.uninstall();
+			} catch (IllegalStateException alreadyUninstalled) {
+				// ignore
+			} catch (BundleException e) {
+				throw Exceptions.duck(e);
+			}
+		}
+		if (!diff.installed.isEmpty()) {
+			refresh(diff.installed);
+		}
+		// Start levels first, so that only the bundles whose state still
+		// differs afterwards are started or stopped explicitly
+		if (diff.frameworkStartLevelChanged) {
+			setFrameworkStartLevel();
+		}
+		for (Bundle bundle : diff.startLevelChanged) {
+			bundle.adapt(BundleStartLevel.class)
+				.setStartLevel(bundles.get(bundle.getBundleId()).startLevel);
+		}
+		if (!diff.startLevelChanged.isEmpty()) {
+			// Setting the unchanged framework start level waits for the
+			// bundle start level changes to be processed
+			setFrameworkStartLevel();
+		}
+		for (Bundle bundle : diff.stateChanged) {
+			BundleSnapshot snapshot = bundles.get(bundle.getBundleId());
+			if (snapshot.differs(bundle)) {
+				snapshot.restore(bundle);
+			}
+		}
+		return diff;
+	}
+
+	private void setFrameworkStartLevel() {
+		CountDownLatch changed = new CountDownLatch(1);
+		frameworkStartLevel(bundleContext).setStartLevel(frameworkStartLevel, event -> changed.countDown());
+		await(changed);
+	}
+
+	private boolean isProtected(Bundle bundle) {
+		return (bundle.getBundleId() == Constants.SYSTEM_BUNDLE_ID) || bundle.equals(bundleContext.getBundle());
+	}
+
+	private static boolean isActive(Bundle bundle) {
+		return (bundle.getState() & (Bundle.STARTING | Bundle.ACTIVE)) != 0;
+	}
+
+	private static boolean isPersistentlyStarted(Bundle bundle) {
+		BundleStartLevel bundleStartLevel = bundle.adapt(BundleStartLevel.class);
+		return (bundleStartLevel != null) && bundleStartLevel.isPersistentlyStarted();
+	}
+
+	private static void stop(Bundle bundle, int options) {
+		try {
+			bundle.stop(options);
+		} catch (IllegalStateException uninstalled) {
+			// ignore
+		} catch (BundleException e) {
+			throw Exceptions.duck(e);
+		}
+	}
+
+	private static void start(Bundle bundle, int options) {
+		try {
+			bundle.start(options);
+		} catch (IllegalStateException uninstalled) {
+			// ignore
+		} catch (BundleException e) {
+			throw Exceptions.duck(e);
+		}
+	}
+
+	private void refresh(List<Bundle> uninstalled) {
+		FrameworkWiring frameworkWiring = bundleContext.getBundle(Constants.SYSTEM_BUNDLE_LOCATION)
+			.adapt(FrameworkWiring.class);
+		List<Bundle> pending = new ArrayList<>(frameworkWiring.getRemovalPendingBundles());
+		pending.retainAll(uninstalled);
+		if (pending.isEmpty() || frameworkWiring.getDependencyClosure(pending)
+			.contains(bundleContext.getBundle())) {
+			return;
+		}
+		CountDownLatch refreshed = new CountDownLatch(1);
+		frameworkWiring.refreshBundles(pending, event -> refreshed.countDown());
+		await(refreshed);
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await(TIMEOUT, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread()
+				.interrupt();
+		}
+	}
+
+	private static FrameworkStartLevel frameworkStartLevel(BundleContext bundleContext) {
+		return bundleContext.getBundle(Constants.SYSTEM_BUNDLE_LOCATION)
+			.adapt(FrameworkStartLevel.class);
+	}
+
+	private static ServiceReference<?>[] allServices(BundleContext bundleContext) {
+		try {
+			ServiceReference<?>[] references = bundleContext.getAllServiceReferences(null, null);
+			return (references != null) ? references : new ServiceReference<?>[0];
+		} catch (InvalidSyntaxException e) {
+			throw Exceptions.duck(e);
+		}
+	}
+
+	/**
+	 * Services are compared by registering bundle and object class rather
+	 * than by service id, so a service which is registered again by a
+	 * restarted bundle matches the snapshot.
+	 */
+	private static Map<String, Integer> serviceKeys(ServiceReference<?>[] references) {
+		Map<String, Integer> keys = new HashMap<>();
+		for (ServiceReference<?> reference : references) {
+			keys.merge(serviceKey(reference), 1, Integer::sum);
+		}
+		return keys;
+	}
+
+	private static String serviceKey(ServiceReference<?> reference) {
+		Bundle bundle = reference.getBundle();
+		return ((bundle != null) ? bundle.getBundleId() : -1L) + ":"
+			+ String.join(",", (String[]) reference.getProperty(Constants.OBJECTCLASS));
+	}
+
+	static final class BundleSnapshot {
+		final String	location;
+		final boolean	active;
+		final boolean	persistentlyStarted;
+		final boolean	fragment;
+		final int		startLevel;
+		final boolean	activationPolicyUsed;
+
+		BundleSnapshot(Bundle bundle) {
+			location = bundle.getLocation();
+			active = isActive(bundle);
+			persistentlyStarted = isPersistentlyStarted(bundle);
+			BundleRevision revision = bundle.adapt(BundleRevision.class);
+			fragment = (revision != null) && ((revision.getTypes() & BundleRevision.TYPE_FRAGMENT) != 0);
+			BundleStartLevel bundleStartLevel = bundle.adapt(BundleStartLevel.class);
+			startLevel = (bundleStartLevel != null) ? bundleStartLevel.getStartLevel() : 0;
+			activationPolicyUsed = (bundleStartLevel != null) && bundleStartLevel.isActivationPolicyUsed();
+		}
+
+		/**
+		 * @return {@code true} if the bundle was started or stopped, or its
+		 *         autostart setting changed, since the snapshot.
+		 */
+		boolean differs(Bundle bundle) {
+			return (active != isActive(bundle)) || (persistentlyStarted != isPersistentlyStarted(bundle));
+		}
+
+		/**
+		 * Start or stop the bundle as in the snapshot. A state which came
+		 * from the start level is restored transiently, so the autostart
+		 * setting of the snapshot is kept.
+		 */
+		void restore(Bundle bundle) {
+			int startOptions = activationPolicyUsed ? Bundle.START_ACTIVATION_POLICY : 0;
+			if (active != isActive(bundle)) {
+				if (active) {
+					start(bundle, persistentlyStarted ? startOptions : (startOptions | Bundle.START_TRANSIENT));
+				} else {
+					stop(bundle, persistentlyStarted ? Bundle.STOP_TRANSIENT : 0);
+				}
+			} else if (persistentlyStarted) {
+				// Sets the autostart setting; the start level decides
+				// whether the bundle is started
+				start(bundle, startOptions);
+			} else if (active) {
+				stop(bundle, 0);
+				start(bundle, startOptions | Bundle.START_TRANSIENT);
+			} else {
+				stop(bundle, 0);
+			}
+		}
+	}
+
+	/**
+	 * The differences between the state of a framework and a
+	 * {@link FrameworkSnapshot}.
+	 */
+	public static final class Diff {
+		final List<Bundle>				installed			= new ArrayList<>();
+		final List<String>				uninstalled			= new ArrayList<>();
+		final List<Bundle>				stateChanged		= new ArrayList<>();
+		final List<Bundle>				startLevelChanged	= new ArrayList<>();
+		final List<ServiceReference<?>>	registered			= new ArrayList<>();
+		int								unregistered;
+		boolean							frameworkStartLevelChanged;
+
+		Diff() {}
+
+		/**
+		 * @return The bundles installed since the snapshot.
+		 */
+		public List<Bundle> getInstalledBundles() {
+			return unmodifiableList(installed);
+		}
+
+		/**
+		 * @return The locations of the bundles uninstalled since the snapshot.
+		 */
+		public List<String> getUninstalledBundles() {
+			return unmodifiableList(uninstalled);
+		}
+
+		/**
+		 * @return The bundles which were started or stopped, or whose
+		 *         autostart setting changed, since the snapshot.
+		 */
+		public List<Bundle> getStateChangedBundles() {
+			return unmodifiableList(stateChanged);
+		}
+
+		/**
+		 * @return The bundles whose start level changed since the snapshot.
+		 */
+		public List<Bundle> getStartLevelChangedBundles() {
+			return unmodifiableList(startLevelChanged);
+		}
+
+		/**
+		 * @return The services registered since the snapshot.
+		 */
+		public List<ServiceReference<?>> getRegisteredServices() {
+			return unmodifiableList(registered);
+		}
+
+		/**
+		 * @return The number of services of the snapshot which are no longer
+		 *         registered.
+		 */
+		public int getUnregisteredServices() {
+			return unregistered;
+		}
+
+		public boolean isFrameworkStartLevelChanged() {
+			return frameworkStartLevelChanged;
+		}
+
+		/**
+		 * @return {@code true} if the framework is in the snapshot state.
+		 */
+		public boolean isEmpty() {
+			return installed.isEmpty() && uninstalled.isEmpty() && stateChanged.isEmpty()
+				&& startLevelChanged.isEmpty() && registered.isEmpty() && (unregistered == 0)
+				&& !frameworkStartLevelChanged;
+		}
+
+		@Override
+		public String toString() {
+			return String.format(
+				"FrameworkSnapshot.Diff [installed=%s, uninstalled=%s, stateChanged=%s, startLevelChanged=%s, registered=%s, unregistered=%s, frameworkStartLevelChanged=%s]",
+				installed, uninstalled, stateChanged, startLevelChanged, registered.size(), unregistered,
+				frameworkStartLevelChanged);
+		}
+	}
+}
@@ -0,0 +1,108 @@
+/*******************************************************************************
+ * Copyright (c) Contributors to the Eclipse Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+
+package org.osgi.test.common.context;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+
+/**
+ * A concurrent set of resources which compares its elements by identity.
+ * <p>
+ * The set is backed by a {@link ConcurrentHashMap}, so threads adding and
+ * removing different resources do not contend on a single monitor. Once the
+ * ledger is {@link #close() closed}, it no longer accepts elements.
+ */
+final class IdentityLedger<E> {
+	private final ConcurrentHashMap<Key<E>, Key<E>>	entries	= new ConcurrentHashMap<>();
+	private volatile boolean						closed;
+
+	boolean add(E element) {
+		return add(element, null);
+	}
+
+	/**
+	 * Add an element, remembering where it was acquired.
+	 * <p>
+	 * An element added while the ledger is closed is either returned by
+	 * {@link #close()} or rejected, but never lost.
+	 *
+	 * @param origin the sampled acquisition site, or {@code null}
+	 * @return {@code false} if the ledger is closed and the element was not
+	 *         added, in which case the caller must release it.
+	 */
+	boolean add(E element, Throwable origin) {
+		Key<E> key = new Key<>(element, origin);
+		if (entries.putIfAbsent(key, key) != null) {
+			return true;
+		}
+		// whoever removes the element releases it
+		return !closed || (entries.remove(key) == null);
+	}
+
+	boolean remove(E element) {
+		return entries.remove(new Key<>(element, null)) != null;
+	}
+
+	void forEach(BiConsumer<? super E, Throwable> action) {
+		entries.values()
+			.forEach(key -> action.accept(key.element, key.origin));
+	}
+
+	int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Close the ledger, and remove all elements and return them.
+	 */
+	List<E> close() {
+		closed = true;
+		List<E> drained = new ArrayList<>(entries.size());
+		for (Key<E> key : entries.keySet()) {
+			if (entries.remove(key) != null) {
+				drained.add(key.element);
+			}
+		}
+		return drained;
+	}
+
+	static final class Key<E> {
+		final E			element;
+		final Throwable	origin;
+		final int		hash;
+
+		Key(E element, Throwable origin) {
+			this.element = element;
+			this.origin = origin;
+			this.hash = System.identityHashCode(element);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return (obj instanceof Key) && (((Key<?>) obj).element == element);
+		}
+	}
+}
@@ -0,0 +1,278 @@
+/*******************************************************************************
+ * Copyright (c) Contributors to the Eclipse Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+
+package org.osgi.test.common.context;
+
+import static java.util.Collections.emptyList;
+import static java.util.Collections.emptyMap;
+import static java.util.Collections.unmodifiableList;
+import static java.util.Collections.unmodifiableMap;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+import org.osgi.framework.BundleContext;
+
+/**
+ * The resources acquired through a {@link CloseableBundleContext} and the
+ * resources it still held when it was closed. The latter are the resources
+ * the scope of the bundle context leaked and which were cleaned up by
+ * {@link CloseableBundleContext#close()}, and the time spent in each phase of
+ * closing the bundle context.
+ * <p>
+ * Reports of several scopes can be combined with {@link #aggregate}.
+ *
+ * @see CloseableBundleContext#proxy(BundleContext, Consumer, int)
+ * @since 1.2
+ */
+public final class ResourceReport {
+
+	/**
+	 * The kinds of resources tracked by a {@link CloseableBundleContext}.
+	 */
+	public enum Kind {
+		BUNDLE,
+		SERVICE_REGISTRATION,
+		SERVICE_GET,
+		SERVICE_OBJECTS,
+		SERVICE_LISTENER,
+		BUNDLE_LISTENER,
+		FRAMEWORK_LISTENER
+	}
+
+	/**
+	 * The maximum number of leak sites kept for each kind of resource.
+	 */
+	public static final int									MAX_LEAK_SITES	= 32;
+
+	private final long[]									acquired;
+	private final long[]									leaked;
+	private final Map<Kind, Map<String, Long>>				leakedTypes;
+	private final Map<Kind, List<StackTraceElement[]>>		leakSites;
+	private final Map<String, Duration>						teardownTimes;
+	private final long										refreshTimeouts;
+
+	ResourceReport(long[] acquired, long[] leaked, Map<Kind, Map<String, Long>> leakedTypes,
+		Map<Kind, List<StackTraceElement[]>> leakSites, Map<String, Duration> teardownTimes, long refreshTimeouts) {
+		this.acquired = acquired;
+		this.leaked = leaked;
+		this.leakedTypes = leakedTypes;
+		this.leakSites = leakSites;
+		this.teardownTimes = teardownTimes;
+		this.refreshTimeouts = refreshTimeouts;
+	}
+
+	/**
+	 * @return The number of resources of the specified kind acquired through
+	 *         the bundle context.
+	 */
+	public long getAcquired(Kind kind) {
+		return acquired[kind.ordinal()];
+	}
+
+	/**
+	 * @return The number of resources of the specified kind which were still
+	 *         held when the bundle context was closed.
+	 */
+	public long getLeaked(Kind kind) {
+		return leaked[kind.ordinal()];
+	}
+
+	/**
+	 * @return The total number of resources which were still held when the
+	 *         bundle context was closed.
+	 */
+	public long getLeaked() {
+		return Arrays.stream(leaked)
+			.sum();
+	}
+
+	/**
+	 * The types of the leaked resources of the specified kind. The type of a
+	 * bundle is its symbolic name, the type of a service is its object class
+	 * and the type of a listener is its class name.
+	 *
+	 * @return The number of leaked resources of the specified kind by type.
+	 */
+	public Map<String, Long> getLeakedTypes(Kind kind) {
+		return leakedTypes.getOrDefault(kind, emptyMap());
+	}
+
+	/**
+	 * The sampled stack traces of the acquisitions of leaked resources of the
+	 * specified kind. Stack traces are only sampled when the bundle context
+	 * was created with a stack trace sampling interval.
+	 *
+	 * @return At most {@link #MAX_LEAK_SITES} stack traces.
+	 */
+	public List<StackTraceElement[]> getLeakSites(Kind kind) {
+		return leakSites.getOrDefault(kind, emptyList());
+	}
+
+	/**
+	 * The time spent in each phase of closing the bundle context: closing the
+	 * nested scopes, uninstalling bundles, releasing services, releasing
+	 * service objects, unregistering services and removing listeners.
+	 *
+	 * @return The time spent in each phase by phase name, in the order of the
+	 *         phases.
+	 */
+	public Map<String, Duration> getTeardownTimes() {
+		return teardownTimes;
+	}
+
+	/**
+	 * The number of times the refresh of the uninstalled bundles did not
+	 * complete in time when the bundle context was closed. The bundles are
+	 * uninstalled but their wirings may still be in use.
+	 *
+	 * @return The number of refreshes which timed out.
+	 */
+	public long getRefreshTimeouts() {
+		return refreshTimeouts;
+	}
+
+	/**
+	 * Combine reports, for example the reports of all scopes of a test run.
+	 *
+	 * @param reports the reports to combine
+	 * @return A report with the sums of the specified reports.
+	 */
+	public static ResourceReport aggregate(Collection<ResourceReport> reports) {
+		Builder builder = new Builder();
+		for (ResourceReport report : reports) {
+			for (Kind kind : Kind.values()) {
+				builder.acquired(kind, report.getAcquired(kind));
+				builder.leaked[kind.ordinal()] += report.getLeaked(kind);
+				report.getLeakedTypes(kind)
+					.forEach((type, count) -> builder.type(kind, type, count));
+				report.getLeakSites(kind)
+					.forEach(site -> builder.site(kind, site));
+			}
+			report.getTeardownTimes()
+				.forEach(builder::teardown);
+			builder.refreshTimeouts += report.getRefreshTimeouts();
+		}
+		return builder.build();
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("ResourceReport [");
+		String separator = "";
+		for (Kind kind : Kind.values()) {
+			sb.append(separator)
+				.append(kind)
+				.append("=")
+				.append(getLeaked(kind))
+				.append('/')
+				.append(getAcquired(kind));
+			separator = ", ";
+		}
+		return sb.append(']')
+			.toString();
+	}
+
+	static final class Builder {
+		final long[]								acquired	= new long[Kind.values().length];
+		final long[]								leaked		= new long[Kind.values().length];
+		final Map<Kind, Map<String, Long>>			leakedTypes	= new EnumMap<>(Kind.class);
+		final Map<Kind, List<StackTraceElement[]>>	leakSites	= new EnumMap<>(Kind.class);
+		final Map<String, Duration>					teardown	= new LinkedHashMap<>();
+		long										refreshTimeouts;
+
+		Builder acquired(Kind kind, long count) {
+			acquired[kind.ordinal()] += count;
+			return this;
+		}
+
+		/**
+		 * Record leaked resources of a type.
+		 *
+		 * @param origin the sampled acquisition site, or {@code null}
+		 */
+		Builder leaked(Kind kind, String type, long count, Throwable origin) {
+			leaked[kind.ordinal()] += count;
+			type(kind, type, count);
+			if (origin != null) {
+				site(kind, trim(origin.getStackTrace()));
+			}
+			return this;
+		}
+
+		Builder teardown(String phase, Duration time) {
+			teardown.merge(phase, time, Duration::plus);
+			return this;
+		}
+
+		Builder refreshTimedOut() {
+			refreshTimeouts++;
+			return this;
+		}
+
+		private void type(Kind kind, String type, long count) {
+			leakedTypes.computeIfAbsent(kind, k -> new TreeMap<>())
+				.merge(type, count, Long::sum);
+		}
+
+		private void site(Kind kind, StackTraceElement[] site) {
+			List<StackTraceElement[]> sites = leakSites.computeIfAbsent(kind, k -> new ArrayList<>());
+			if (sites.size() < MAX_LEAK_SITES) {
+				sites.add(site);
+			}
+		}
+
+		/**
+		 * Drop the frames of this package and of the bundle context proxy from
+		 * the top of the stack trace so that it starts at the caller of the
+		 * bundle context.
+		 */
+		private static StackTraceElement[] trim(StackTraceElement[] stackTrace) {
+			String prefix = ResourceReport.class.getPackage()
+				.getName() + ".";
+			int i = 0;
+			while ((i < stackTrace.length) && (stackTrace[i].getClassName()
+				.startsWith(prefix) || isProxy(stackTrace[i].getClassName()))) {
+				i++;
+			}
+			return Arrays.copyOfRange(stackTrace, i, stackTrace.length);
+		}
+
+		private static boolean isProxy(String className) {
+			return className.substring(className.lastIndexOf('.') + 1)
+				.startsWith("$Proxy");
+		}
+
+		ResourceReport build() {
+			Map<Kind, Map<String, Long>> types = new EnumMap<>(Kind.class);
+			leakedTypes.forEach((kind, map) -> types.put(kind, unmodifiableMap(map)));
+			Map<Kind, List<StackTraceElement[]>> sites = new EnumMap<>(Kind.class);
+			leakSites.forEach((kind, list) -> sites.put(kind, unmodifiableList(list)));
+			return new ResourceReport(acquired.clone(), leaked.clone(), unmodifiableMap(types),
+				unmodifiableMap(sites), unmodifiableMap(new LinkedHashMap<>(teardown)), refreshTimeouts);
+		}
+	}
+}
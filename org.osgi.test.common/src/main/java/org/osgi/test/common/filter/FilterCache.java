@@ -0,0 +1,85 @@
+/*******************************************************************************
+ * Copyright (c) Contributors to the Eclipse Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+
+package org.osgi.test.common.filter;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import org.osgi.framework.Filter;
+
+/**
+ * A size bounded cache of compiled filters keyed by their filter string.
+ * <p>
+ * The least recently used filter is evicted when the cache is full. Filters
+ * are compiled outside the lock so a slow compilation does not block other
+ * lookups; two threads missing on the same filter string may both compile
+ * it.
+ */
+final class FilterCache {
+	private final Function<String, Filter>	compiler;
+	// guarded by cache
+	private final Map<String, Filter>		cache;
+	private final LongAdder					hits	= new LongAdder();
+	private final LongAdder					misses	= new LongAdder();
+
+	FilterCache(Function<String, Filter> compiler, int maxSize) {
+		this.compiler = compiler;
+		this.cache = new LinkedHashMap<String, Filter>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Filter> eldest) {
+				return size() > maxSize;
+			}
+		};
+	}
+
+	Filter get(String filterString) {
+		Filter filter;
+		synchronized (cache) {
+			filter = cache.get(filterString);
+		}
+		if (filter != null) {
+			hits.increment();
+			return filter;
+		}
+		misses.increment();
+		filter = compiler.apply(filterString);
+		synchronized (cache) {
+			cache.put(filterString, filter);
+		}
+		return filter;
+	}
+
+	long hits() {
+		return hits.sum();
+	}
+
+	long misses() {
+		return misses.sum();
+	}
+
+	int size() {
+		synchronized (cache) {
+			return cache.size();
+		}
+	}
+}
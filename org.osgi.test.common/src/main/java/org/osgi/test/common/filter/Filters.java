@@ -28,13 +28,18 @@ public class Filters {
 
 	private Filters() {}
 
-	private static final Function<String, Filter> createFilter = FunctionWithException
+	private static final Function<String, Filter>	createFilter	= FunctionWithException
 		.asFunction(FrameworkUtil::createFilter);
 
+	private static final FilterCache				cache			= new FilterCache(createFilter, 1024);
+
 	/**
 	 * Utility method for creating a {@link Filter} using a format string.
 	 * <p>
 	 * See {@link String#format(String, Object...)}
+	 * <p>
+	 * Compiled filters are cached by their filter string, so formatting the
+	 * same filter again returns the same {@link Filter} object.
 	 *
 	 * @param format a format string
 	 * @param args format arguments
@@ -42,7 +47,29 @@ public class Filters {
 	 */
 	public static Filter format(String format, Object... args) {
 		String filter = String.format(format, args);
-		return createFilter.apply(filter);
+		return cache.get(filter);
+	}
+
+	/**
+	 * Return the number of {@link #format(String, Object...)} calls which
+	 * returned a cached filter.
+	 *
+	 * @return the number of filter cache hits
+	 * @since 1.1
+	 */
+	public static long cacheHits() {
+		return cache.hits();
+	}
+
+	/**
+	 * Return the number of {@link #format(String, Object...)} calls which
+	 * compiled a filter.
+	 *
+	 * @return the number of filter cache misses
+	 * @since 1.1
+	 */
+	public static long cacheMisses() {
+		return cache.misses();
 	}
 
 }
@@ -0,0 +1,255 @@
+/*******************************************************************************
+ * Copyright (c) Contributors to the Eclipse Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+
+package org.osgi.test.common.install;
+
+import static java.util.Objects.requireNonNull;
+import static org.osgi.test.common.exceptions.Exceptions.duck;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.Constants;
+
+/**
+ * Assembles a bundle in memory from manifest headers, classes of the test
+ * class path and resources.
+ * <p>
+ * This avoids embedding a prebuilt jar in the test bundle for every bundle a
+ * test installs. The jar is written into a buffer sized for its entries and
+ * {@link #openStream() read} directly from it, so no temporary files are
+ * written and the content is not copied again for
+ * {@link BundleContext#installBundle(String, InputStream)}. The entries are
+ * stored without compression since they are read once, straight away.
+ * <p>
+ * Example:
+ *
+ * <pre>
+ * Bundle bundle = bundleInstaller.installBundle(new BundleBuilder("my.test.bundle")
+ * 	.header(Constants.BUNDLE_ACTIVATOR, MyActivator.class.getName())
+ * 	.header(Constants.IMPORT_PACKAGE, "org.osgi.framework")
+ * 	.addClass(MyActivator.class)
+ * 	.addResource("OSGI-INF/data.txt", data), true);
+ * </pre>
+ *
+ * @see BundleInstaller#installBundle(BundleBuilder, boolean)
+ * @since 1.2
+ */
+public class BundleBuilder {
+	// Estimates for sizing the buffer of a build
+	private static final int			MANIFEST_SIZE	= 1024;
+	private static final int			ENTRY_OVERHEAD	= 128;
+	private static final int			URL_ENTRY_SIZE	= 8 * 1024;
+
+	private final String				symbolicName;
+	private final Map<String, String>	headers			= new LinkedHashMap<>();
+	private final Map<String, Object>	entries			= new LinkedHashMap<>();
+	private String						location;
+
+	/**
+	 * @param symbolicName the symbolic name of the bundle
+	 */
+	public BundleBuilder(String symbolicName) {
+		this.symbolicName = requireNonNull(symbolicName);
+		headers.put(Constants.BUNDLE_MANIFESTVERSION, "2");
+		headers.put(Constants.BUNDLE_SYMBOLICNAME, symbolicName);
+	}
+
+	/**
+	 * Set a manifest header.
+	 *
+	 * @param name the name of the header
+	 * @param value the value of the header, or {@code null} to remove the
+	 *            header
+	 * @return this builder
+	 */
+	public BundleBuilder header(String name, String value) {
+		if (value == null) {
+			headers.remove(name);
+		} else {
+			headers.put(name, value);
+		}
+		return this;
+	}
+
+	/**
+	 * Add the class files of the specified classes, read from their class
+	 * loaders. Nested and anonymous classes must be added separately.
+	 *
+	 * @param classes the classes
+	 * @return this builder
+	 */
+	public BundleBuilder addClass(Class<?>... classes) {
+		for (Class<?> type : classes) {
+			String path = type.getName()
+				.replace('.', '/') + ".class";
+			ClassLoader loader = type.getClassLoader();
+			URL url = (loader != null) ? loader.getResource(path) : ClassLoader.getSystemResource(path);
+			if (url == null) {
+				throw new IllegalArgumentException(String.format("Class file of %s not found", type.getName()));
+			}
+			entries.put(path, url);
+		}
+		return this;
+	}
+
+	/**
+	 * Add a resource.
+	 *
+	 * @param path the path of the resource in the bundle
+	 * @param content the content of the resource; it is not copied
+	 * @return this builder
+	 */
+	public BundleBuilder addResource(String path, byte[] content) {
+		entries.put(entryPath(path), requireNonNull(content));
+		return this;
+	}
+
+	/**
+	 * Add a resource whose content is read from a URL when the bundle is
+	 * built.
+	 *
+	 * @param path the path of the resource in the bundle
+	 * @param content the URL of the content of the resource
+	 * @return this builder
+	 */
+	public BundleBuilder addResource(String path, URL content) {
+		entries.put(entryPath(path), requireNonNull(content));
+		return this;
+	}
+
+	/**
+	 * Set the location of the bundle. The default location is
+	 * {@code bundlebuilder:<symbolic name>:<version>}.
+	 *
+	 * @param location the location
+	 * @return this builder
+	 */
+	public BundleBuilder location(String location) {
+		this.location = location;
+		return this;
+	}
+
+	/**
+	 * @return The location of the bundle.
+	 */
+	public String getLocation() {
+		if (location != null) {
+			return location;
+		}
+		return "bundlebuilder:" + symbolicName + ":" + headers.getOrDefault(Constants.BUNDLE_VERSION, "0.0.0");
+	}
+
+	/**
+	 * Build the bundle.
+	 * <p>
+	 * The returned stream reads from the buffer the bundle was written to,
+	 * which is sized for the entries of the bundle.
+	 *
+	 * @return A stream of the content of the bundle.
+	 */
+	public InputStream openStream() {
+		Buffer buffer = new Buffer(estimatedSize());
+		try {
+			write(buffer);
+		} catch (Exception e) {
+			throw duck(e);
+		}
+		return buffer.inputStream();
+	}
+
+	private int estimatedSize() {
+		long size = MANIFEST_SIZE;
+		for (Object content : entries.values()) {
+			size += ENTRY_OVERHEAD + ((content instanceof byte[]) ? ((byte[]) content).length : URL_ENTRY_SIZE);
+		}
+		return (int) Math.min(size, Integer.MAX_VALUE - 8);
+	}
+
+	private void write(Buffer buffer) throws IOException {
+		Manifest manifest = new Manifest();
+		Attributes attributes = manifest.getMainAttributes();
+		attributes.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+		headers.forEach(attributes::putValue);
+		byte[] copy = null;
+		try (JarOutputStream jar = new JarOutputStream(buffer, manifest)) {
+			jar.setLevel(Deflater.NO_COMPRESSION);
+			Set<String> directories = new HashSet<>();
+			for (Map.Entry<String, Object> entry : entries.entrySet()) {
+				String path = entry.getKey();
+				for (int i = path.indexOf('/'); i > 0; i = path.indexOf('/', i + 1)) {
+					String directory = path.substring(0, i + 1);
+					if (directories.add(directory)) {
+						jar.putNextEntry(new ZipEntry(directory));
+						jar.closeEntry();
+					}
+				}
+				jar.putNextEntry(new ZipEntry(path));
+				Object content = entry.getValue();
+				if (content instanceof byte[]) {
+					jar.write((byte[]) content);
+				} else {
+					if (copy == null) {
+						copy = new byte[8192];
+					}
+					try (InputStream in = ((URL) content).openStream()) {
+						for (int n; (n = in.read(copy)) != -1;) {
+							jar.write(copy, 0, n);
+						}
+					}
+				}
+				jar.closeEntry();
+			}
+		}
+	}
+
+	private static String entryPath(String path) {
+		return path.startsWith("/") ? path.substring(1) : path;
+	}
+
+	@Override
+	public String toString() {
+		return "BundleBuilder[" + getLocation() + "]";
+	}
+
+	/**
+	 * A growable buffer whose content can be read without copying it.
+	 */
+	static final class Buffer extends ByteArrayOutputStream {
+		Buffer(int size) {
+			super(size);
+		}
+
+		InputStream inputStream() {
+			return new ByteArrayInputStream(buf, 0, count);
+		}
+	}
+}
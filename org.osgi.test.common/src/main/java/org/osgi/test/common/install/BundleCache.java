@@ -0,0 +1,298 @@
+/*******************************************************************************
+ * Copyright (c) Contributors to the Eclipse Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+
+package org.osgi.test.common.install;
+
+import static java.util.Objects.requireNonNull;
+import static org.osgi.test.common.exceptions.Exceptions.duck;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleException;
+import org.osgi.framework.startlevel.BundleStartLevel;
+
+/**
+ * Keeps bundles installed across their users.
+ * <p>
+ * A bundle is cached by its location and the hash of its content. Acquiring a
+ * bundle whose location and content are already cached returns the installed
+ * bundle instead of installing it again. Acquiring a location with different
+ * content replaces the cached bundle, unless it is in use. If the caller knows
+ * a cheap validator of the content, such as a modification time and size, a
+ * bundle whose location and validator are cached is returned without reading
+ * the content.
+ * <p>
+ * The cache counts the users of each bundle. When the last user releases a
+ * bundle it is stopped, also if it waits for lazy activation, its autostart
+ * setting is cleared and its start level is reset to the start level it was
+ * installed with, so the next user finds it in its initial installed state.
+ * Other state, such as the data files of the bundle, carries over. Cached bundles are installed with the bundle context of the bundle
+ * of the specified bundle context so they are not uninstalled when a
+ * {@code CloseableBundleContext} is closed. They are uninstalled when the
+ * cache is {@link #close() closed}.
+ *
+ * @since 1.2
+ */
+public class BundleCache implements AutoCloseable {
+	private final BundleContext			bundleContext;
+	// guarded by this
+	private final Map<String, Entry>	entries	= new HashMap<>();
+	private long						hits;
+	private long						misses;
+
+	/**
+	 * @param bundleContext a bundle context of the bundle installing the
+	 *            cached bundles
+	 */
+	public BundleCache(BundleContext bundleContext) {
+		this.bundleContext = requireNonNull(bundleContext).getBundle()
+			.getBundleContext();
+	}
+
+	/**
+	 * Return the cached bundle for the location and content, installing it if
+	 * necessary.
+	 *
+	 * @param location the location of the bundle
+	 * @param content the content of the bundle; it is read completely but not
+	 *            closed
+	 * @param start if {@code true}, start the bundle
+	 * @return the bundle
+	 * @throws IllegalStateException if a bundle with the location but other
+	 *             content is in use
+	 */
+	public Bundle acquire(String location, InputStream content, boolean start) {
+		return acquire(location, null, content, start);
+	}
+
+	/**
+	 * Return the cached bundle for the location and content, installing it if
+	 * necessary.
+	 * <p>
+	 * If the bundle was cached with the same location and validator, the
+	 * content is not read. Otherwise the content is read and hashed to find
+	 * out whether it changed.
+	 *
+	 * @param location the location of the bundle
+	 * @param validator a validator of the content, which changes when the
+	 *            content changes, or {@code null} to always read the content
+	 * @param content the content of the bundle; it is not closed
+	 * @param start if {@code true}, start the bundle
+	 * @return the bundle
+	 * @throws IllegalStateException if a bundle with the location but other
+	 *             content is in use
+	 */
+	public Bundle acquire(String location, String validator, InputStream content, boolean start) {
+		Entry entry = (validator != null) ? validated(location, validator) : null;
+		if (entry == null) {
+			byte[] bytes = readFully(content);
+			entry = acquire(location, validator, hash(bytes), bytes);
+		}
+		if (start) {
+			try {
+				entry.bundle.start();
+			} catch (BundleException | RuntimeException e) {
+				synchronized (this) {
+					entry.users--;
+				}
+				throw duck(e);
+			}
+		}
+		return entry.bundle;
+	}
+
+	/**
+	 * Return the cached entry of the location with the validator as a new
+	 * user, or {@code null} if it must be validated by its content.
+	 */
+	private synchronized Entry validated(String location, String validator) {
+		Entry entry = entries.get(location);
+		if ((entry == null) || !validator.equals(entry.validator)
+			|| ((entry.bundle.getState() & Bundle.UNINSTALLED) != 0)) {
+			return null;
+		}
+		hits++;
+		entry.users++;
+		return entry;
+	}
+
+	private synchronized Entry acquire(String location, String validator, String hash, byte[] bytes) {
+		try {
+			Entry entry = entries.get(location);
+			if ((entry != null)
+				&& (!entry.hash.equals(hash) || ((entry.bundle.getState() & Bundle.UNINSTALLED) != 0))) {
+				if ((entry.users > 0) && !entry.hash.equals(hash)) {
+					throw new IllegalStateException(
+						String.format("Bundle %s is in use with other content", location));
+				}
+				uninstall(entry.bundle);
+				entries.remove(location);
+				entry = null;
+			}
+			if (entry == null) {
+				misses++;
+				entry = new Entry(hash, bundleContext.installBundle(location, new ByteArrayInputStream(bytes)));
+				entries.put(location, entry);
+			} else {
+				hits++;
+			}
+			entry.validator = validator;
+			entry.users++;
+			return entry;
+		} catch (BundleException e) {
+			throw duck(e);
+		}
+	}
+
+	/**
+	 * Release a bundle returned by {@link #acquire}. The bundle is returned
+	 * to its initial installed state when its last user releases it.
+	 *
+	 * @param bundle the bundle
+	 */
+	public synchronized void release(Bundle bundle) {
+		for (Entry entry : entries.values()) {
+			if (entry.bundle.equals(bundle)) {
+				if ((entry.users > 0) && (--entry.users == 0)) {
+					reset(entry);
+				}
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Stop the bundle, clearing its autostart setting, and reset its start
+	 * level.
+	 */
+	private static void reset(Entry entry) {
+		Bundle bundle = entry.bundle;
+		BundleStartLevel bundleStartLevel = bundle.adapt(BundleStartLevel.class);
+		try {
+			if (((bundle.getState() & (Bundle.STARTING | Bundle.ACTIVE)) != 0)
+				|| ((bundleStartLevel != null) && bundleStartLevel.isPersistentlyStarted())) {
+				bundle.stop();
+			}
+			if ((bundleStartLevel != null) && (bundleStartLevel.getStartLevel() != entry.startLevel)) {
+				bundleStartLevel.setStartLevel(entry.startLevel);
+			}
+		} catch (IllegalStateException uninstalled) {
+			// ignore
+		} catch (BundleException e) {
+			throw duck(e);
+		}
+	}
+
+	/**
+	 * @return The number of acquisitions which found the bundle installed.
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * @return The number of acquisitions which installed the bundle.
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Uninstall all cached bundles.
+	 */
+	@Override
+	public void close() {
+		List<Entry> closed;
+		synchronized (this) {
+			closed = new ArrayList<>(entries.values());
+			entries.clear();
+		}
+		closed.forEach(entry -> uninstall(entry.bundle));
+	}
+
+	private static void uninstall(Bundle bundle) {
+		try {
+			bundle.uninstall();
+		} catch (IllegalStateException alreadyUninstalled) {
+			// ignore
+		} catch (BundleException e) {
+			throw duck(e);
+		}
+	}
+
+	private static byte[] readFully(InputStream in) {
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream(8192);
+			byte[] buffer = new byte[8192];
+			for (int n; (n = in.read(buffer)) != -1;) {
+				out.write(buffer, 0, n);
+			}
+			return out.toByteArray();
+		} catch (IOException e) {
+			throw duck(e);
+		}
+	}
+
+	private static String hash(byte[] bytes) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-256")
+				.digest(bytes);
+			StringBuilder sb = new StringBuilder(digest.length * 2);
+			for (byte b : digest) {
+				sb.append(Character.forDigit((b >> 4) & 0xF, 16))
+					.append(Character.forDigit(b & 0xF, 16));
+			}
+			return sb.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw duck(e);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "BundleCache[" + bundleContext.getBundle() + "]";
+	}
+
+	static final class Entry {
+		final String	hash;
+		final Bundle	bundle;
+		final int		startLevel;
+		// guarded by the cache
+		String			validator;
+		// guarded by the cache
+		int				users;
+
+		Entry(String hash, Bundle bundle) {
+			this.hash = hash;
+			this.bundle = bundle;
+			BundleStartLevel bundleStartLevel = bundle.adapt(BundleStartLevel.class);
+			this.startLevel = (bundleStartLevel != null) ? bundleStartLevel.getStartLevel() : 0;
+		}
+	}
+}
@@ -0,0 +1,192 @@
+/*******************************************************************************
+ * Copyright (c) Contributors to the Eclipse Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+
+package org.osgi.test.common.install;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleEvent;
+import org.osgi.framework.Constants;
+import org.osgi.framework.SynchronousBundleListener;
+import org.osgi.framework.Version;
+
+/**
+ * An index of the bundles of a framework by symbolic name.
+ * <p>
+ * There is one index per framework, shared by all users. It is kept current
+ * by a synchronous bundle listener registered with the system bundle context,
+ * so it sees a bundle as soon as it is installed and it does not go away when
+ * the bundle context of a test is closed. The index is dropped when the
+ * framework stops.
+ */
+final class BundleIndex implements SynchronousBundleListener {
+	private static final Map<Bundle, BundleIndex>	indexes			= new ConcurrentHashMap<>();
+
+	private final Bundle							systemBundle;
+	// guarded by this
+	private final Map<String, List<Bundle>>			bySymbolicName	= new HashMap<>();
+	// guarded by this
+	private final Map<Bundle, String>				symbolicNames	= new HashMap<>();
+
+	/**
+	 * Return the index of the framework of the specified bundle context.
+	 */
+	static BundleIndex of(BundleContext bundleContext) {
+		Bundle systemBundle = bundleContext.getBundle(Constants.SYSTEM_BUNDLE_LOCATION);
+		BundleIndex index = indexes.get(systemBundle);
+		if (index != null) {
+			return index;
+		}
+		index = new BundleIndex(systemBundle);
+		BundleIndex existing = indexes.putIfAbsent(systemBundle, index);
+		if (existing != null) {
+			index.close();
+			return existing;
+		}
+		return index;
+	}
+
+	private BundleIndex(Bundle systemBundle) {
+		this.systemBundle = systemBundle;
+		BundleContext systemContext = systemBundle.getBundleContext();
+		// listen before reading the bundles so no installation is missed
+		systemContext.addBundleListener(this);
+		for (Bundle bundle : systemContext.getBundles()) {
+			add(bundle);
+		}
+	}
+
+	private void close() {
+		BundleContext systemContext = systemBundle.getBundleContext();
+		if (systemContext != null) {
+			try {
+				systemContext.removeBundleListener(this);
+			} catch (IllegalStateException stopped) {
+				// ignore
+			}
+		}
+	}
+
+	@Override
+	public void bundleChanged(BundleEvent event) {
+		Bundle bundle = event.getBundle();
+		switch (event.getType()) {
+			case BundleEvent.INSTALLED :
+				add(bundle);
+				break;
+			case BundleEvent.UPDATED :
+				remove(bundle);
+				add(bundle);
+				break;
+			case BundleEvent.UNINSTALLED :
+				remove(bundle);
+				break;
+			case BundleEvent.STOPPING :
+				if (bundle.equals(systemBundle)) {
+					indexes.remove(systemBundle, this);
+					close();
+				}
+				break;
+			default :
+				break;
+		}
+	}
+
+	private synchronized void add(Bundle bundle) {
+		String symbolicName = bundle.getSymbolicName();
+		if ((symbolicName == null) || symbolicNames.containsKey(bundle)) {
+			return;
+		}
+		List<Bundle> bundles = bySymbolicName.computeIfAbsent(symbolicName, k -> new ArrayList<>(1));
+		int i = bundles.size();
+		while ((i > 0) && (bundles.get(i - 1)
+			.getBundleId() > bundle.getBundleId())) {
+			i--;
+		}
+		bundles.add(i, bundle);
+		symbolicNames.put(bundle, symbolicName);
+	}
+
+	private synchronized void remove(Bundle bundle) {
+		String symbolicName = symbolicNames.remove(bundle);
+		if (symbolicName == null) {
+			return;
+		}
+		List<Bundle> bundles = bySymbolicName.get(symbolicName);
+		bundles.remove(bundle);
+		if (bundles.isEmpty()) {
+			bySymbolicName.remove(symbolicName);
+		}
+	}
+
+	/**
+	 * Return the bundle with the specified symbolic name and version.
+	 */
+	Optional<Bundle> findBundle(String symbolicName, Version version) {
+		for (Bundle bundle : bundles(symbolicName)) {
+			if (bundle.getVersion()
+				.equals(version)) {
+				return Optional.of(bundle);
+			}
+		}
+		return Optional.empty();
+	}
+
+	/**
+	 * Return the bundle with the specified symbolic name and the lowest
+	 * bundle id.
+	 */
+	Optional<Bundle> findBundle(String symbolicName) {
+		List<Bundle> bundles = bundles(symbolicName);
+		return bundles.isEmpty() ? Optional.empty() : Optional.of(bundles.get(0));
+	}
+
+	/**
+	 * Return the installed bundles with the specified symbolic name ordered by
+	 * bundle id. Bundles which were uninstalled while the index was being
+	 * built are dropped here.
+	 */
+	private synchronized List<Bundle> bundles(String symbolicName) {
+		List<Bundle> bundles = bySymbolicName.get(symbolicName);
+		if (bundles == null) {
+			return Collections.emptyList();
+		}
+		List<Bundle> installed = new ArrayList<>(bundles.size());
+		for (Bundle bundle : bundles.toArray(new Bundle[0])) {
+			if (bundle.getState() == Bundle.UNINSTALLED) {
+				remove(bundle);
+			} else {
+				installed.add(bundle);
+			}
+		}
+		return installed;
+	}
+
+	@Override
+	public String toString() {
+		return "BundleIndex[" + systemBundle + "]";
+	}
+}
@@ -22,20 +22,42 @@ import static java.util.Objects.requireNonNull;
 import static org.osgi.test.common.exceptions.Exceptions.duck;
 
 import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
+import java.net.URLConnection;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
 import java.util.stream.Stream;
 
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
+import org.osgi.framework.Constants;
 import org.osgi.framework.Version;
+import org.osgi.framework.wiring.BundleRevision;
+import org.osgi.framework.wiring.BundleWire;
+import org.osgi.framework.wiring.BundleWiring;
+import org.osgi.framework.wiring.FrameworkWiring;
 
-public class BundleInstaller {
+public class BundleInstaller implements AutoCloseable {
 
 	/**
 	 * EmbeddedLocation describes a Location of a File inside a Bundle.
@@ -44,12 +66,8 @@ public class BundleInstaller {
 
 		private static Optional<Bundle> findBundle(BundleContext bc, String bundleSymbolicName, Version bundleVersion) {
 
-			return Stream.of(bc.getBundles())
-				.filter(b -> b.getSymbolicName()
-					.equals(bundleSymbolicName))
-				.filter(b -> b.getVersion()
-					.equals(bundleVersion))
-				.findAny();
+			return BundleIndex.of(bc)
+				.findBundle(bundleSymbolicName, bundleVersion);
 		}
 
 		/**
@@ -76,10 +94,8 @@ public class BundleInstaller {
 				bundleSymbolicName = oBundleSymbolicName.get();
 				bundleVersion = oBundleVersion.map(v -> Version.parseVersion(v))
 					.orElseGet(() -> {
-						return Stream.of(bundleContext.getBundles())
-							.filter(b -> b.getSymbolicName()
-								.equals(bundleSymbolicName))
-							.findFirst()
+						return BundleIndex.of(bundleContext)
+							.findBundle(bundleSymbolicName)
 							.orElseThrow(() -> {
 								return new IllegalArgumentException(
 									String.format("Unknown Bundle with SymbolicName: %s", bundleSymbolicName));
@@ -214,12 +230,7 @@ public class BundleInstaller {
 		}
 
 		public URL getURL(BundleContext bc) throws IOException {
-			Bundle bundle = Stream.of(bc.getBundles())
-				.filter(b -> b.getSymbolicName()
-					.equals(bundleSymbolicName))
-				.filter(b -> b.getVersion()
-					.equals(bundleVersion))
-				.findFirst()
+			Bundle bundle = findBundle(bc, bundleSymbolicName, bundleVersion)
 				.orElseThrow(() -> new IllegalArgumentException(
 					String.format("Bundle %s:%s does not exist in framework", bundleSymbolicName, bundleVersion)));
 
@@ -241,10 +252,83 @@ public class BundleInstaller {
 		}
 	}
 
-	private final BundleContext bundleContext;
+	private final BundleContext						bundleContext;
+	private final BundleCache						cache;
+	private final DownloadCache						downloads;
+	private final Consumer<? super InstallTiming>	recorder;
+	private final List<Bundle>						cached	= Collections.synchronizedList(new ArrayList<>());
 
 	public BundleInstaller(BundleContext bundleContext) {
+		this(bundleContext, new Options());
+	}
+
+	/**
+	 * Create a bundle installer with the specified options.
+	 *
+	 * @param bundleContext the bundle context
+	 * @param options the options of the bundle installer
+	 * @since 1.2
+	 */
+	public BundleInstaller(BundleContext bundleContext, Options options) {
 		this.bundleContext = requireNonNull(bundleContext);
+		this.cache = options.cache;
+		this.downloads = options.downloads;
+		this.recorder = options.recorder;
+	}
+
+	/**
+	 * Release the bundles installed through the bundle cache of this
+	 * instance. Does nothing if this instance does not use a bundle cache.
+	 *
+	 * @since 1.2
+	 */
+	@Override
+	public void close() {
+		if (cache != null) {
+			synchronized (cached) {
+				cached.forEach(cache::release);
+				cached.clear();
+			}
+		}
+	}
+
+	private Bundle install(Object location, boolean startBundle) {
+		Installed installed = new Installed(location);
+		install(installed);
+		if (installed.failure != null) {
+			throw duck(installed.failure);
+		}
+		try {
+			if (startBundle) {
+				if (recorder != null) {
+					// resolve separately only to tell its time from the start
+					long begin = System.nanoTime();
+					frameworkWiring().resolveBundles(Collections.singleton(installed.bundle));
+					installed.resolveTime = Duration.ofNanos(System.nanoTime() - begin);
+				}
+				start(installed);
+			}
+		} finally {
+			record(installed);
+		}
+		return installed.bundle;
+	}
+
+	private void start(Installed installed) {
+		long begin = System.nanoTime();
+		try {
+			installed.bundle.start();
+		} catch (Exception e) {
+			throw duck(e);
+		} finally {
+			installed.startTime = Duration.ofNanos(System.nanoTime() - begin);
+		}
+	}
+
+	private void record(Installed installed) {
+		if (recorder != null) {
+			recorder.accept(installed.timing());
+		}
 	}
 
 	/**
@@ -268,15 +352,7 @@ public class BundleInstaller {
 	 */
 	public Bundle installBundle(EmbeddedLocation location, boolean startBundle) {
 
-		try (InputStream is = location.openStream(bundleContext)) {
-			Bundle bundle = bundleContext.installBundle(location.toString(), is);
-			if (startBundle) {
-				bundle.start();
-			}
-			return bundle;
-		} catch (Exception e) {
-			throw duck(e);
-		}
+		return install(location, startBundle);
 	}
 
 	/**
@@ -339,14 +415,488 @@ public class BundleInstaller {
 	 */
 	public Bundle installBundle(URL url, boolean startBundle) {
 
-		try (InputStream is = url.openStream()) {
-			Bundle bundle = bundleContext.installBundle(url.toString(), is);
-			if (startBundle) {
-				bundle.start();
+		return install(url, startBundle);
+	}
+
+	/**
+	 * Install a bundle assembled by a {@link BundleBuilder}.
+	 * <p>
+	 * When implemented against {@code CloseableBundleContext} bundles installed
+	 * in this fashion are uninstalled automatically at the end of the test
+	 * method.
+	 *
+	 * @param builder the builder of the bundle
+	 * @param startBundle if true, start the bundle
+	 * @return installed bundle
+	 * @since 1.2
+	 */
+	public Bundle installBundle(BundleBuilder builder, boolean startBundle) {
+
+		return install(builder, startBundle);
+	}
+
+	/**
+	 * Install and start several bundles.
+	 *
+	 * @param locations the {@link EmbeddedLocation}s and {@link URL}s of the
+	 *            jar resources and the {@link BundleBuilder}s
+	 * @return the installed and started bundles
+	 * @see #installBundles(Collection, boolean)
+	 * @since 1.2
+	 */
+	public InstallResult installBundles(Collection<?> locations) {
+		return installBundles(locations, true);
+	}
+
+	/**
+	 * Install several bundles.
+	 * <p>
+	 * The jar resources are read and the bundles installed concurrently, on
+	 * threads of this call rather than of a shared pool. If any bundle fails
+	 * to install, the bundles which did install are uninstalled, or released
+	 * to the bundle cache, before the failure is thrown. The installed bundles
+	 * are then resolved together with a single
+	 * {@link FrameworkWiring#resolveBundles} call, so inter-dependent bundles
+	 * are resolved in one pass instead of once per started bundle. If
+	 * requested, the bundles are started after the bundles they are wired to,
+	 * so the order of the locations does not matter. Fragments are not
+	 * started.
+	 * <p>
+	 * When implemented against {@code CloseableBundleContext} bundles installed
+	 * in this fashion are uninstalled automatically at the end of the test
+	 * method.
+	 *
+	 * @param locations the {@link EmbeddedLocation}s and {@link URL}s of the
+	 *            jar resources and the {@link BundleBuilder}s
+	 * @param startBundles if true, start the bundles
+	 * @return the installed bundles and the time taken by each step
+	 * @throws IllegalArgumentException if a location is not an
+	 *             {@link EmbeddedLocation}, a {@link URL} or a
+	 *             {@link BundleBuilder}
+	 * @since 1.2
+	 */
+	public InstallResult installBundles(Collection<?> locations, boolean startBundles) {
+		for (Object location : locations) {
+			if (!(location instanceof EmbeddedLocation) && !(location instanceof URL)
+				&& !(location instanceof BundleBuilder)) {
+				throw new IllegalArgumentException(
+					String.format("Not an EmbeddedLocation, URL or BundleBuilder: %s", location));
 			}
-			return bundle;
-		} catch (Exception e) {
+		}
+		final long begin = System.nanoTime();
+		List<Installed> installed = new ArrayList<>(locations.size());
+		for (Object location : locations) {
+			installed.add(new Installed(location));
+		}
+		installConcurrently(installed);
+		Exception failure = null;
+		for (Installed i : installed) {
+			if (i.failure != null) {
+				if (failure == null) {
+					failure = i.failure;
+				} else {
+					failure.addSuppressed(i.failure);
+				}
+			}
+		}
+		if (failure != null) {
+			for (Installed i : installed) {
+				if (i.bundle != null) {
+					abandon(i.bundle, failure);
+				}
+			}
+			throw duck(failure);
+		}
+
+		List<Bundle> bundles = new ArrayList<>(installed.size());
+		Map<Bundle, Installed> byBundle = new IdentityHashMap<>();
+		for (Installed i : installed) {
+			bundles.add(i.bundle);
+			byBundle.put(i.bundle, i);
+		}
+
+		long resolveBegin = System.nanoTime();
+		boolean resolved = frameworkWiring().resolveBundles(bundles);
+		Duration resolveTime = Duration.ofNanos(System.nanoTime() - resolveBegin);
+
+		List<Bundle> startOrder = startOrder(bundles);
+		try {
+			if (startBundles) {
+				for (Bundle bundle : startOrder) {
+					Installed i = byBundle.get(bundle);
+					i.resolveTime = resolveTime;
+					start(i);
+				}
+			}
+		} finally {
+			installed.forEach(this::record);
+		}
+		Map<Bundle, InstallTiming> timings = new IdentityHashMap<>();
+		byBundle.forEach((bundle, i) -> timings.put(bundle, i.timing()));
+		return new InstallResult(bundles, startBundles ? startOrder : Collections.emptyList(), resolved, timings,
+			resolveTime, Duration.ofNanos(System.nanoTime() - begin));
+	}
+
+	private void installConcurrently(List<Installed> installed) {
+		int threads = Math.min(installed.size(), Runtime.getRuntime()
+			.availableProcessors());
+		if (threads <= 1) {
+			installed.forEach(this::install);
+			return;
+		}
+		final ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<?>> futures = new ArrayList<>(installed.size());
+			for (Installed i : installed) {
+				futures.add(executor.submit(() -> install(i)));
+			}
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} catch (ExecutionException e) {
+			throw duck(e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread()
+				.interrupt();
 			throw duck(e);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Undo the installation of a bundle of a batch which failed to install.
+	 */
+	private void abandon(Bundle bundle, Exception failure) {
+		try {
+			if (cache != null) {
+				cached.remove(bundle);
+				cache.release(bundle);
+			} else {
+				bundle.uninstall();
+			}
+		} catch (Exception e) {
+			failure.addSuppressed(e);
+		}
+	}
+
+	/**
+	 * Open the jar resource and install the bundle, recording the time of
+	 * each step. Failures are recorded rather than thrown.
+	 */
+	private void install(Installed installed) {
+		long begin = System.nanoTime();
+		try {
+			InputStream stream;
+			// a cheap validator of the content lets the bundle cache skip
+			// reading it
+			String validator = null;
+			if (installed.location instanceof EmbeddedLocation) {
+				EmbeddedLocation location = (EmbeddedLocation) installed.location;
+				installed.locationString = location.toString();
+				URLConnection connection = location.getURL(bundleContext)
+					.openConnection();
+				validator = validator(connection);
+				stream = connection.getInputStream();
+			} else if (installed.location instanceof BundleBuilder) {
+				BundleBuilder builder = (BundleBuilder) installed.location;
+				installed.locationString = builder.getLocation();
+				stream = builder.openStream();
+			} else {
+				URL url = (URL) installed.location;
+				installed.locationString = url.toString();
+				Path downloaded = (downloads != null) ? downloads.download(url) : null;
+				if (downloaded != null) {
+					validator = downloaded.getFileName()
+						.toString();
+					stream = DownloadCache.map(downloaded);
+				} else {
+					URLConnection connection = url.openConnection();
+					validator = validator(connection);
+					stream = connection.getInputStream();
+				}
+			}
+			installed.openTime = Duration.ofNanos(System.nanoTime() - begin);
+			try (CountingInputStream is = new CountingInputStream(stream)) {
+				begin = System.nanoTime();
+				if (cache != null) {
+					installed.bundle = cache.acquire(installed.locationString, validator, is, false);
+					cached.add(installed.bundle);
+				} else {
+					installed.bundle = bundleContext.installBundle(installed.locationString, is);
+				}
+				installed.installTime = Duration.ofNanos(System.nanoTime() - begin);
+				installed.size = is.count;
+			}
+		} catch (Exception e) {
+			installed.failure = e;
+		}
+	}
+
+	/**
+	 * Return the modification time and size of the content of a connection,
+	 * or {@code null} if the modification time is not known.
+	 */
+	private String validator(URLConnection connection) {
+		if (cache == null) {
+			return null;
+		}
+		long lastModified = connection.getLastModified();
+		return (lastModified != 0L) ? lastModified + ":" + connection.getContentLengthLong() : null;
+	}
+
+	private FrameworkWiring frameworkWiring() {
+		return bundleContext.getBundle(Constants.SYSTEM_BUNDLE_LOCATION)
+			.adapt(FrameworkWiring.class);
+	}
+
+	/**
+	 * Order the bundles, except fragments, so that each bundle comes after
+	 * the bundles it is wired to. Bundles in a cycle and unresolved bundles
+	 * keep their relative order.
+	 */
+	private static List<Bundle> startOrder(List<Bundle> bundles) {
+		Set<Bundle> installed = new HashSet<>(bundles);
+		Set<Bundle> ordered = new LinkedHashSet<>();
+		Set<Bundle> visiting = new HashSet<>();
+		for (Bundle bundle : bundles) {
+			visit(bundle, installed, visiting, ordered);
+		}
+		List<Bundle> startOrder = new ArrayList<>(ordered.size());
+		for (Bundle bundle : ordered) {
+			BundleRevision revision = bundle.adapt(BundleRevision.class);
+			if ((revision == null) || ((revision.getTypes() & BundleRevision.TYPE_FRAGMENT) == 0)) {
+				startOrder.add(bundle);
+			}
+		}
+		return startOrder;
+	}
+
+	private static void visit(Bundle bundle, Set<Bundle> bundles, Set<Bundle> visiting, Set<Bundle> ordered) {
+		if (ordered.contains(bundle) || !visiting.add(bundle)) {
+			return;
+		}
+		BundleWiring wiring = bundle.adapt(BundleWiring.class);
+		if (wiring != null) {
+			for (BundleWire wire : wiring.getRequiredWires(null)) {
+				Bundle provider = wire.getProvider()
+					.getBundle();
+				if (bundles.contains(provider)) {
+					visit(provider, bundles, visiting, ordered);
+				}
+			}
+		}
+		visiting.remove(bundle);
+		ordered.add(bundle);
+	}
+
+	/**
+	 * The options of a {@link BundleInstaller}. By default, a bundle installer
+	 * uses no caches and records no timings.
+	 *
+	 * @since 1.2
+	 */
+	public static final class Options {
+		BundleCache						cache;
+		DownloadCache					downloads;
+		Consumer<? super InstallTiming>	recorder;
+
+		/**
+		 * Install bundles through the specified cache. Bundles installed
+		 * through the cache are released to it when the bundle installer is
+		 * {@link BundleInstaller#close() closed}, instead of being
+		 * uninstalled.
+		 *
+		 * @param cache the bundle cache, or {@code null} to not use a cache
+		 * @return these options
+		 */
+		public Options cache(BundleCache cache) {
+			this.cache = cache;
+			return this;
+		}
+
+		/**
+		 * Read the jars of {@code http:}, {@code https:} and {@code file:} URLs
+		 * through the specified download cache.
+		 *
+		 * @param downloads the download cache, or {@code null} to always read
+		 *            URLs directly
+		 * @return these options
+		 */
+		public Options downloads(DownloadCache downloads) {
+			this.downloads = downloads;
+			return this;
+		}
+
+		/**
+		 * Pass the {@link InstallTiming} of each installed bundle to the
+		 * specified recorder.
+		 *
+		 * @param recorder the recorder of the timings, or {@code null}
+		 * @return these options
+		 */
+		public Options recorder(Consumer<? super InstallTiming> recorder) {
+			this.recorder = recorder;
+			return this;
+		}
+	}
+
+	static final class Installed {
+		final Object	location;
+		String			locationString;
+		Bundle			bundle;
+		Exception		failure;
+		long			size;
+		Duration		openTime	= Duration.ZERO;
+		Duration		installTime	= Duration.ZERO;
+		Duration		resolveTime	= Duration.ZERO;
+		Duration		startTime	= Duration.ZERO;
+
+		Installed(Object location) {
+			this.location = location;
+		}
+
+		InstallTiming timing() {
+			return new InstallTiming(locationString, bundle.getSymbolicName(), size, openTime, installTime,
+				resolveTime, startTime);
+		}
+	}
+
+	static final class CountingInputStream extends FilterInputStream {
+		long count;
+
+		CountingInputStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if (b != -1) {
+				count++;
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int n = super.read(b, off, len);
+			if (n > 0) {
+				count += n;
+			}
+			return n;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			long skipped = super.skip(n);
+			count += skipped;
+			return skipped;
+		}
+	}
+
+	/**
+	 * The result of {@link BundleInstaller#installBundles(Collection, boolean)}.
+	 *
+	 * @since 1.2
+	 */
+	public static final class InstallResult {
+		private final List<Bundle>					bundles;
+		private final List<Bundle>					startOrder;
+		private final boolean						resolved;
+		private final Map<Bundle, InstallTiming>	timings;
+		private final Duration						resolveTime;
+		private final Duration						elapsed;
+
+		InstallResult(List<Bundle> bundles, List<Bundle> startOrder, boolean resolved,
+			Map<Bundle, InstallTiming> timings, Duration resolveTime, Duration elapsed) {
+			this.bundles = Collections.unmodifiableList(bundles);
+			this.startOrder = Collections.unmodifiableList(startOrder);
+			this.resolved = resolved;
+			this.timings = timings;
+			this.resolveTime = resolveTime;
+			this.elapsed = elapsed;
+		}
+
+		/**
+		 * @return the installed bundles in the order of their locations
+		 */
+		public List<Bundle> getBundles() {
+			return bundles;
+		}
+
+		/**
+		 * @return the started bundles in the order they were started
+		 */
+		public List<Bundle> getStartOrder() {
+			return startOrder;
+		}
+
+		/**
+		 * @return {@code true} if all installed bundles were resolved
+		 */
+		public boolean isResolved() {
+			return resolved;
+		}
+
+		/**
+		 * @return the time taken to read and install the specified bundle
+		 */
+		public Duration getInstallTime(Bundle bundle) {
+			InstallTiming timing = timings.get(bundle);
+			return (timing == null) ? Duration.ZERO
+				: timing.getOpenTime()
+					.plus(timing.getInstallTime());
+		}
+
+		/**
+		 * @return the timing of each step of the installation of the
+		 *         specified bundle, or {@code null} if it was not installed
+		 *         by this operation
+		 */
+		public InstallTiming getTiming(Bundle bundle) {
+			return timings.get(bundle);
+		}
+
+		/**
+		 * @return the time taken to resolve all installed bundles
+		 */
+		public Duration getResolveTime() {
+			return resolveTime;
+		}
+
+		/**
+		 * @return the time taken to start the specified bundle, or zero if it
+		 *         was not started
+		 */
+		public Duration getStartTime(Bundle bundle) {
+			InstallTiming timing = timings.get(bundle);
+			return (timing == null) ? Duration.ZERO : timing.getStartTime();
+		}
+
+		public Duration getElapsed() {
+			return elapsed;
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder("BundleInstaller.InstallResult [resolved=").append(resolved)
+				.append(", resolve=")
+				.append(resolveTime.toMillis())
+				.append("ms, elapsed=")
+				.append(elapsed.toMillis())
+				.append("ms");
+			for (Bundle bundle : bundles) {
+				sb.append(", ")
+					.append(bundle.getSymbolicName())
+					.append("[install=")
+					.append(getInstallTime(bundle).toMillis())
+					.append("ms, start=")
+					.append(getStartTime(bundle).toMillis())
+					.append("ms]");
+			}
+			return sb.append(']')
+				.toString();
 		}
 	}
 }
@@ -0,0 +1,119 @@
+/*******************************************************************************
+ * Copyright (c) Contributors to the Eclipse Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+
+package org.osgi.test.common.install;
+
+import java.net.URL;
+
+import org.osgi.framework.Bundle;
+import org.osgi.test.common.install.BundleInstaller.EmbeddedLocation;
+import org.osgi.util.promise.Promise;
+
+/**
+ * Install and start bundles asynchronously with a {@link BundleInstaller}.
+ * <p>
+ * This is the only type of this package which uses the OSGi Promise API, so
+ * the Promise API is only needed at runtime when this class is used.
+ *
+ * @since 1.2
+ */
+public final class BundlePromises {
+	private final BundleInstaller bundleInstaller;
+
+	/**
+	 * Return asynchronous installs and starts for the specified bundle
+	 * installer.
+	 *
+	 * @param bundleInstaller the bundle installer used to install bundles
+	 * @return asynchronous installs and starts
+	 */
+	public static BundlePromises of(BundleInstaller bundleInstaller) {
+		return new BundlePromises(bundleInstaller);
+	}
+
+	private BundlePromises(BundleInstaller bundleInstaller) {
+		this.bundleInstaller = bundleInstaller;
+	}
+
+	/**
+	 * Install a bundle from a given EmbeddedLocation and start it
+	 * asynchronously.
+	 *
+	 * @param location of the jar resource.
+	 * @param serviceFilters filters of services the bundle must register
+	 *            before it is ready
+	 * @return A promise for the installed bundle, resolved when it is ready.
+	 * @see #startBundle(Bundle, String...)
+	 */
+	public Promise<Bundle> installBundle(EmbeddedLocation location, String... serviceFilters) {
+		return startBundle(bundleInstaller.installBundle(location, false), serviceFilters);
+	}
+
+	/**
+	 * Install a bundle from a given URL and start it asynchronously.
+	 *
+	 * @param url to the jar resource.
+	 * @param serviceFilters filters of services the bundle must register
+	 *            before it is ready
+	 * @return A promise for the installed bundle, resolved when it is ready.
+	 * @see #startBundle(Bundle, String...)
+	 */
+	public Promise<Bundle> installBundle(URL url, String... serviceFilters) {
+		return startBundle(bundleInstaller.installBundle(url, false), serviceFilters);
+	}
+
+	/**
+	 * Install a bundle assembled by a {@link BundleBuilder} and start it
+	 * asynchronously.
+	 *
+	 * @param builder the builder of the bundle
+	 * @param serviceFilters filters of services the bundle must register
+	 *            before it is ready
+	 * @return A promise for the installed bundle, resolved when it is ready.
+	 * @see #startBundle(Bundle, String...)
+	 */
+	public Promise<Bundle> installBundle(BundleBuilder builder, String... serviceFilters) {
+		return startBundle(bundleInstaller.installBundle(builder, false), serviceFilters);
+	}
+
+	/**
+	 * Start a bundle asynchronously.
+	 * <p>
+	 * The bundle is started on a separate thread, so several bundles can be
+	 * started at the same time. The returned promise is resolved when the
+	 * bundle is {@link org.osgi.framework.BundleEvent#STARTED started} and, for
+	 * each of the specified filters, has registered a matching service. This
+	 * covers services registered after the bundle is started, for example by
+	 * Declarative Services components of the bundle, so tests do not have to
+	 * poll for them.
+	 * <p>
+	 * The promise is failed if the bundle cannot be started or is stopped or
+	 * uninstalled before it is ready. The promise is never resolved if a
+	 * service never appears, so callers should bound the wait, for example
+	 * with {@code Promise.timeout} of OSGi Promises 1.1 or later.
+	 *
+	 * @param bundle the bundle to start
+	 * @param serviceFilters filters of services the bundle must register
+	 *            before it is ready
+	 * @return A promise for the bundle, resolved when it is ready.
+	 * @throws IllegalArgumentException if a filter is not valid
+	 */
+	public Promise<Bundle> startBundle(Bundle bundle, String... serviceFilters) {
+		return BundleReadiness.start(bundleInstaller.getBundleContext(), bundle, serviceFilters);
+	}
+}
@@ -0,0 +1,194 @@
+/*******************************************************************************
+ * Copyright (c) Contributors to the Eclipse Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+
+package org.osgi.test.common.install;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleEvent;
+import org.osgi.framework.InvalidSyntaxException;
+import org.osgi.framework.ServiceEvent;
+import org.osgi.framework.ServiceListener;
+import org.osgi.framework.ServiceReference;
+import org.osgi.framework.SynchronousBundleListener;
+import org.osgi.util.promise.Deferred;
+import org.osgi.util.promise.Promise;
+
+/**
+ * Starts a bundle on a separate thread and resolves a promise once the bundle
+ * is started and has registered a service matching each of the specified
+ * filters.
+ * <p>
+ * The listeners are added before the bundle is started so no event is
+ * missed. The promise is failed if the bundle cannot be started or is
+ * stopped or uninstalled before it is ready.
+ */
+final class BundleReadiness implements SynchronousBundleListener {
+	private final BundleContext			bundleContext;
+	private final Bundle				bundle;
+	private final Deferred<Bundle>		deferred	= new Deferred<>();
+	private final List<ServiceListener>	listeners	= new CopyOnWriteArrayList<>();
+	// guarded by this
+	private final Set<String>			pending		= new HashSet<>();
+	// guarded by this
+	private boolean						started;
+	// guarded by this
+	private boolean						done;
+	// a failed start also stops the bundle; report the failure of the start
+	private volatile boolean			starting;
+
+	static Promise<Bundle> start(BundleContext bundleContext, Bundle bundle, String... serviceFilters) {
+		BundleReadiness readiness = new BundleReadiness(bundleContext, bundle);
+		readiness.open(serviceFilters);
+		Thread thread = new Thread(readiness::startBundle, "BundleInstaller start " + bundle);
+		thread.setDaemon(true);
+		thread.start();
+		return readiness.deferred.getPromise();
+	}
+
+	private BundleReadiness(BundleContext bundleContext, Bundle bundle) {
+		this.bundleContext = bundleContext;
+		this.bundle = bundle;
+	}
+
+	private void open(String[] serviceFilters) {
+		bundleContext.addBundleListener(this);
+		try {
+			for (String filter : serviceFilters) {
+				synchronized (this) {
+					pending.add(filter);
+				}
+				ServiceListener listener = event -> {
+					if ((event.getType() == ServiceEvent.REGISTERED) && bundle.equals(event.getServiceReference()
+						.getBundle())) {
+						satisfied(filter);
+					}
+				};
+				listeners.add(listener);
+				bundleContext.addServiceListener(listener, filter);
+				ServiceReference<?>[] references = bundleContext.getServiceReferences((String) null, filter);
+				if (references != null) {
+					for (ServiceReference<?> reference : references) {
+						if (bundle.equals(reference.getBundle())) {
+							satisfied(filter);
+						}
+					}
+				}
+			}
+		} catch (InvalidSyntaxException e) {
+			close();
+			throw new IllegalArgumentException(e.getMessage(), e);
+		}
+	}
+
+	private void startBundle() {
+		starting = true;
+		try {
+			bundle.start();
+		} catch (Throwable t) {
+			fail(t);
+			return;
+		} finally {
+			starting = false;
+		}
+		int state = bundle.getState();
+		if (state == Bundle.ACTIVE) {
+			started();
+		} else if (state != Bundle.STARTING) {
+			fail(new IllegalStateException(String.format("Bundle %s was stopped before it was ready", bundle)));
+		}
+	}
+
+	@Override
+	public void bundleChanged(BundleEvent event) {
+		if (!bundle.equals(event.getBundle())) {
+			return;
+		}
+		switch (event.getType()) {
+			case BundleEvent.STARTED :
+				started();
+				break;
+			case BundleEvent.STOPPED :
+				if (starting) {
+					break;
+				}
+				// fall through
+			case BundleEvent.UNINSTALLED :
+				fail(new IllegalStateException(String.format("Bundle %s was stopped before it was ready", bundle)));
+				break;
+			default :
+				break;
+		}
+	}
+
+	private void started() {
+		synchronized (this) {
+			started = true;
+		}
+		resolveIfReady();
+	}
+
+	private void satisfied(String filter) {
+		synchronized (this) {
+			pending.remove(filter);
+		}
+		resolveIfReady();
+	}
+
+	// The promise must not be resolved while holding our lock
+	private void resolveIfReady() {
+		synchronized (this) {
+			if (done || !started || !pending.isEmpty()) {
+				return;
+			}
+			done = true;
+		}
+		close();
+		deferred.resolve(bundle);
+	}
+
+	private void fail(Throwable failure) {
+		synchronized (this) {
+			if (done) {
+				return;
+			}
+			done = true;
+		}
+		close();
+		deferred.fail(failure);
+	}
+
+	private void close() {
+		try {
+			bundleContext.removeBundleListener(this);
+			listeners.forEach(bundleContext::removeServiceListener);
+		} catch (IllegalStateException invalidContext) {
+			// ignore
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "BundleReadiness[" + bundle + "]";
+	}
+}
@@ -0,0 +1,352 @@
+/*******************************************************************************
+ * Copyright (c) Contributors to the Eclipse Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+
+package org.osgi.test.common.install;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.requireNonNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps local copies of the jars downloaded from {@code http:}, {@code https:}
+ * and {@code file:} URLs.
+ * <p>
+ * The jars are stored in a directory, named by the SHA-256 of their content,
+ * so the same content downloaded from several URLs is stored once. For each
+ * URL the cache remembers its content and a validator: the {@code ETag} and
+ * {@code Last-Modified} headers of an HTTP response, or the modification time
+ * and size of a file. An HTTP jar is only downloaded again if the server does
+ * not answer a conditional request with {@code 304 Not Modified}, and a file
+ * is only copied again if it changed. If the server cannot be reached, the
+ * cached jar is used, so tests keep working offline.
+ * <p>
+ * Cached jars are read through a memory-mapped buffer. The directory can be
+ * shared by test runs, and by several caches in the same or other processes.
+ *
+ * @see BundleInstaller.Options#downloads(DownloadCache)
+ * @since 1.2
+ */
+public class DownloadCache {
+	private static final int	CONNECT_TIMEOUT	= 10_000;
+	private static final int	READ_TIMEOUT	= 30_000;
+
+	private final Path					directory;
+	private final LongAdder				hits	= new LongAdder();
+	private final LongAdder				misses	= new LongAdder();
+	// one lock per URL, so different URLs are downloaded concurrently
+	private final Map<String, Object>	locks	= new ConcurrentHashMap<>();
+
+	/**
+	 * @param directory the directory of the cached jars; it is created if
+	 *            necessary
+	 */
+	public DownloadCache(Path directory) {
+		this.directory = requireNonNull(directory);
+	}
+
+	/**
+	 * Open a stream of the content of a URL, downloading it only if the cached
+	 * content is not current. URLs of other schemes are opened directly.
+	 *
+	 * @param url the URL
+	 * @return A stream of the content of the URL.
+	 * @throws IOException if the content cannot be downloaded and is not
+	 *             cached
+	 */
+	public InputStream openStream(URL url) throws IOException {
+		Path cached = download(url);
+		return (cached != null) ? map(cached) : url.openStream();
+	}
+
+	/**
+	 * Return the cached jar of a URL, downloading it only if the cached
+	 * content is not current. The name of the jar is the hash of its content.
+	 *
+	 * @return The cached jar, or {@code null} if the URL has another scheme.
+	 */
+	Path download(URL url) throws IOException {
+		String protocol = url.getProtocol()
+			.toLowerCase();
+		switch (protocol) {
+			case "http" :
+			case "https" :
+				synchronized (lock(url)) {
+					return http(url);
+				}
+			case "file" :
+				synchronized (lock(url)) {
+					return file(url);
+				}
+			default :
+				return null;
+		}
+	}
+
+	private Object lock(URL url) {
+		return locks.computeIfAbsent(url.toString(), k -> new Object());
+	}
+
+	/**
+	 * @return The number of opened URLs whose cached content was current.
+	 */
+	public long getHits() {
+		return hits.sum();
+	}
+
+	/**
+	 * @return The number of opened URLs whose content was downloaded.
+	 */
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	private Path http(URL url) throws IOException {
+		Properties entry = load(url);
+		Path cached = cached(entry);
+		HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+		connection.setUseCaches(false);
+		connection.setConnectTimeout(CONNECT_TIMEOUT);
+		connection.setReadTimeout(READ_TIMEOUT);
+		if (cached != null) {
+			String etag = entry.getProperty("etag");
+			if (etag != null) {
+				connection.setRequestProperty("If-None-Match", etag);
+			}
+			String lastModified = entry.getProperty("lastModified");
+			if (lastModified != null) {
+				connection.setIfModifiedSince(Long.parseLong(lastModified));
+			}
+		}
+		int status;
+		try {
+			status = connection.getResponseCode();
+		} catch (IOException e) {
+			if (cached != null) {
+				// offline, use what we have
+				hits.increment();
+				return cached;
+			}
+			throw e;
+		}
+		try {
+			if ((status == HttpURLConnection.HTTP_NOT_MODIFIED) && (cached != null)) {
+				hits.increment();
+				return cached;
+			}
+			if (status != HttpURLConnection.HTTP_OK) {
+				throw new IOException(String.format("Could not download %s: HTTP status %s", url, status));
+			}
+			Properties updated = new Properties();
+			updated.setProperty("url", url.toString());
+			String etag = connection.getHeaderField("ETag");
+			if (etag != null) {
+				updated.setProperty("etag", etag);
+			}
+			long lastModified = connection.getLastModified();
+			if (lastModified != 0L) {
+				updated.setProperty("lastModified", Long.toString(lastModified));
+			}
+			try (InputStream in = connection.getInputStream()) {
+				return store(url, updated, in);
+			}
+		} finally {
+			connection.disconnect();
+		}
+	}
+
+	private Path file(URL url) throws IOException {
+		Path file;
+		try {
+			file = Paths.get(url.toURI());
+		} catch (URISyntaxException | IllegalArgumentException e) {
+			throw new IOException(String.format("Not a file URL: %s", url), e);
+		}
+		BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+		String validator = attributes.lastModifiedTime()
+			.toMillis() + ":" + attributes.size();
+		Properties entry = load(url);
+		Path cached = cached(entry);
+		if ((cached != null) && validator.equals(entry.getProperty("validator"))) {
+			hits.increment();
+			return cached;
+		}
+		Properties updated = new Properties();
+		updated.setProperty("url", url.toString());
+		updated.setProperty("validator", validator);
+		try (InputStream in = Files.newInputStream(file)) {
+			return store(url, updated, in);
+		}
+	}
+
+	/**
+	 * Store the content under its hash and remember it for the URL.
+	 */
+	private Path store(URL url, Properties entry, InputStream in) throws IOException {
+		Files.createDirectories(directory);
+		MessageDigest digest = sha256();
+		Path temp = Files.createTempFile(directory, "download", ".tmp");
+		try {
+			Files.copy(new DigestInputStream(in, digest), temp, StandardCopyOption.REPLACE_EXISTING);
+			String content = hex(digest.digest());
+			Path target = directory.resolve(content + ".jar");
+			if (Files.exists(target)) {
+				Files.delete(temp);
+			} else {
+				move(temp, target);
+			}
+			entry.setProperty("content", content);
+			Path entryTemp = Files.createTempFile(directory, "entry", ".tmp");
+			try (OutputStream out = Files.newOutputStream(entryTemp)) {
+				entry.store(out, null);
+			}
+			move(entryTemp, entryPath(url));
+			misses.increment();
+			return target;
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	private Properties load(URL url) throws IOException {
+		Properties entry = new Properties();
+		Path path = entryPath(url);
+		if (Files.isRegularFile(path)) {
+			try (InputStream in = Files.newInputStream(path)) {
+				entry.load(in);
+			}
+			if (!url.toString()
+				.equals(entry.getProperty("url"))) {
+				entry.clear();
+			}
+		}
+		return entry;
+	}
+
+	private Path cached(Properties entry) {
+		String content = entry.getProperty("content");
+		if (content == null) {
+			return null;
+		}
+		Path cached = directory.resolve(content + ".jar");
+		return Files.isRegularFile(cached) ? cached : null;
+	}
+
+	private Path entryPath(URL url) {
+		return directory.resolve(hex(sha256().digest(url.toString()
+			.getBytes(UTF_8))) + ".url");
+	}
+
+	private static void move(Path source, Path target) throws IOException {
+		try {
+			Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	static InputStream map(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0L, channel.size());
+			return new ByteBufferInputStream(buffer);
+		}
+	}
+
+	private static MessageDigest sha256() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static String hex(byte[] bytes) {
+		StringBuilder sb = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes) {
+			sb.append(Character.forDigit((b >> 4) & 0xF, 16))
+				.append(Character.forDigit(b & 0xF, 16));
+		}
+		return sb.toString();
+	}
+
+	@Override
+	public String toString() {
+		return "DownloadCache[" + directory + "]";
+	}
+
+	static final class ByteBufferInputStream extends InputStream {
+		private final ByteBuffer buffer;
+
+		ByteBufferInputStream(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		@Override
+		public int read() {
+			return buffer.hasRemaining() ? (buffer.get() & 0xFF) : -1;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) {
+			if (len == 0) {
+				return 0;
+			}
+			if (!buffer.hasRemaining()) {
+				return -1;
+			}
+			int n = Math.min(len, buffer.remaining());
+			buffer.get(b, off, n);
+			return n;
+		}
+
+		@Override
+		public long skip(long n) {
+			int skipped = (int) Math.max(0L, Math.min(n, buffer.remaining()));
+			buffer.position(buffer.position() + skipped);
+			return skipped;
+		}
+
+		@Override
+		public int available() {
+			return buffer.remaining();
+		}
+	}
+}
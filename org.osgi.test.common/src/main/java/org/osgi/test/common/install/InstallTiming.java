@@ -0,0 +1,116 @@
+/*******************************************************************************
+ * Copyright (c) Contributors to the Eclipse Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+
+package org.osgi.test.common.install;
+
+import java.time.Duration;
+
+/**
+ * The time taken by each step of the installation of a bundle by a
+ * {@link BundleInstaller}, and the size of the bundle.
+ * <p>
+ * A {@link BundleInstaller} created with a recorder passes the timing of each
+ * bundle it installs to the recorder. To measure the resolve of a single
+ * started bundle, it is then resolved before it is started.
+ * <p>
+ * Bundles installed with {@link BundleInstaller#installBundles} are resolved
+ * together; their resolve time is the time of that shared resolve. The resolve
+ * and start times are zero if the bundle was not started.
+ *
+ * @since 1.2
+ */
+public final class InstallTiming {
+	private final String	location;
+	private final String	symbolicName;
+	private final long		size;
+	private final Duration	openTime;
+	private final Duration	installTime;
+	private final Duration	resolveTime;
+	private final Duration	startTime;
+
+	InstallTiming(String location, String symbolicName, long size, Duration openTime, Duration installTime,
+		Duration resolveTime, Duration startTime) {
+		this.location = location;
+		this.symbolicName = symbolicName;
+		this.size = size;
+		this.openTime = openTime;
+		this.installTime = installTime;
+		this.resolveTime = resolveTime;
+		this.startTime = startTime;
+	}
+
+	public String getLocation() {
+		return location;
+	}
+
+	public String getSymbolicName() {
+		return symbolicName;
+	}
+
+	/**
+	 * @return The number of bytes read from the jar resource. This is zero if
+	 *         the framework did not read the jar, for example because a
+	 *         bundle with the location was already installed.
+	 */
+	public long getSize() {
+		return size;
+	}
+
+	/**
+	 * @return The time taken to find and open the jar resource.
+	 */
+	public Duration getOpenTime() {
+		return openTime;
+	}
+
+	/**
+	 * @return The time taken by the framework to read the jar resource and
+	 *         install the bundle.
+	 */
+	public Duration getInstallTime() {
+		return installTime;
+	}
+
+	public Duration getResolveTime() {
+		return resolveTime;
+	}
+
+	/**
+	 * @return The time taken to start the bundle, which includes the time
+	 *         taken by its bundle activator.
+	 */
+	public Duration getStartTime() {
+		return startTime;
+	}
+
+	/**
+	 * @return The sum of the times of all steps.
+	 */
+	public Duration getTotalTime() {
+		return openTime.plus(installTime)
+			.plus(resolveTime)
+			.plus(startTime);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("InstallTiming [%s, location=%s, size=%s, open=%sms, install=%sms, resolve=%sms, start=%sms]",
+			symbolicName, location, size, openTime.toMillis(), installTime.toMillis(), resolveTime.toMillis(),
+			startTime.toMillis());
+	}
+}
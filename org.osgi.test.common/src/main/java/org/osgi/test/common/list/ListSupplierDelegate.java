@@ -1,13 +1,17 @@
 package org.osgi.test.common.list;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.NoSuchElementException;
 import java.util.Objects;
 import java.util.Spliterator;
 import java.util.function.Consumer;
+import java.util.function.IntSupplier;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
 import java.util.function.UnaryOperator;
@@ -15,39 +19,104 @@ import java.util.stream.Stream;
 
 public class ListSupplierDelegate<E> implements List<E> {
 
-	private final Supplier<? extends List<E>> supplier;
+	private final Supplier<? extends List<E>>	supplier;
+	private final Supplier<? extends List<E>>	modifiable;
+	// whether the supplier returns immutable snapshots
+	private final boolean						snapshots;
 
 	public ListSupplierDelegate(Supplier<? extends List<E>> supplier) {
 		this.supplier = Objects.requireNonNull(supplier);
+		this.modifiable = supplier;
+		this.snapshots = false;
+	}
+
+	/**
+	 * Create a delegate which caches a snapshot of the supplied list.
+	 * <p>
+	 * The snapshot is only rebuilt when the value returned by the
+	 * {@code version} supplier changes, for example the change count of a
+	 * service configuration. Reading, iterating and taking sub lists do not
+	 * copy the snapshot. As with a delegate which does not cache, methods
+	 * which modify the list, the iterators or the sub lists operate on a copy
+	 * and do not affect later calls.
+	 *
+	 * @param supplier supplies the current list
+	 * @param version supplies the current version of the list
+	 * @since 1.1
+	 */
+	public ListSupplierDelegate(Supplier<? extends List<E>> supplier, IntSupplier version) {
+		Supplier<List<E>> snapshot = new SnapshotSupplier<>(supplier, version);
+		this.supplier = snapshot;
+		this.modifiable = () -> new ArrayList<>(snapshot.get());
+		this.snapshots = true;
+	}
+
+	private ListSupplierDelegate(List<E> snapshot) {
+		this.supplier = () -> snapshot;
+		this.modifiable = () -> new ArrayList<>(snapshot);
+		this.snapshots = true;
+	}
+
+	private static final class SnapshotSupplier<E> implements Supplier<List<E>> {
+		private final Supplier<? extends List<E>>	supplier;
+		private final IntSupplier					version;
+		private volatile Snapshot<E>				snapshot;
+
+		SnapshotSupplier(Supplier<? extends List<E>> supplier, IntSupplier version) {
+			this.supplier = Objects.requireNonNull(supplier);
+			this.version = Objects.requireNonNull(version);
+		}
+
+		@Override
+		public List<E> get() {
+			// Read the version before the list so a concurrent change causes
+			// the next call to rebuild the snapshot
+			final int current = version.getAsInt();
+			Snapshot<E> snapshot = this.snapshot;
+			if ((snapshot == null) || (snapshot.version != current)) {
+				this.snapshot = snapshot = new Snapshot<>(current, supplier.get());
+			}
+			return snapshot.list;
+		}
+	}
+
+	private static final class Snapshot<E> {
+		final int		version;
+		final List<E>	list;
+
+		Snapshot(int version, List<E> list) {
+			this.version = version;
+			this.list = Collections.unmodifiableList(new ArrayList<>(list));
+		}
 	}
 
 	@Override
 	public boolean add(E e) {
-		return supplier.get()
+		return modifiable.get()
 			.add(e);
 	}
 
 	@Override
 	public void add(int index, E element) {
-		supplier.get()
+		modifiable.get()
 			.add(index, element);
 	}
 
 	@Override
 	public boolean addAll(Collection<? extends E> c) {
-		return supplier.get()
+		return modifiable.get()
 			.addAll(c);
 	}
 
 	@Override
 	public boolean addAll(int index, Collection<? extends E> c) {
-		return supplier.get()
+		return modifiable.get()
 			.addAll(index, c);
 	}
 
 	@Override
 	public void clear() {
-		supplier.get()
+		modifiable.get()
 			.clear();
 	}
 
@@ -101,7 +170,10 @@ public class ListSupplierDelegate<E> implements List<E> {
 
 	@Override
 	public Iterator<E> iterator() {
-		return supplier.get()
+		if (snapshots) {
+			return new SnapshotIterator<>(supplier.get(), 0);
+		}
+		return modifiable.get()
 			.iterator();
 	}
 
@@ -113,13 +185,19 @@ public class ListSupplierDelegate<E> implements List<E> {
 
 	@Override
 	public ListIterator<E> listIterator() {
-		return supplier.get()
-			.listIterator();
+		return listIterator(0);
 	}
 
 	@Override
 	public ListIterator<E> listIterator(int index) {
-		return supplier.get()
+		if (snapshots) {
+			List<E> list = supplier.get();
+			if ((index < 0) || (index > list.size())) {
+				throw new IndexOutOfBoundsException("Index: " + index);
+			}
+			return new SnapshotIterator<>(list, index);
+		}
+		return modifiable.get()
 			.listIterator(index);
 	}
 
@@ -131,43 +209,43 @@ public class ListSupplierDelegate<E> implements List<E> {
 
 	@Override
 	public E remove(int index) {
-		return supplier.get()
+		return modifiable.get()
 			.remove(index);
 	}
 
 	@Override
 	public boolean remove(Object o) {
-		return supplier.get()
+		return modifiable.get()
 			.remove(o);
 	}
 
 	@Override
 	public boolean removeAll(Collection<?> c) {
-		return supplier.get()
+		return modifiable.get()
 			.removeAll(c);
 	}
 
 	@Override
 	public boolean removeIf(Predicate<? super E> filter) {
-		return supplier.get()
+		return modifiable.get()
 			.removeIf(filter);
 	}
 
 	@Override
 	public void replaceAll(UnaryOperator<E> operator) {
-		supplier.get()
+		modifiable.get()
 			.replaceAll(operator);
 	}
 
 	@Override
 	public boolean retainAll(Collection<?> c) {
-		return supplier.get()
+		return modifiable.get()
 			.retainAll(c);
 	}
 
 	@Override
 	public E set(int index, E element) {
-		return supplier.get()
+		return modifiable.get()
 			.set(index, element);
 	}
 
@@ -179,7 +257,7 @@ public class ListSupplierDelegate<E> implements List<E> {
 
 	@Override
 	public void sort(Comparator<? super E> c) {
-		supplier.get()
+		modifiable.get()
 			.sort(c);
 	}
 
@@ -197,7 +275,11 @@ public class ListSupplierDelegate<E> implements List<E> {
 
 	@Override
 	public List<E> subList(int fromIndex, int toIndex) {
-		return supplier.get()
+		if (snapshots) {
+			return new ListSupplierDelegate<>(supplier.get()
+				.subList(fromIndex, toIndex));
+		}
+		return modifiable.get()
 			.subList(fromIndex, toIndex);
 	}
 
@@ -212,4 +294,90 @@ public class ListSupplierDelegate<E> implements List<E> {
 		return supplier.get()
 			.toArray(a);
 	}
+
+	/**
+	 * A list iterator over an immutable snapshot which copies the snapshot
+	 * the first time it is used to modify the list.
+	 */
+	private static final class SnapshotIterator<E> implements ListIterator<E> {
+		private List<E>	list;
+		private boolean	copied;
+		private int		cursor;
+		private int		last	= -1;
+
+		SnapshotIterator(List<E> list, int index) {
+			this.list = list;
+			this.cursor = index;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return cursor < list.size();
+		}
+
+		@Override
+		public E next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			last = cursor++;
+			return list.get(last);
+		}
+
+		@Override
+		public boolean hasPrevious() {
+			return cursor > 0;
+		}
+
+		@Override
+		public E previous() {
+			if (!hasPrevious()) {
+				throw new NoSuchElementException();
+			}
+			last = --cursor;
+			return list.get(last);
+		}
+
+		@Override
+		public int nextIndex() {
+			return cursor;
+		}
+
+		@Override
+		public int previousIndex() {
+			return cursor - 1;
+		}
+
+		@Override
+		public void remove() {
+			if (last < 0) {
+				throw new IllegalStateException();
+			}
+			modifiable().remove(last);
+			cursor = last;
+			last = -1;
+		}
+
+		@Override
+		public void set(E e) {
+			if (last < 0) {
+				throw new IllegalStateException();
+			}
+			modifiable().set(last, e);
+		}
+
+		@Override
+		public void add(E e) {
+			modifiable().add(cursor++, e);
+			last = -1;
+		}
+
+		private List<E> modifiable() {
+			if (!copied) {
+				list = new ArrayList<>(list);
+				copied = true;
+			}
+			return list;
+		}
+	}
 }
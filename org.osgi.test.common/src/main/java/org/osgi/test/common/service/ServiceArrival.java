@@ -0,0 +1,106 @@
+/*******************************************************************************
+ * Copyright (c) Contributors to the Eclipse Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+
+package org.osgi.test.common.service;
+
+import java.time.Duration;
+
+import org.osgi.framework.Filter;
+
+/**
+ * The outcome of waiting for the services of a {@link ServiceConfiguration}.
+ *
+ * @see ServiceConfiguration#onArrival(java.util.function.Consumer)
+ * @since 1.1
+ */
+public final class ServiceArrival {
+	private final Filter	filter;
+	private final int		cardinality;
+	private final long		timeout;
+	private final Duration	waited;
+	private final int		trackingCount;
+	private final boolean	arrived;
+
+	ServiceArrival(Filter filter, int cardinality, long timeout, Duration waited, int trackingCount,
+		boolean arrived) {
+		this.filter = filter;
+		this.cardinality = cardinality;
+		this.timeout = timeout;
+		this.waited = waited;
+		this.trackingCount = trackingCount;
+		this.arrived = arrived;
+	}
+
+	public Filter getFilter() {
+		return filter;
+	}
+
+	public int getCardinality() {
+		return cardinality;
+	}
+
+	/**
+	 * @return The configured timeout in milliseconds.
+	 */
+	public long getTimeout() {
+		return timeout;
+	}
+
+	/**
+	 * The time waited for the services. The first wait after the tracker was
+	 * opened is measured from when the tracker was opened.
+	 *
+	 * @return The time waited.
+	 */
+	public Duration getWaited() {
+		return waited;
+	}
+
+	/**
+	 * The time which was left of the timeout when the services arrived. This
+	 * is negative if the services did not arrive.
+	 *
+	 * @return The remaining time.
+	 */
+	public Duration getHeadroom() {
+		return Duration.ofMillis(timeout)
+			.minus(waited);
+	}
+
+	/**
+	 * The tracking count of the tracker when the wait ended, which is the
+	 * number of times the tracked services changed since the tracker was
+	 * opened.
+	 *
+	 * @return The tracking count.
+	 */
+	public int getTrackingCount() {
+		return trackingCount;
+	}
+
+	public boolean isArrived() {
+		return arrived;
+	}
+
+	@Override
+	public String toString() {
+		return String.format(
+			"ServiceArrival [filter=\"%s\", cardinality=%s, timeout=%s, waited=%sms, trackingCount=%s, arrived=%s]",
+			filter, cardinality, timeout, waited.toMillis(), trackingCount, arrived);
+	}
+}
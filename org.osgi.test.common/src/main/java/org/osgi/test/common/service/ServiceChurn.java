@@ -0,0 +1,371 @@
+/*******************************************************************************
+ * Copyright (c) Contributors to the Eclipse Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+
+package org.osgi.test.common.service;
+
+import static java.util.Objects.requireNonNull;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Dictionary;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceEvent;
+import org.osgi.framework.ServiceListener;
+import org.osgi.framework.ServiceReference;
+import org.osgi.framework.ServiceRegistration;
+import org.osgi.test.common.context.CloseableBundleContext;
+import org.osgi.test.common.exceptions.Exceptions;
+
+/**
+ * Registers, modifies and unregisters services at a configurable rate from
+ * several threads to check that the consumers of the services cope with
+ * service dynamics.
+ * <p>
+ * Each cycle of a churning thread registers a service, modifies its
+ * properties and unregisters it. All services are registered with the
+ * {@link #CHURN} property set to the {@link #getId() id} of the churn so they
+ * can be tracked with a {@link ServiceAware} using the {@link #getFilter()
+ * filter} of the churn. The services are registered through a
+ * {@link CloseableBundleContext} so no service outlives the churn.
+ * <p>
+ * Example:
+ *
+ * <pre>
+ * ServiceChurn&lt;Foo&gt; churn = new ServiceChurn&lt;&gt;(bundleContext, Foo.class, FooImpl::new)
+ * 	.threads(4)
+ * 	.cycles(1000);
+ * try (ServiceConfiguration&lt;Foo&gt; observer = new ServiceConfiguration&lt;&gt;(Foo.class,
+ * 	churn.getFilter(), new String[0], 0, 0).init(bundleContext)) {
+ * 	ServiceChurn.Result result = churn.run(observer);
+ * 	assertThat(result.getLostEvents()).isZero();
+ * }
+ * </pre>
+ *
+ * @since 1.1
+ */
+public class ServiceChurn<S> {
+
+	/**
+	 * The service property identifying the services of a churn.
+	 */
+	public static final String			CHURN		= "org.osgi.test.churn";
+
+	/**
+	 * The service property which is incremented when a churned service is
+	 * modified.
+	 */
+	public static final String			MODIFIED	= "org.osgi.test.churn.modified";
+
+	private static final AtomicInteger	ids			= new AtomicInteger();
+	// the events each registration of a churn causes
+	private static final int[]			EVENT_TYPES	= {
+		ServiceEvent.REGISTERED, ServiceEvent.MODIFIED, ServiceEvent.UNREGISTERING
+	};
+
+	private final BundleContext			bundleContext;
+	private final Class<S>				serviceType;
+	private final Supplier<? extends S>	serviceFactory;
+	private final String				id;
+	private int							threads		= 1;
+	private int							cycles		= 100;
+	private int							rate;
+
+	/**
+	 * @param bundleContext the bundle context used to register the services
+	 * @param serviceType the type the services are registered under
+	 * @param serviceFactory creates the service object of each cycle
+	 */
+	public ServiceChurn(BundleContext bundleContext, Class<S> serviceType, Supplier<? extends S> serviceFactory) {
+		this.bundleContext = requireNonNull(bundleContext);
+		this.serviceType = requireNonNull(serviceType);
+		this.serviceFactory = requireNonNull(serviceFactory);
+		this.id = "churn-" + ids.incrementAndGet();
+	}
+
+	/**
+	 * @param threads the number of churning threads; the default is 1
+	 * @return this churn
+	 */
+	public ServiceChurn<S> threads(int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("threads must be greater than zero");
+		}
+		this.threads = threads;
+		return this;
+	}
+
+	/**
+	 * @param cycles the number of register, modify and unregister cycles of
+	 *            each thread; the default is 100
+	 * @return this churn
+	 */
+	public ServiceChurn<S> cycles(int cycles) {
+		if (cycles < 0) {
+			throw new IllegalArgumentException("cycles must be zero or greater");
+		}
+		this.cycles = cycles;
+		return this;
+	}
+
+	/**
+	 * @param rate the number of cycles per second of each thread, or zero
+	 *            for as fast as possible; the default is zero
+	 * @return this churn
+	 */
+	public ServiceChurn<S> rate(int rate) {
+		if (rate < 0) {
+			throw new IllegalArgumentException("rate must be zero or greater");
+		}
+		this.rate = rate;
+		return this;
+	}
+
+	/**
+	 * @return the value of the {@link #CHURN} property of the services of
+	 *         this churn
+	 */
+	public String getId() {
+		return id;
+	}
+
+	/**
+	 * @return a filter matching the services of this churn
+	 */
+	public String getFilter() {
+		return "(" + CHURN + "=" + id + ")";
+	}
+
+	/**
+	 * Run the churn and wait for all threads to complete.
+	 * <p>
+	 * If there is an observer, the events its tracker handles are counted per
+	 * registration and event type, so that each registration of the churn is
+	 * checked to be added, modified and removed exactly once.
+	 *
+	 * @param observer a service aware tracking the services of this churn,
+	 *            or {@code null}
+	 * @return the result of the churn
+	 * @throws IllegalArgumentException if the observer is not provided by
+	 *             this library
+	 */
+	public Result run(ServiceAware<S> observer) {
+		if ((observer != null) && !(observer instanceof ServiceConfiguration)) {
+			throw new IllegalArgumentException("not a ServiceConfiguration: " + observer);
+		}
+		final ServiceConfiguration<S> configuration = (ServiceConfiguration<S>) observer;
+		final Queue<ServiceReference<S>> churned = new ConcurrentLinkedQueue<>();
+		final Map<ServiceReference<?>, AtomicIntegerArray> observed = new ConcurrentHashMap<>();
+		final ServiceListener listener = event -> observed
+			.computeIfAbsent(event.getServiceReference(), k -> new AtomicIntegerArray(EVENT_TYPES.length))
+			.incrementAndGet(eventIndex(event.getType()));
+		if (configuration != null) {
+			configuration.addServiceListener(listener);
+		}
+		final LongAdder registrations = new LongAdder();
+		final LongAdder modifications = new LongAdder();
+		final LongAdder unregistrations = new LongAdder();
+		final BundleContext churnContext = CloseableBundleContext.proxy(bundleContext);
+		final ExecutorService executor = Executors.newFixedThreadPool(threads);
+		final long start = System.nanoTime();
+		try {
+			List<Future<?>> futures = new ArrayList<>(threads);
+			for (int t = 0; t < threads; t++) {
+				futures.add(executor.submit(() -> {
+					final long interval = (rate > 0) ? TimeUnit.SECONDS.toNanos(1L) / rate : 0L;
+					long next = System.nanoTime();
+					for (int c = 0; c < cycles; c++) {
+						if (interval > 0L) {
+							for (long wait; (wait = next - System.nanoTime()) > 0L;) {
+								LockSupport.parkNanos(wait);
+							}
+							next += interval;
+						}
+						Dictionary<String, Object> properties = new Hashtable<>();
+						properties.put(CHURN, id);
+						properties.put(MODIFIED, 0);
+						ServiceRegistration<S> registration = churnContext.registerService(serviceType,
+							serviceFactory.get(), properties);
+						registrations.increment();
+						churned.add(registration.getReference());
+						properties.put(MODIFIED, 1);
+						registration.setProperties(properties);
+						modifications.increment();
+						registration.unregister();
+						unregistrations.increment();
+					}
+					return null;
+				}));
+			}
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} catch (ExecutionException e) {
+			throw Exceptions.duck(e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread()
+				.interrupt();
+			throw Exceptions.duck(e);
+		} finally {
+			executor.shutdownNow();
+			Exceptions.unchecked(() -> ((AutoCloseable) churnContext).close());
+			if (configuration != null) {
+				configuration.removeServiceListener(listener);
+			}
+		}
+		final Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+		if (configuration == null) {
+			return new Result(registrations.sum(), modifications.sum(), unregistrations.sum(), -1L, 0L, 0L, elapsed);
+		}
+		long events = 0L;
+		long lost = 0L;
+		long duplicated = 0L;
+		for (ServiceReference<S> reference : churned) {
+			AtomicIntegerArray counts = observed.remove(reference);
+			for (int i = 0; i < EVENT_TYPES.length; i++) {
+				int count = (counts != null) ? counts.get(i) : 0;
+				events += count;
+				lost += Math.max(1 - count, 0);
+				duplicated += Math.max(count - 1, 0);
+			}
+		}
+		// events of services the churn did not register are not expected
+		for (AtomicIntegerArray counts : observed.values()) {
+			for (int i = 0; i < EVENT_TYPES.length; i++) {
+				events += counts.get(i);
+				duplicated += counts.get(i);
+			}
+		}
+		return new Result(registrations.sum(), modifications.sum(), unregistrations.sum(), events, lost, duplicated,
+			elapsed);
+	}
+
+	private static int eventIndex(int type) {
+		for (int i = 0; i < EVENT_TYPES.length; i++) {
+			if (EVENT_TYPES[i] == type) {
+				return i;
+			}
+		}
+		throw new IllegalArgumentException("unexpected service event type: " + type);
+	}
+
+	/**
+	 * The result of a churn.
+	 */
+	public static final class Result {
+		private final long		registrations;
+		private final long		modifications;
+		private final long		unregistrations;
+		private final long		observed;
+		private final long		lost;
+		private final long		duplicated;
+		private final Duration	elapsed;
+
+		Result(long registrations, long modifications, long unregistrations, long observed, long lost,
+			long duplicated, Duration elapsed) {
+			this.registrations = registrations;
+			this.modifications = modifications;
+			this.unregistrations = unregistrations;
+			this.observed = observed;
+			this.lost = lost;
+			this.duplicated = duplicated;
+			this.elapsed = elapsed;
+		}
+
+		public long getRegistrations() {
+			return registrations;
+		}
+
+		public long getModifications() {
+			return modifications;
+		}
+
+		public long getUnregistrations() {
+			return unregistrations;
+		}
+
+		/**
+		 * @return the number of service events caused by the churn
+		 */
+		public long getEvents() {
+			return registrations + modifications + unregistrations;
+		}
+
+		/**
+		 * @return the number of service events handled by the tracker of the
+		 *         observer, or -1 if there was no observer
+		 */
+		public long getObservedEvents() {
+			return observed;
+		}
+
+		/**
+		 * @return the number of service events the observer missed, counted
+		 *         per registration and event type, or zero if there was no
+		 *         observer
+		 */
+		public long getLostEvents() {
+			return lost;
+		}
+
+		/**
+		 * @return the number of service events the observer saw more than
+		 *         once or did not expect, counted per registration and event
+		 *         type, or zero if there was no observer
+		 */
+		public long getDuplicatedEvents() {
+			return duplicated;
+		}
+
+		public Duration getElapsed() {
+			return elapsed;
+		}
+
+		/**
+		 * @return the number of service events per second
+		 */
+		public double getThroughput() {
+			long nanos = elapsed.toNanos();
+			return (nanos == 0L) ? 0.0 : getEvents() * (double) TimeUnit.SECONDS.toNanos(1L) / nanos;
+		}
+
+		@Override
+		public String toString() {
+			return String.format(
+				"ServiceChurn.Result [events=%s, registrations=%s, modifications=%s, unregistrations=%s, observed=%s, lost=%s, duplicated=%s, elapsed=%sms, throughput=%.1f/s]",
+				getEvents(), registrations, modifications, unregistrations, observed, getLostEvents(),
+				getDuplicatedEvents(), elapsed.toMillis(), getThroughput());
+		}
+	}
+}
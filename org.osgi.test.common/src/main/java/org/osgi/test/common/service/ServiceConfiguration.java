@@ -18,33 +18,42 @@
 
 package org.osgi.test.common.service;
 
+import static java.util.Collections.emptyList;
+import static java.util.Collections.unmodifiableList;
 import static java.util.Objects.requireNonNull;
-import static java.util.stream.Collectors.toList;
 import static org.osgi.test.common.filter.Filters.format;
 
+import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
 import java.util.SortedMap;
-import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
-import java.util.function.Function;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
 
 import org.osgi.framework.BundleContext;
+import org.osgi.framework.Constants;
 import org.osgi.framework.Filter;
+import org.osgi.framework.ServiceEvent;
+import org.osgi.framework.ServiceListener;
 import org.osgi.framework.ServiceReference;
 import org.osgi.util.tracker.ServiceTracker;
 import org.osgi.util.tracker.ServiceTrackerCustomizer;
 
 public class ServiceConfiguration<S> implements AutoCloseable, ServiceAware<S> {
 
-	private final int						cardinality;
-	private final Filter					filter;
-	private final Class<S>					serviceType;
-	private final long						timeout;
-	private volatile ServiceTracker<S, S>	tracker;
+	private final int									cardinality;
+	private final Filter								filter;
+	private final Class<S>								serviceType;
+	private final long									timeout;
+	private volatile ServiceTracker<S, S>				tracker;
+	private volatile InnerCustomizer<S>					customizer;
+	private volatile Consumer<? super ServiceArrival>	arrivalListener;
 
 	public ServiceConfiguration(ServiceConfigurationKey<S> key) {
 		this(key.serviceType, key.filter, key.filterArguments, key.cardinality, key.timeout);
@@ -79,50 +88,165 @@ public class ServiceConfiguration<S> implements AutoCloseable, ServiceAware<S> {
 	}
 
 	public ServiceConfiguration<S> init(BundleContext bundleContext) {
+		return open(bundleContext).await();
+	}
+
+	/**
+	 * Open the tracker for this configuration without waiting for the
+	 * services to arrive.
+	 *
+	 * @param bundleContext the bundle context used to track the services
+	 * @return this configuration
+	 * @see #await()
+	 * @since 1.1
+	 */
+	public ServiceConfiguration<S> open(BundleContext bundleContext) {
 		requireNonNull(bundleContext);
-		CountDownLatch countDownLatch = new CountDownLatch(getCardinality());
+		InnerCustomizer<S> customizer = new InnerCustomizer<>(bundleContext, getCustomizer());
 
-		ServiceTracker<S, S> tracker = new ServiceTracker<>(bundleContext, getFilter(),
-			new InnerCustomizer<>(bundleContext, countDownLatch, getCustomizer()));
+		ServiceTracker<S, S> tracker = new ServiceTracker<>(bundleContext, getFilter(), customizer);
 		tracker.open();
 
-		try {
-			final Instant endTime = Instant.now()
-				.plusMillis(getTimeout());
-			if (!countDownLatch.await(getTimeout(), TimeUnit.MILLISECONDS)) {
-				throw new AssertionError(
-					getCardinality() - tracker.size() + "/" + getCardinality() + " services " + getFilter()
-						+ " didn't arrive within "
-						+ getTimeout() + "ms");
-			}
+		this.customizer = customizer;
+		this.tracker = tracker;
+		return this;
+	}
 
-			// CountDownLatch is fired when the last addingService() is called,
-			// but this completes before the service is actually added to the
-			// tracker. Need to poll-wait for a bit while the actual addition
-			// completes (shouldn't be long).
-			while (tracker.size() < cardinality) {
-				if (Instant.now()
-					.isAfter(endTime)) {
+	/**
+	 * Wait up to the configured timeout for the configured cardinality of
+	 * services to be tracked.
+	 * <p>
+	 * Returns immediately if the configuration is already satisfied. May be
+	 * called again after the configuration was satisfied, for example to
+	 * wait for services which have since gone away to come back.
+	 *
+	 * @return this configuration
+	 * @throws AssertionError if the services did not arrive within the
+	 *             timeout
+	 * @since 1.1
+	 */
+	public ServiceConfiguration<S> await() {
+		return awaitArrival(getTimeout(), null);
+	}
 
-					throw new AssertionError(
-						getCardinality() - tracker.size() + "/" + getCardinality() + " services " + getFilter()
-							+ " didn't arrive within "
-							+ getTimeout() + "ms");
-				}
-				Thread.sleep(10);
-			}
+	/**
+	 * Wait until the specified deadline for the configured cardinality of
+	 * services to be tracked.
+	 * <p>
+	 * This allows several configurations which were opened together to be
+	 * awaited on a common deadline.
+	 *
+	 * @param deadline the instant by which the services must have arrived
+	 * @return this configuration
+	 * @throws AssertionError if the services did not arrive by the deadline
+	 * @see #await()
+	 * @since 1.1
+	 */
+	public ServiceConfiguration<S> await(Instant deadline) {
+		return await(deadline, null);
+	}
+
+	/**
+	 * Wait up to the configured timeout for the configured cardinality of
+	 * services to be tracked and report the outcome of this wait to the
+	 * specified listener.
+	 * <p>
+	 * This allows callers sharing a configuration to each observe their own
+	 * waits. The listener set with {@link #onArrival(Consumer)} is called as
+	 * well.
+	 *
+	 * @param listener the listener for this wait, or {@code null}
+	 * @return this configuration
+	 * @throws AssertionError if the services did not arrive within the
+	 *             timeout
+	 * @see #await()
+	 * @since 1.1
+	 */
+	public ServiceConfiguration<S> await(Consumer<? super ServiceArrival> listener) {
+		return awaitArrival(getTimeout(), listener);
+	}
+
+	/**
+	 * Wait until the specified deadline for the configured cardinality of
+	 * services to be tracked and report the outcome of this wait to the
+	 * specified listener.
+	 *
+	 * @param deadline the instant by which the services must have arrived
+	 * @param listener the listener for this wait, or {@code null}
+	 * @return this configuration
+	 * @throws AssertionError if the services did not arrive by the deadline
+	 * @see #await(Instant)
+	 * @see #await(Consumer)
+	 * @since 1.1
+	 */
+	public ServiceConfiguration<S> await(Instant deadline, Consumer<? super ServiceArrival> listener) {
+		long remaining = Duration.between(Instant.now(), requireNonNull(deadline))
+			.toMillis();
+		return awaitArrival(Math.max(remaining, 0L), listener);
+	}
+
+	/**
+	 * Set a listener which is called with the outcome of each wait for the
+	 * services of this configuration, whether or not the services arrived.
+	 *
+	 * @param listener the listener, or {@code null} for no listener
+	 * @return this configuration
+	 * @since 1.1
+	 */
+	public ServiceConfiguration<S> onArrival(Consumer<? super ServiceArrival> listener) {
+		this.arrivalListener = listener;
+		return this;
+	}
+
+	private ServiceConfiguration<S> awaitArrival(long timeout, Consumer<? super ServiceArrival> waitListener) {
+		final ServiceTracker<S, S> tracker = requireNonNull(this.tracker, "configuration has not been opened");
+		final InnerCustomizer<S> customizer = this.customizer;
+		final long start = customizer.waitStart();
+		boolean arrived = false;
+		try {
+			arrived = customizer.awaitArrival(tracker, getCardinality(), timeout);
 		} catch (InterruptedException e) {
 			throw new AssertionError(e);
+		} finally {
+			final Consumer<? super ServiceArrival> listener = arrivalListener;
+			if ((listener != null) || (waitListener != null)) {
+				ServiceArrival arrival = new ServiceArrival(getFilter(), getCardinality(), getTimeout(),
+					Duration.ofNanos(System.nanoTime() - start), tracker.getTrackingCount(), arrived);
+				if (listener != null) {
+					listener.accept(arrival);
+				}
+				if (waitListener != null) {
+					waitListener.accept(arrival);
+				}
+			}
+		}
+		if (!arrived) {
+			throw new AssertionError(
+				getCardinality() - tracker.size() + "/" + getCardinality() + " services " + getFilter()
+					+ " didn't arrive within "
+					+ getTimeout() + "ms");
 		}
-		this.tracker = tracker;
 		return this;
 	}
 
+	/**
+	 * Return whether the tracker currently holds at least the configured
+	 * cardinality of services.
+	 *
+	 * @return {@code true} if the configuration is satisfied
+	 * @since 1.1
+	 */
+	public boolean isSatisfied() {
+		final ServiceTracker<S, S> tracker = this.tracker;
+		return (tracker != null) && (tracker.size() >= getCardinality());
+	}
+
 	@Override
 	public void close() {
 		final ServiceTracker<S, S> tracker = this.tracker;
 		if (tracker != null) {
 			tracker.close();
+			customizer.close();
 		}
 	}
 
@@ -168,25 +292,88 @@ public class ServiceConfiguration<S> implements AutoCloseable, ServiceAware<S> {
 		return tracker.getServiceReference();
 	}
 
-	private <R> List<R> listOf(Function<ServiceReference<S>, R> mapper) {
-		ServiceReference<S>[] serviceReferences = tracker.getServiceReferences();
-		if (serviceReferences == null) {
+	/**
+	 * Map the tracked services in ranking order.
+	 * <p>
+	 * The tracker remains the source of truth: it drops a service before it
+	 * calls {@link InnerCustomizer#removedService} and records a service only
+	 * after {@link InnerCustomizer#addingService} returns. So each indexed
+	 * service is checked against the tracker and only those the tracker
+	 * holds are returned, as when the tracker was read directly.
+	 */
+	private <R> List<R> listOf(BiFunction<ServiceReference<S>, S, R> mapper) {
+		final ServiceTracker<S, S> tracker = this.tracker;
+		final InnerCustomizer<S> customizer = this.customizer;
+		if (customizer == null) {
 			return new ArrayList<>();
 		}
-		return Arrays.stream(serviceReferences)
-			.sorted()
-			.map(mapper)
-			.collect(toList());
+		List<Ranked<S>> ranked = customizer.index().ranked;
+		List<R> result = new ArrayList<>(ranked.size());
+		for (Ranked<S> r : ranked) {
+			S service = tracker.getService(r.reference);
+			if (service != null) {
+				result.add(mapper.apply(r.reference, service));
+			}
+		}
+		return result;
 	}
 
 	@Override
 	public List<ServiceReference<S>> getServiceReferences() {
-		return listOf(Function.identity());
+		return listOf((reference, service) -> reference);
 	}
 
 	@Override
 	public List<S> getServices() {
-		return listOf(this::getService);
+		return listOf((reference, service) -> service);
+	}
+
+	/**
+	 * Add a watcher of the tracked services, which is tested now and after
+	 * each change to the tracked services until it is done or this is
+	 * closed.
+	 */
+	void watch(Watcher<S> watcher) {
+		opened().watch(watcher);
+	}
+
+	/**
+	 * Add a listener which is called with a {@link ServiceEvent#REGISTERED},
+	 * {@link ServiceEvent#MODIFIED} or {@link ServiceEvent#UNREGISTERING}
+	 * event each time the tracker adds, modifies or removes a service.
+	 */
+	void addServiceListener(ServiceListener listener) {
+		opened().listeners.add(listener);
+	}
+
+	void removeServiceListener(ServiceListener listener) {
+		opened().listeners.remove(listener);
+	}
+
+	private InnerCustomizer<S> opened() {
+		return requireNonNull(this.customizer, "configuration has not been opened");
+	}
+
+	/**
+	 * Return a count which changes whenever the results of
+	 * {@link #getServices()} and {@link #getServiceReferences()} may have
+	 * changed.
+	 * <p>
+	 * The count moves once the index of the tracked services was updated and
+	 * once the tracker has recorded the change, so a list cached under the
+	 * count is rebuilt after both have seen a change.
+	 *
+	 * @return the change count
+	 * @since 1.1
+	 */
+	public int getChangeCount() {
+		final ServiceTracker<S, S> tracker = this.tracker;
+		final InnerCustomizer<S> customizer = this.customizer;
+		if ((tracker == null) || (customizer == null)) {
+			return 0;
+		}
+		// both counts only increase while the tracker is open
+		return customizer.index().version + tracker.getTrackingCount();
 	}
 
 	@Override
@@ -226,38 +413,161 @@ public class ServiceConfiguration<S> implements AutoCloseable, ServiceAware<S> {
 
 	private static class InnerCustomizer<S> implements ServiceTrackerCustomizer<S, S> {
 
+		// how long to wait for the tracker to record an added service
+		private static final long								CATCH_UP	= TimeUnit.MILLISECONDS.toNanos(1L);
 		private final BundleContext								bundleContext;
-		private final CountDownLatch							countDownLatch;
 		private final Optional<ServiceTrackerCustomizer<S, S>>	delegate;
-
-		InnerCustomizer(BundleContext bundleContext, CountDownLatch countDownLatch,
-			ServiceTrackerCustomizer<S, S> delegate) {
+		private final long										opened	= System.nanoTime();
+		// replaced while holding this
+		private volatile Index<S>								index	= new Index<>(emptyList(), 0);
+		// guarded by this
+		private int												added;
+		// guarded by this
+		private boolean											waited;
+		// guarded by this
+		private List<Watcher<S>>								watchers	= new ArrayList<>();
+		final List<ServiceListener>								listeners	= new CopyOnWriteArrayList<>();
+
+		InnerCustomizer(BundleContext bundleContext, ServiceTrackerCustomizer<S, S> delegate) {
 			this.bundleContext = bundleContext;
-			this.countDownLatch = countDownLatch;
 			this.delegate = Optional.ofNullable(delegate);
 		}
 
+		/**
+		 * Return the current index of the services handed to the tracker.
+		 * <p>
+		 * The index is an immutable snapshot which is replaced as services
+		 * are added, modified and removed, so reading it never needs sorting
+		 * and never sees a half applied change.
+		 */
+		Index<S> index() {
+			return index;
+		}
+
+		/**
+		 * Return the start time of a wait. The first wait is measured from
+		 * when the tracker was opened.
+		 */
+		synchronized long waitStart() {
+			if (waited) {
+				return System.nanoTime();
+			}
+			waited = true;
+			return opened;
+		}
+
+		void watch(Watcher<S> watcher) {
+			synchronized (this) {
+				if (watchers != null) {
+					watchers.add(watcher);
+					watcher = null;
+				}
+			}
+			if (watcher != null) {
+				watcher.closed();
+				return;
+			}
+			notifyWatchers();
+		}
+
+		// Watchers must not be called back while holding our lock
+		private void notifyWatchers() {
+			List<Watcher<S>> done = new ArrayList<>();
+			synchronized (this) {
+				if (watchers == null) {
+					return;
+				}
+				for (Iterator<Watcher<S>> iter = watchers.iterator(); iter.hasNext();) {
+					Watcher<S> watcher = iter.next();
+					if (watcher.test(index)) {
+						iter.remove();
+						done.add(watcher);
+					}
+				}
+			}
+			done.forEach(Watcher::done);
+		}
+
+		private void changed(int type, ServiceReference<S> reference) {
+			notifyWatchers();
+			if (!listeners.isEmpty()) {
+				ServiceEvent event = new ServiceEvent(type, reference);
+				listeners.forEach(l -> l.serviceChanged(event));
+			}
+		}
+
+		void close() {
+			List<Watcher<S>> closed;
+			synchronized (this) {
+				closed = watchers;
+				watchers = null;
+			}
+			if (closed != null) {
+				closed.forEach(Watcher::closed);
+			}
+		}
+
+		/**
+		 * Wait until the tracker holds at least {@code cardinality} services.
+		 * <p>
+		 * The waiting thread is woken by the customizer as services are added,
+		 * so no time is lost polling. The tracker only records a service after
+		 * {@link #addingService(ServiceReference)} returns, which is not
+		 * signalled to us, so once enough services were handed to the tracker
+		 * we recheck it after a short wait on the same monitor.
+		 *
+		 * @return {@code true} if the services arrived in time.
+		 */
+		boolean awaitArrival(ServiceTracker<S, S> tracker, int cardinality, long timeout)
+			throws InterruptedException {
+			final long endTime = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+			while (tracker.size() < cardinality) {
+				long remaining = endTime - System.nanoTime();
+				if (remaining <= 0L) {
+					return false;
+				}
+				synchronized (this) {
+					if (added >= cardinality) {
+						remaining = Math.min(remaining, CATCH_UP);
+					}
+					TimeUnit.NANOSECONDS.timedWait(this, remaining);
+				}
+			}
+			return true;
+		}
+
 		@Override
 		public S addingService(ServiceReference<S> reference) {
 			final S service = delegate.map(c -> c.addingService(reference))
 				.orElseGet(() -> bundleContext.getService(reference));
 
-			try {
-				return service;
-			} finally {
-				if (service != null) {
-					countDownLatch.countDown();
+			if (service != null) {
+				synchronized (this) {
+					index = index.with(new Ranked<>(reference, service));
+					added++;
+					notifyAll();
 				}
+				changed(ServiceEvent.REGISTERED, reference);
 			}
+			return service;
 		}
 
 		@Override
 		public void modifiedService(ServiceReference<S> reference, S service) {
+			synchronized (this) {
+				index = index.with(new Ranked<>(reference, service));
+			}
+			changed(ServiceEvent.MODIFIED, reference);
 			delegate.ifPresent(c -> c.modifiedService(reference, service));
 		}
 
 		@Override
 		public void removedService(ServiceReference<S> reference, S service) {
+			synchronized (this) {
+				index = index.without(reference);
+				added--;
+			}
+			changed(ServiceEvent.UNREGISTERING, reference);
 			delegate.map(c -> {
 				c.removedService(reference, service);
 				return true;
@@ -267,4 +577,112 @@ public class ServiceConfiguration<S> implements AutoCloseable, ServiceAware<S> {
 
 	}
 
+	/**
+	 * An immutable index of tracked services in ascending
+	 * {@link ServiceReference#compareTo(Object) ranking order}. Each change
+	 * creates a new index with the next version.
+	 */
+	static final class Index<S> {
+		final List<Ranked<S>>	ranked;
+		final int				version;
+
+		Index(List<Ranked<S>> ranked, int version) {
+			this.ranked = ranked;
+			this.version = version;
+		}
+
+		/**
+		 * Return an index with the service added, or replaced if its
+		 * reference is already indexed.
+		 */
+		Index<S> with(Ranked<S> current) {
+			List<Ranked<S>> copy = new ArrayList<>(ranked.size() + 1);
+			for (Ranked<S> r : ranked) {
+				if (!r.reference.equals(current.reference)) {
+					copy.add(r);
+				}
+			}
+			int position = Collections.binarySearch(copy, current);
+			copy.add((position < 0) ? -(position + 1) : position, current);
+			return new Index<>(unmodifiableList(copy), version + 1);
+		}
+
+		Index<S> without(ServiceReference<S> reference) {
+			List<Ranked<S>> copy = new ArrayList<>(ranked.size());
+			for (Ranked<S> r : ranked) {
+				if (!r.reference.equals(reference)) {
+					copy.add(r);
+				}
+			}
+			return new Index<>(unmodifiableList(copy), version + 1);
+		}
+
+		boolean contains(ServiceReference<S> reference) {
+			for (Ranked<S> r : ranked) {
+				if (r.reference.equals(reference)) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * A watcher of the tracked services of a configuration.
+	 */
+	interface Watcher<S> {
+		/**
+		 * Test the current index. This is called while holding the lock of
+		 * the customizer, so it must not call out.
+		 *
+		 * @return {@code true} if the watcher is done.
+		 */
+		boolean test(Index<S> index);
+
+		/**
+		 * Called without holding any lock once {@link #test(Index)} returned
+		 * {@code true}.
+		 */
+		void done();
+
+		/**
+		 * Called instead of {@link #done()} if the configuration is closed
+		 * first.
+		 */
+		void closed();
+	}
+
+	/**
+	 * A tracked service keyed by the ranking and id its reference had when it
+	 * was indexed, so that its position in the index does not change behind
+	 * the index's back when the service properties are modified.
+	 */
+	static final class Ranked<S> implements Comparable<Ranked<S>> {
+		final ServiceReference<S>	reference;
+		final S						service;
+		private final int			ranking;
+		private final long			id;
+
+		Ranked(ServiceReference<S> reference, S service) {
+			this.reference = reference;
+			this.service = service;
+			Object rankingProperty = reference.getProperty(Constants.SERVICE_RANKING);
+			this.ranking = (rankingProperty instanceof Integer) ? (Integer) rankingProperty : 0;
+			this.id = (Long) reference.getProperty(Constants.SERVICE_ID);
+		}
+
+		/**
+		 * Same order as {@link ServiceReference#compareTo(Object)}: lower
+		 * ranking first and, for equal rankings, higher service id first.
+		 */
+		@Override
+		public int compareTo(Ranked<S> other) {
+			int result = Integer.compare(ranking, other.ranking);
+			if (result != 0) {
+				return result;
+			}
+			return Long.compare(other.id, id);
+		}
+	}
+
 }
@@ -0,0 +1,165 @@
+/*******************************************************************************
+ * Copyright (c) Contributors to the Eclipse Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+
+package org.osgi.test.common.service;
+
+import static java.util.Collections.emptyList;
+import static java.util.Objects.requireNonNull;
+import static java.util.stream.Collectors.toList;
+
+import java.util.List;
+import java.util.function.Function;
+
+import org.osgi.framework.ServiceReference;
+import org.osgi.test.common.service.ServiceConfiguration.Index;
+import org.osgi.util.promise.Deferred;
+import org.osgi.util.promise.Promise;
+
+/**
+ * Promises for the services tracked by a {@link ServiceAware}.
+ * <p>
+ * Unlike {@link ServiceAware#waitForService(long)} the methods of this class
+ * do not block. The promises are resolved by the tracker of the
+ * {@link ServiceAware} as services come and go. This is the only type of
+ * this package which uses the OSGi Promise API, so the Promise API is only
+ * needed at runtime when this class is used.
+ *
+ * @param <S> the service type
+ * @since 1.1
+ */
+public final class ServicePromises<S> {
+	private final ServiceConfiguration<S> configuration;
+
+	/**
+	 * Return promises for the services tracked by the specified
+	 * {@link ServiceAware}.
+	 *
+	 * @param serviceAware an opened {@link ServiceAware}, as injected by
+	 *            the JUnit 4 rule or JUnit 5 extension
+	 * @return promises for the tracked services
+	 * @throws IllegalArgumentException if the {@link ServiceAware} is not
+	 *             provided by this library
+	 */
+	public static <S> ServicePromises<S> of(ServiceAware<S> serviceAware) {
+		if (!(serviceAware instanceof ServiceConfiguration)) {
+			throw new IllegalArgumentException("not a ServiceConfiguration: " + serviceAware);
+		}
+		return new ServicePromises<>((ServiceConfiguration<S>) serviceAware);
+	}
+
+	private ServicePromises(ServiceConfiguration<S> configuration) {
+		this.configuration = configuration;
+	}
+
+	/**
+	 * Return a promise which is resolved with the highest ranked service as
+	 * soon as at least one service is tracked.
+	 * <p>
+	 * The promise is failed if the {@link ServiceAware} is closed before a
+	 * service arrives.
+	 *
+	 * @return a promise for a tracked service
+	 */
+	public Promise<S> service() {
+		return when(index -> index.ranked.isEmpty() ? null
+			: index.ranked.get(index.ranked.size() - 1).service, false);
+	}
+
+	/**
+	 * Return a promise which is resolved with the tracked services, in
+	 * ranking order, as soon as at least {@code cardinality} services are
+	 * tracked.
+	 * <p>
+	 * The promise is failed if the {@link ServiceAware} is closed before the
+	 * services arrive.
+	 *
+	 * @param cardinality the number of services to wait for
+	 * @return a promise for the tracked services
+	 * @throws IllegalArgumentException if {@code cardinality} is negative
+	 */
+	public Promise<List<S>> services(int cardinality) {
+		if (cardinality < 0) {
+			throw new IllegalArgumentException("cardinality must be zero or greater");
+		}
+		return when(index -> (index.ranked.size() < cardinality) ? null
+			: index.ranked.stream()
+				.map(r -> r.service)
+				.collect(toList()),
+			false);
+	}
+
+	/**
+	 * Return a promise which is resolved with the specified reference as soon
+	 * as it is no longer tracked.
+	 * <p>
+	 * The promise is resolved immediately if the reference is not currently
+	 * tracked, and when the {@link ServiceAware} is closed.
+	 *
+	 * @param reference the service reference to watch
+	 * @return a promise for the removal of the service
+	 */
+	public Promise<ServiceReference<S>> removed(ServiceReference<S> reference) {
+		requireNonNull(reference);
+		return when(index -> index.contains(reference) ? null : reference, true);
+	}
+
+	/**
+	 * Return a promise which is resolved with the first non-null value of the
+	 * probe, which is evaluated now and after each change to the tracked
+	 * services.
+	 */
+	private <R> Promise<R> when(Function<Index<S>, R> probe, boolean resolveOnClose) {
+		Pending<S, R> pending = new Pending<>(probe, resolveOnClose);
+		configuration.watch(pending);
+		return pending.deferred.getPromise();
+	}
+
+	private static final class Pending<S, R> implements ServiceConfiguration.Watcher<S> {
+		final Deferred<R>					deferred	= new Deferred<>();
+		private final Function<Index<S>, R>	probe;
+		private final boolean				resolveOnClose;
+		// guarded by the customizer
+		private R							value;
+
+		Pending(Function<Index<S>, R> probe, boolean resolveOnClose) {
+			this.probe = probe;
+			this.resolveOnClose = resolveOnClose;
+		}
+
+		@Override
+		public boolean test(Index<S> index) {
+			value = probe.apply(index);
+			return value != null;
+		}
+
+		@Override
+		public void done() {
+			deferred.resolve(value);
+		}
+
+		@Override
+		public void closed() {
+			if (resolveOnClose) {
+				// nothing is tracked once closed
+				deferred.resolve(probe.apply(new Index<>(emptyList(), 0)));
+			} else {
+				deferred.fail(new IllegalStateException("configuration has been closed"));
+			}
+		}
+	}
+}
@@ -19,6 +19,8 @@
 package org.osgi.test.common.test.context;
 
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.reset;
 import static org.mockito.Mockito.times;
@@ -26,6 +28,16 @@ import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+
 import org.assertj.core.api.Assertions;
 import org.assertj.core.api.SoftAssertions;
 import org.junit.jupiter.api.AfterEach;
@@ -34,11 +46,20 @@ import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
+import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
+import org.osgi.framework.Constants;
+import org.osgi.framework.FrameworkEvent;
+import org.osgi.framework.FrameworkListener;
+import org.osgi.framework.ServiceListener;
 import org.osgi.framework.ServiceObjects;
 import org.osgi.framework.ServiceReference;
+import org.osgi.framework.ServiceRegistration;
+import org.osgi.framework.wiring.FrameworkWiring;
 import org.osgi.test.common.context.CloseableBundleContext;
 import org.osgi.test.common.context.CloseableServiceObjects;
+import org.osgi.test.common.context.ResourceReport;
+import org.osgi.test.common.context.ResourceReport.Kind;
 
 public class CloseableBundleContextTest extends SoftAssertions {
 	BundleContext			upstream;
@@ -79,6 +100,257 @@ public class CloseableBundleContextTest extends SoftAssertions {
 		// ((AutoCloseable) sut).close();
 	}
 
+	@Test
+	void isAProxy() {
+		// a proxy implements the BundleContext methods of the framework at
+		// runtime, also those added after this bundle was built
+		assertThat(Proxy.isProxyClass(sut.getClass())).isTrue();
+	}
+
+	@Test
+	void unmodifiedMethods_passedThrough() throws Exception {
+		Bundle bundle = mock(Bundle.class);
+		when(upstream.getBundle()).thenReturn(bundle);
+		when(upstream.getProperty("key")).thenReturn("value");
+		assertThat(sut.getBundle()).isSameAs(bundle);
+		assertThat(sut.getProperty("key")).isEqualTo("value");
+		sut.getServiceReferences(String.class, "(a=b)");
+		sut.getServiceReferences("java.lang.String", "(a=b)");
+		sut.getBundle(2L);
+		check(() -> verify(upstream).getBundle());
+		check(() -> verify(upstream).getServiceReferences("java.lang.String", "(a=b)"));
+		check(() -> verify(upstream).getBundle(2L));
+		check(() -> verify(upstream).getProperty("key"));
+		check(() -> verify(upstream).getServiceReferences(String.class, "(a=b)"));
+	}
+
+	@Test
+	void close_unregistersServicesAndUngetsServices() throws Exception {
+		@SuppressWarnings("unchecked")
+		ServiceRegistration<String> reg = mock(ServiceRegistration.class);
+		@SuppressWarnings("unchecked")
+		ServiceReference<String> ref = mock(ServiceReference.class);
+		when(upstream.registerService(String.class, "service", null)).thenReturn(reg);
+		when(upstream.getService(ref)).thenReturn("service");
+		when(upstream.ungetService(ref)).thenReturn(true);
+
+		assertThat(sut.registerService(String.class, "service", null)).isSameAs(reg);
+		assertThat(sut.getService(ref)).isEqualTo("service");
+		assertThat(sut.getService(ref)).isEqualTo("service");
+		((AutoCloseable) sut).close();
+
+		check(() -> verify(reg).unregister());
+		check(() -> verify(upstream, times(2)).ungetService(ref));
+	}
+
+	@Test
+	void afterClose_lateResourcesAreReleasedRightAway() throws Exception {
+		@SuppressWarnings("unchecked")
+		ServiceRegistration<String> reg = mock(ServiceRegistration.class);
+		@SuppressWarnings("unchecked")
+		ServiceReference<String> ref = mock(ServiceReference.class);
+		ServiceListener listener = event -> {};
+		when(upstream.registerService(String.class, "service", null)).thenReturn(reg);
+		when(upstream.getService(ref)).thenReturn("service");
+		((AutoCloseable) sut).close();
+
+		assertThat(sut.registerService(String.class, "service", null)).isSameAs(reg);
+		assertThat(sut.getService(ref)).isEqualTo("service");
+		sut.addServiceListener(listener);
+
+		check(() -> verify(reg).unregister());
+		check(() -> verify(upstream).ungetService(ref));
+		check(() -> verify(upstream).removeServiceListener(listener));
+		assertThat(sut.ungetService(ref)).as("already released")
+			.isFalse();
+	}
+
+	@Test
+	void nested_equalsAndPassesThroughToUpstream() throws Exception {
+		BundleContext nested = CloseableBundleContext.proxy(sut);
+		Bundle bundle = mock(Bundle.class);
+		when(upstream.getBundle(1L)).thenReturn(bundle);
+
+		assertThat(nested).isEqualTo(upstream)
+			.isEqualTo(sut);
+		assertThat(nested.hashCode()).isEqualTo(upstream.hashCode());
+		assertThat(nested.getBundle(1L)).isSameAs(bundle);
+		check(() -> verify(upstream).getBundle(1L));
+	}
+
+	@Test
+	void nested_cleansUpOnlyItsOwnResources() throws Exception {
+		BundleContext nested = CloseableBundleContext.proxy(sut);
+		@SuppressWarnings("unchecked")
+		ServiceRegistration<String> outerReg = mock(ServiceRegistration.class);
+		@SuppressWarnings("unchecked")
+		ServiceRegistration<String> nestedReg = mock(ServiceRegistration.class);
+		when(upstream.registerService(String.class, "outer", null)).thenReturn(outerReg);
+		when(upstream.registerService(String.class, "nested", null)).thenReturn(nestedReg);
+
+		sut.registerService(String.class, "outer", null);
+		nested.registerService(String.class, "nested", null);
+		((AutoCloseable) nested).close();
+		check(() -> verify(nestedReg).unregister());
+		check(() -> verifyNoMoreInteractions(outerReg));
+
+		((AutoCloseable) sut).close();
+		check(() -> verify(outerReg).unregister());
+		check(() -> verify(nestedReg).unregister());
+	}
+
+	@Test
+	void close_closesOpenNestedScopes() throws Exception {
+		BundleContext nested = CloseableBundleContext.proxy(CloseableBundleContext.proxy(sut));
+		ServiceListener listener = mock(ServiceListener.class);
+
+		nested.addServiceListener(listener);
+		((AutoCloseable) sut).close();
+		check(() -> verify(upstream).addServiceListener(listener));
+		check(() -> verify(upstream).removeServiceListener(listener));
+	}
+
+	@Test
+	void close_uninstallsBundles_andRefreshesThemOnce() throws Exception {
+		Bundle b1 = mock(Bundle.class);
+		Bundle b2 = mock(Bundle.class);
+		when(b1.getState()).thenReturn(Bundle.INSTALLED);
+		when(b2.getState()).thenReturn(Bundle.RESOLVED);
+		when(upstream.installBundle("b1")).thenReturn(b1);
+		when(upstream.installBundle("b2")).thenReturn(b2);
+		Bundle systemBundle = mock(Bundle.class);
+		FrameworkWiring frameworkWiring = mock(FrameworkWiring.class);
+		when(upstream.getBundle(Constants.SYSTEM_BUNDLE_LOCATION)).thenReturn(systemBundle);
+		when(systemBundle.adapt(FrameworkWiring.class)).thenReturn(frameworkWiring);
+		when(frameworkWiring.getRemovalPendingBundles()).thenReturn(Arrays.asList(b1, b2));
+		when(frameworkWiring.getDependencyClosure(any())).thenReturn(Arrays.asList(b1, b2));
+		doAnswer(invocation -> {
+			invocation.<FrameworkListener> getArgument(1)
+				.frameworkEvent(new FrameworkEvent(FrameworkEvent.PACKAGES_REFRESHED, systemBundle, null));
+			return null;
+		}).when(frameworkWiring)
+			.refreshBundles(any(), any());
+
+		sut.installBundle("b1");
+		sut.installBundle("b2");
+		((AutoCloseable) sut).close();
+
+		check(() -> verify(b1).uninstall());
+		check(() -> verify(b2).uninstall());
+		check(() -> verify(frameworkWiring).refreshBundles(argThat(bundles -> bundles.size() == 2), any()));
+	}
+
+	@Test
+	void close_unregistersManyServices() throws Exception {
+		List<ServiceRegistration<String>> registrations = new ArrayList<>();
+		for (int i = 0; i < 50; i++) {
+			@SuppressWarnings("unchecked")
+			ServiceRegistration<String> reg = mock(ServiceRegistration.class);
+			when(upstream.registerService(String.class, "service" + i, null)).thenReturn(reg);
+			registrations.add(reg);
+			sut.registerService(String.class, "service" + i, null);
+		}
+		((AutoCloseable) sut).close();
+
+		registrations.forEach(reg -> check(() -> verify(reg).unregister()));
+	}
+
+	@Test
+	void getService_ungetService_fromManyThreads() throws Exception {
+		@SuppressWarnings("unchecked")
+		ServiceReference<String> ref = mock(ServiceReference.class);
+		when(upstream.getService(ref)).thenReturn("service");
+		final int threads = 8;
+		final int gets = 200;
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			CountDownLatch start = new CountDownLatch(1);
+			List<Future<?>> futures = new ArrayList<>();
+			for (int t = 0; t < threads; t++) {
+				futures.add(executor.submit(() -> {
+					start.await();
+					for (int i = 0; i < gets; i++) {
+						sut.getService(ref);
+					}
+					for (int i = 0; i < gets / 2; i++) {
+						assertThat(sut.ungetService(ref)).isTrue();
+					}
+					return null;
+				}));
+			}
+			start.countDown();
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		((AutoCloseable) sut).close();
+
+		check(() -> verify(upstream, times(threads * gets)).getService(ref));
+		check(() -> verify(upstream, times(threads * gets)).ungetService(ref));
+		assertThat(sut.ungetService(ref)).as("after close")
+			.isFalse();
+	}
+
+	@Test
+	void close_reportsLeakedResources() throws Exception {
+		AtomicReference<ResourceReport> report = new AtomicReference<>();
+		BundleContext reporting = CloseableBundleContext.proxy(upstream, report::set, 1);
+		@SuppressWarnings("unchecked")
+		ServiceRegistration<String> reg = mock(ServiceRegistration.class);
+		@SuppressWarnings("unchecked")
+		ServiceReference<String> ref = mock(ServiceReference.class);
+		when(ref.getProperty(Constants.OBJECTCLASS)).thenReturn(new String[] {
+			String.class.getName()
+		});
+		when(reg.getReference()).thenReturn(ref);
+		when(upstream.registerService(String.class, "service", null)).thenReturn(reg);
+		ServiceListener listener = mock(ServiceListener.class);
+
+		reporting.registerService(String.class, "service", null);
+		reporting.getService(ref);
+		reporting.getService(ref);
+		reporting.getService(ref);
+		reporting.ungetService(ref);
+		reporting.addServiceListener(listener);
+		reporting.removeServiceListener(listener);
+		((AutoCloseable) reporting).close();
+
+		ResourceReport resources = report.get();
+		assertThat(resources).isNotNull();
+		assertThat(resources.getAcquired(Kind.SERVICE_GET)).isEqualTo(3);
+		assertThat(resources.getLeaked(Kind.SERVICE_GET)).isEqualTo(2);
+		assertThat(resources.getLeakedTypes(Kind.SERVICE_GET)).containsEntry(String.class.getName(), 2L);
+		assertThat(resources.getLeaked(Kind.SERVICE_REGISTRATION)).isEqualTo(1);
+		assertThat(resources.getAcquired(Kind.SERVICE_LISTENER)).isEqualTo(1);
+		assertThat(resources.getLeaked(Kind.SERVICE_LISTENER)).isZero();
+		assertThat(resources.getLeaked()).isEqualTo(3);
+		assertThat(resources.getLeakSites(Kind.SERVICE_REGISTRATION)).hasSize(1)
+			.allSatisfy(site -> assertThat(site[0].getClassName()).isEqualTo(getClass().getName()));
+
+		ResourceReport total = ResourceReport.aggregate(Arrays.asList(resources, resources));
+		assertThat(total.getLeaked()).isEqualTo(6);
+		assertThat(total.getLeakedTypes(Kind.SERVICE_GET)).containsEntry(String.class.getName(), 4L);
+	}
+
+	@Test
+	void close_reportsTeardownTimes() throws Exception {
+		AtomicReference<ResourceReport> report = new AtomicReference<>();
+		BundleContext reporting = CloseableBundleContext.proxy(upstream, report::set, 0);
+		((AutoCloseable) reporting).close();
+
+		ResourceReport resources = report.get();
+		assertThat(resources.getTeardownTimes()).containsOnlyKeys("nested", "bundles", "services", "serviceObjects",
+			"registrations", "listeners");
+		assertThat(resources.getRefreshTimeouts()).isZero();
+
+		ResourceReport total = ResourceReport.aggregate(Arrays.asList(resources, resources));
+		assertThat(total.getTeardownTimes()).containsEntry("bundles", resources.getTeardownTimes()
+			.get("bundles")
+			.multipliedBy(2));
+	}
+
 	@Nested
 	class CloseableServiceObjectsTest {
 		ServiceObjects<Object>	upstreamSO;
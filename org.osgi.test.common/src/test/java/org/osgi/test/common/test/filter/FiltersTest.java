@@ -0,0 +1,56 @@
+/*******************************************************************************
+ * Copyright (c) Contributors to the Eclipse Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+
+package org.osgi.test.common.test.filter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.UUID;
+
+import org.junit.jupiter.api.Test;
+import org.osgi.framework.Filter;
+import org.osgi.framework.InvalidSyntaxException;
+import org.osgi.test.common.dictionary.Dictionaries;
+import org.osgi.test.common.filter.Filters;
+
+public class FiltersTest {
+
+	@Test
+	void format_returnsCachedFilter() {
+		String value = UUID.randomUUID()
+			.toString();
+		long hits = Filters.cacheHits();
+		long misses = Filters.cacheMisses();
+
+		Filter filter = Filters.format("(test=%s)", value);
+		assertThat(filter.match(Dictionaries.dictionaryOf("test", value))).isTrue();
+		assertThat(Filters.cacheMisses()).isEqualTo(misses + 1);
+
+		assertThat(Filters.format("(test=%s)", value)).isSameAs(filter);
+		assertThat(Filters.format("(test=" + value + ")")).isSameAs(filter);
+		assertThat(Filters.cacheHits()).isEqualTo(hits + 2);
+		assertThat(Filters.cacheMisses()).isEqualTo(misses + 1);
+	}
+
+	@Test
+	void format_failsForInvalidFilter() {
+		assertThatThrownBy(() -> Filters.format("(test=%s", "invalid")).isInstanceOf(InvalidSyntaxException.class);
+		assertThatThrownBy(() -> Filters.format("(test=%s", "invalid")).isInstanceOf(InvalidSyntaxException.class);
+	}
+}
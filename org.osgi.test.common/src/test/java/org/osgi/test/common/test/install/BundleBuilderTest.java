@@ -0,0 +1,132 @@
+/*******************************************************************************
+ * Copyright (c) Contributors to the Eclipse Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+
+package org.osgi.test.common.test.install;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Scanner;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.Constants;
+import org.osgi.framework.FrameworkUtil;
+import org.osgi.test.common.context.CloseableBundleContext;
+import org.osgi.test.common.install.BundleBuilder;
+import org.osgi.test.common.install.BundleInstaller;
+import org.osgi.test.common.install.BundleInstaller.InstallResult;
+
+public class BundleBuilderTest {
+
+	public static class Payload {
+		public static String hello() {
+			return "hello";
+		}
+	}
+
+	BundleContext	bundleContext;
+	BundleInstaller	bundleInstaller;
+
+	@BeforeEach
+	void beforeEach() {
+		bundleContext = CloseableBundleContext.proxy(FrameworkUtil.getBundle(getClass())
+			.getBundleContext());
+		bundleInstaller = new BundleInstaller(bundleContext);
+	}
+
+	@AfterEach
+	void afterEach() throws Exception {
+		((AutoCloseable) bundleContext).close();
+	}
+
+	@Test
+	void installBundle_withClassesAndResources() throws Exception {
+		Bundle bundle = bundleInstaller.installBundle(new BundleBuilder("bundle.builder.test")
+			.header(Constants.BUNDLE_VERSION, "1.2.3")
+			.addClass(Payload.class)
+			.addResource("/OSGI-INF/data/hello.txt", "hello world".getBytes(UTF_8)), true);
+
+		assertThat(bundle.getLocation()).isEqualTo("bundlebuilder:bundle.builder.test:1.2.3");
+		assertThat(bundle.getSymbolicName()).isEqualTo("bundle.builder.test");
+		assertThat(bundle.getState()).isEqualTo(Bundle.ACTIVE);
+		assertThat(bundle.getEntry("OSGI-INF/data/")).as("directory entry")
+			.isNotNull();
+		try (InputStream in = bundle.getEntry("OSGI-INF/data/hello.txt")
+			.openStream(); Scanner scanner = new Scanner(in, "UTF-8")) {
+			assertThat(scanner.nextLine()).isEqualTo("hello world");
+		}
+
+		Class<?> payload = bundle.loadClass(Payload.class.getName());
+		assertThat(payload).as("class defined by the built bundle")
+			.isNotSameAs(Payload.class);
+		assertThat(FrameworkUtil.getBundle(payload)).isEqualTo(bundle);
+		assertThat(payload.getMethod("hello")
+			.invoke(null)).isEqualTo("hello");
+	}
+
+	@Test
+	void installBundles_manySyntheticBundles() throws Exception {
+		List<BundleBuilder> builders = new ArrayList<>();
+		for (int i = 0; i < 200; i++) {
+			builders.add(new BundleBuilder("bundle.builder.test.many" + i)
+				.header(Constants.EXPORT_PACKAGE, "bundle.builder.test.many" + i)
+				.header(Constants.IMPORT_PACKAGE, (i > 0) ? "bundle.builder.test.many" + (i - 1) : null)
+				.addResource("bundle/builder/test/many" + i + "/data.txt", new byte[] {
+					(byte) i
+				}));
+		}
+
+		InstallResult result = bundleInstaller.installBundles(builders, true);
+
+		assertThat(result.isResolved()).isTrue();
+		assertThat(result.getBundles()).hasSize(200)
+			.allSatisfy(bundle -> assertThat(bundle.getState()).isEqualTo(Bundle.ACTIVE));
+	}
+
+	@Test
+	void openStream_buildsSameContentAgain() throws Exception {
+		BundleBuilder builder = new BundleBuilder("bundle.builder.test.stream").addResource("a.txt", new byte[] {
+			1, 2, 3
+		});
+		byte[] first;
+		try (InputStream in = builder.openStream()) {
+			first = readAll(in);
+		}
+		try (InputStream in = builder.openStream()) {
+			assertThat(readAll(in)).as("same content from a second build")
+				.isEqualTo(first);
+		}
+	}
+
+	private static byte[] readAll(InputStream in) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[1024];
+		for (int n; (n = in.read(buffer)) != -1;) {
+			out.write(buffer, 0, n);
+		}
+		return out.toByteArray();
+	}
+}
@@ -0,0 +1,139 @@
+/*******************************************************************************
+ * Copyright (c) Contributors to the Eclipse Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+
+package org.osgi.test.common.test.install;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+import java.io.InputStream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleActivator;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleException;
+import org.osgi.framework.Constants;
+import org.osgi.framework.FrameworkUtil;
+import org.osgi.framework.startlevel.BundleStartLevel;
+import org.osgi.test.common.install.BundleBuilder;
+import org.osgi.test.common.install.BundleCache;
+
+public class BundleCacheTest {
+
+	public static class FailingActivator implements BundleActivator {
+		@Override
+		public void start(BundleContext context) throws Exception {
+			throw new IllegalStateException("failing activator");
+		}
+
+		@Override
+		public void stop(BundleContext context) throws Exception {}
+	}
+
+	BundleCache cache;
+
+	@BeforeEach
+	void beforeEach() {
+		cache = new BundleCache(FrameworkUtil.getBundle(getClass())
+			.getBundleContext());
+	}
+
+	@AfterEach
+	void afterEach() {
+		cache.close();
+	}
+
+	@Test
+	void acquire_withSameValidator_doesNotReadContent() throws Exception {
+		BundleBuilder builder = new BundleBuilder("cache.test.validated");
+		Bundle bundle;
+		try (InputStream content = builder.openStream()) {
+			bundle = cache.acquire(builder.getLocation(), "1:1", content, false);
+		}
+		InputStream unreadable = new InputStream() {
+			@Override
+			public int read() {
+				throw new AssertionError("content read");
+			}
+		};
+
+		assertThat(cache.acquire(builder.getLocation(), "1:1", unreadable, false)).isSameAs(bundle);
+		assertThat(cache.getHits()).isEqualTo(1L);
+		assertThat(cache.getMisses()).isEqualTo(1L);
+	}
+
+	@Test
+	void acquire_withOtherValidator_comparesContent() throws Exception {
+		BundleBuilder builder = new BundleBuilder("cache.test.revalidated");
+		Bundle bundle;
+		try (InputStream content = builder.openStream()) {
+			bundle = cache.acquire(builder.getLocation(), "1:1", content, false);
+		}
+		try (InputStream content = builder.openStream()) {
+			assertThat(cache.acquire(builder.getLocation(), "2:1", content, false)).isSameAs(bundle);
+		}
+
+		assertThat(cache.getHits()).isEqualTo(1L);
+		assertThat(cache.getMisses()).isEqualTo(1L);
+	}
+
+	@Test
+	void release_resetsBundleToInstalledState() throws Exception {
+		BundleBuilder lazy = new BundleBuilder("cache.test.lazy").header(Constants.BUNDLE_ACTIVATIONPOLICY,
+			Constants.ACTIVATION_LAZY);
+		Bundle bundle;
+		try (InputStream content = lazy.openStream()) {
+			bundle = cache.acquire(lazy.getLocation(), content, false);
+		}
+		BundleStartLevel bundleStartLevel = bundle.adapt(BundleStartLevel.class);
+		int startLevel = bundleStartLevel.getStartLevel();
+		bundle.start(Bundle.START_ACTIVATION_POLICY);
+		assertThat(bundle.getState()).as("waiting for lazy activation")
+			.isEqualTo(Bundle.STARTING);
+		bundleStartLevel.setStartLevel(startLevel + 1);
+
+		cache.release(bundle);
+
+		assertThat(bundle.getState()).isEqualTo(Bundle.RESOLVED);
+		assertThat(bundleStartLevel.isPersistentlyStarted()).as("autostart setting")
+			.isFalse();
+		assertThat(bundleStartLevel.getStartLevel()).isEqualTo(startLevel);
+	}
+
+	@Test
+	void acquire_failedStart_doesNotKeepUser() throws Exception {
+		BundleBuilder failing = new BundleBuilder("cache.test.failing")
+			.header(Constants.BUNDLE_ACTIVATOR, FailingActivator.class.getName())
+			.header(Constants.IMPORT_PACKAGE, "org.osgi.framework")
+			.addClass(FailingActivator.class);
+		try (InputStream content = failing.openStream()) {
+			assertThatExceptionOfType(BundleException.class)
+				.isThrownBy(() -> cache.acquire(failing.getLocation(), content, true));
+		}
+
+		// other content replaces the bundle as it is not in use
+		BundleBuilder replacement = new BundleBuilder("cache.test.failing").location(failing.getLocation());
+		try (InputStream content = replacement.openStream()) {
+			assertThat(cache.acquire(failing.getLocation(), content, true)
+				.getState()).isEqualTo(Bundle.ACTIVE);
+		}
+	}
+}
@@ -19,14 +19,22 @@
 package org.osgi.test.common.test.install;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
 import java.util.List;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
 
 import org.assertj.core.api.SoftAssertions;
 import org.assertj.core.util.Lists;
 import org.junit.jupiter.api.Test;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
+import org.osgi.framework.Constants;
 import org.osgi.framework.FrameworkUtil;
 import org.osgi.framework.Version;
 import org.osgi.test.common.install.BundleInstaller;
@@ -116,4 +124,50 @@ public class BundleInstaller_EmbeddedLocationTest {
 		softly.assertAll();
 	}
 
+	@Test
+	void testLookupFollowsInstallAndUninstall() throws Exception {
+		String symbolicName = "embedded.location.lookup";
+		assertThatIllegalArgumentException().isThrownBy(() -> EmbeddedLocation.of(bc, symbolicName + ":file.jar"));
+
+		Bundle v1 = bc.installBundle("embedded.location.lookup.v1", bundle(symbolicName, "1.0.0"));
+		Bundle v2 = bc.installBundle("embedded.location.lookup.v2", bundle(symbolicName, "2.0.0"));
+		try {
+			assertThat(EmbeddedLocation.of(bc, symbolicName + ":file.jar")).as("first installed version")
+				.isEqualTo(EmbeddedLocation.of(symbolicName, v1.getVersion(), "/", "file.jar"));
+			assertThat(EmbeddedLocation.of(bc, symbolicName + ":2.0.0:file.jar"))
+				.isEqualTo(EmbeddedLocation.of(symbolicName, v2.getVersion(), "/", "file.jar"));
+
+			v1.uninstall();
+			assertThatIllegalArgumentException()
+				.isThrownBy(() -> EmbeddedLocation.of(bc, symbolicName + ":1.0.0:file.jar"));
+			assertThat(EmbeddedLocation.of(bc, symbolicName + ":file.jar")).as("remaining version")
+				.isEqualTo(EmbeddedLocation.of(symbolicName, v2.getVersion(), "/", "file.jar"));
+
+			v2.update(bundle(symbolicName + ".updated", "2.0.0"));
+			assertThatIllegalArgumentException().isThrownBy(() -> EmbeddedLocation.of(bc, symbolicName + ":file.jar"));
+			assertThat(EmbeddedLocation.of(bc, symbolicName + ".updated:file.jar")).as("updated symbolic name")
+				.isEqualTo(EmbeddedLocation.of(symbolicName + ".updated", v2.getVersion(), "/", "file.jar"));
+		} finally {
+			for (Bundle b : new Bundle[] {
+				v1, v2
+			}) {
+				if (b.getState() != Bundle.UNINSTALLED) {
+					b.uninstall();
+				}
+			}
+		}
+	}
+
+	private static InputStream bundle(String symbolicName, String version) throws Exception {
+		Manifest manifest = new Manifest();
+		Attributes attributes = manifest.getMainAttributes();
+		attributes.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+		attributes.putValue(Constants.BUNDLE_MANIFESTVERSION, "2");
+		attributes.putValue(Constants.BUNDLE_SYMBOLICNAME, symbolicName);
+		attributes.putValue(Constants.BUNDLE_VERSION, version);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new JarOutputStream(out, manifest).close();
+		return new ByteArrayInputStream(out.toByteArray());
+	}
+
 }
@@ -0,0 +1,144 @@
+/*******************************************************************************
+ * Copyright (c) Contributors to the Eclipse Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+
+package org.osgi.test.common.test.install;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleActivator;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleException;
+import org.osgi.framework.Constants;
+import org.osgi.framework.FrameworkUtil;
+import org.osgi.test.common.context.CloseableBundleContext;
+import org.osgi.test.common.install.BundleBuilder;
+import org.osgi.test.common.install.BundleInstaller;
+import org.osgi.test.common.install.BundlePromises;
+import org.osgi.util.promise.Promise;
+
+public class BundlePromisesTest {
+
+	/**
+	 * Registers its service some time after the bundle is started, like a
+	 * Declarative Services component would.
+	 */
+	public static class LateActivator implements BundleActivator {
+		@Override
+		public void start(BundleContext context) throws Exception {
+			Thread thread = new Thread(() -> {
+				try {
+					Thread.sleep(200L);
+					context.registerService(Runnable.class, () -> {}, null);
+				} catch (Exception e) {
+					// bundle was stopped
+				}
+			});
+			thread.start();
+		}
+
+		@Override
+		public void stop(BundleContext context) throws Exception {}
+	}
+
+	public static class FailingActivator implements BundleActivator {
+		@Override
+		public void start(BundleContext context) throws Exception {
+			throw new IllegalStateException("failing activator");
+		}
+
+		@Override
+		public void stop(BundleContext context) throws Exception {}
+	}
+
+	BundleContext	bundleContext;
+	BundlePromises	bundlePromises;
+
+	@BeforeEach
+	void beforeEach() {
+		bundleContext = CloseableBundleContext.proxy(FrameworkUtil.getBundle(getClass())
+			.getBundleContext());
+		bundlePromises = BundlePromises.of(new BundleInstaller(bundleContext));
+	}
+
+	@AfterEach
+	void afterEach() throws Exception {
+		((AutoCloseable) bundleContext).close();
+	}
+
+	private static BundleBuilder builder(String symbolicName, Class<? extends BundleActivator> activator) {
+		return new BundleBuilder(symbolicName).header(Constants.BUNDLE_ACTIVATOR, activator.getName())
+			.header(Constants.IMPORT_PACKAGE, "org.osgi.framework")
+			.addClass(activator);
+	}
+
+	private static <T> Promise<T> await(Promise<T> promise) throws InterruptedException {
+		CountDownLatch latch = new CountDownLatch(1);
+		promise.onResolve(latch::countDown);
+		assertThat(latch.await(10, TimeUnit.SECONDS)).as("promise resolved")
+			.isTrue();
+		return promise;
+	}
+
+	@Test
+	void installBundle_resolvesWhenServiceIsRegistered() throws Exception {
+		Promise<Bundle> first = bundlePromises.installBundle(builder("async.test.late1", LateActivator.class),
+			"(objectClass=java.lang.Runnable)");
+		Promise<Bundle> second = bundlePromises.installBundle(builder("async.test.late2", LateActivator.class),
+			"(objectClass=java.lang.Runnable)");
+
+		assertThat(first.isDone()).as("not ready before the service")
+			.isFalse();
+		for (Promise<Bundle> promise : Arrays.asList(first, second)) {
+			Bundle bundle = await(promise).getValue();
+			assertThat(bundle.getState()).isEqualTo(Bundle.ACTIVE);
+			assertThat(bundle.getRegisteredServices()).hasSize(1);
+		}
+	}
+
+	@Test
+	void installBundle_withoutFilters_resolvesWhenStarted() throws Exception {
+		Bundle bundle = await(
+			bundlePromises.installBundle(new BundleBuilder("async.test.plain"))).getValue();
+
+		assertThat(bundle.getState()).isEqualTo(Bundle.ACTIVE);
+	}
+
+	@Test
+	void installBundle_failsWhenStartFails() throws Exception {
+		Promise<Bundle> promise = await(
+			bundlePromises.installBundle(builder("async.test.failing", FailingActivator.class)));
+
+		assertThat(promise.getFailure()).isInstanceOf(BundleException.class)
+			.hasRootCauseInstanceOf(IllegalStateException.class);
+	}
+
+	@Test
+	void installBundle_rejectsInvalidFilter() {
+		assertThatIllegalArgumentException().isThrownBy(
+			() -> bundlePromises.installBundle(new BundleBuilder("async.test.invalid"), "(objectClass="));
+	}
+}
@@ -0,0 +1,224 @@
+/*******************************************************************************
+ * Copyright (c) Contributors to the Eclipse Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+
+package org.osgi.test.common.test.install;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIOException;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.FrameworkUtil;
+import org.osgi.test.common.context.CloseableBundleContext;
+import org.osgi.test.common.install.BundleBuilder;
+import org.osgi.test.common.install.BundleInstaller;
+import org.osgi.test.common.install.DownloadCache;
+
+public class DownloadCacheTest {
+
+	/**
+	 * A local stand-in for a remote HTTP server which serves one resource and
+	 * answers conditional requests.
+	 */
+	static class StandInServer implements Closeable {
+		final ServerSocket		serverSocket;
+		final AtomicInteger		downloads	= new AtomicInteger();
+		volatile byte[]			content;
+		volatile String			etag;
+
+		StandInServer(byte[] content, String etag) throws IOException {
+			this.content = content;
+			this.etag = etag;
+			serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+			Thread thread = new Thread(this::serve, "StandInServer");
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		URL url(String path) throws IOException {
+			return new URL("http", "127.0.0.1", serverSocket.getLocalPort(), path);
+		}
+
+		private void serve() {
+			while (!serverSocket.isClosed()) {
+				try (Socket socket = serverSocket.accept()) {
+					BufferedReader reader = new BufferedReader(
+						new InputStreamReader(socket.getInputStream(), UTF_8));
+					String ifNoneMatch = null;
+					for (String line; ((line = reader.readLine()) != null) && !line.isEmpty();) {
+						if (line.regionMatches(true, 0, "If-None-Match:", 0, 14)) {
+							ifNoneMatch = line.substring(14)
+								.trim();
+						}
+					}
+					OutputStream out = socket.getOutputStream();
+					if (etag.equals(ifNoneMatch)) {
+						out.write(("HTTP/1.1 304 Not Modified\r\nETag: " + etag
+							+ "\r\nContent-Length: 0\r\nConnection: close\r\n\r\n").getBytes(UTF_8));
+					} else {
+						downloads.incrementAndGet();
+						out.write(("HTTP/1.1 200 OK\r\nETag: " + etag + "\r\nContent-Length: " + content.length
+							+ "\r\nContent-Type: application/java-archive\r\nConnection: close\r\n\r\n")
+								.getBytes(UTF_8));
+						out.write(content);
+					}
+					out.flush();
+				} catch (IOException e) {
+					// closed
+				}
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			serverSocket.close();
+		}
+	}
+
+	@TempDir
+	Path			directory;
+
+	BundleContext	bundleContext;
+
+	@BeforeEach
+	void beforeEach() {
+		bundleContext = CloseableBundleContext.proxy(FrameworkUtil.getBundle(getClass())
+			.getBundleContext());
+	}
+
+	@AfterEach
+	void afterEach() throws Exception {
+		((AutoCloseable) bundleContext).close();
+	}
+
+	private static byte[] read(InputStream in) throws IOException {
+		try (InputStream stream = in) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[1024];
+			for (int n; (n = stream.read(buffer)) != -1;) {
+				out.write(buffer, 0, n);
+			}
+			return out.toByteArray();
+		}
+	}
+
+	@Test
+	void http_downloadsOnlyWhenChanged() throws Exception {
+		DownloadCache cache = new DownloadCache(directory.resolve("cache"));
+		try (StandInServer server = new StandInServer("first".getBytes(UTF_8), "\"1\"")) {
+			URL url = server.url("/bundle.jar");
+
+			assertThat(read(cache.openStream(url))).asString(UTF_8)
+				.isEqualTo("first");
+			assertThat(read(cache.openStream(url))).asString(UTF_8)
+				.isEqualTo("first");
+			assertThat(server.downloads).hasValue(1);
+			assertThat(cache.getMisses()).isEqualTo(1L);
+			assertThat(cache.getHits()).isEqualTo(1L);
+
+			server.content = "second".getBytes(UTF_8);
+			server.etag = "\"2\"";
+			assertThat(read(cache.openStream(url))).asString(UTF_8)
+				.isEqualTo("second");
+			assertThat(server.downloads).hasValue(2);
+
+			DownloadCache other = new DownloadCache(directory.resolve("cache"));
+			assertThat(read(other.openStream(url))).as("shared directory")
+				.asString(UTF_8)
+				.isEqualTo("second");
+			assertThat(server.downloads).hasValue(2);
+		}
+	}
+
+	@Test
+	void http_usesCachedContentOffline() throws Exception {
+		DownloadCache cache = new DownloadCache(directory);
+		URL url;
+		try (StandInServer server = new StandInServer("offline".getBytes(UTF_8), "\"1\"")) {
+			url = server.url("/bundle.jar");
+			read(cache.openStream(url));
+		}
+
+		assertThat(read(cache.openStream(url))).asString(UTF_8)
+			.isEqualTo("offline");
+
+		URL unknown = new URL(url, "/unknown.jar");
+		assertThatIOException().isThrownBy(() -> cache.openStream(unknown));
+	}
+
+	@Test
+	void file_copiesOnlyWhenChanged() throws Exception {
+		DownloadCache cache = new DownloadCache(directory.resolve("cache"));
+		Path file = directory.resolve("bundle.jar");
+		Files.write(file, "first".getBytes(UTF_8));
+		URL url = file.toUri()
+			.toURL();
+
+		assertThat(read(cache.openStream(url))).asString(UTF_8)
+			.isEqualTo("first");
+		assertThat(read(cache.openStream(url))).asString(UTF_8)
+			.isEqualTo("first");
+		assertThat(cache.getMisses()).isEqualTo(1L);
+
+		Files.write(file, "changed".getBytes(UTF_8));
+		Files.setLastModifiedTime(file, FileTime.fromMillis(Files.getLastModifiedTime(file)
+			.toMillis() + 2000L));
+		assertThat(read(cache.openStream(url))).asString(UTF_8)
+			.isEqualTo("changed");
+		assertThat(cache.getMisses()).isEqualTo(2L);
+	}
+
+	@Test
+	void bundleInstaller_installsFromCache() throws Exception {
+		byte[] jar = read(new BundleBuilder("download.cache.test").openStream());
+		DownloadCache cache = new DownloadCache(directory);
+		try (StandInServer server = new StandInServer(jar, "\"jar\"")) {
+			URL url = server.url("/download.cache.test.jar");
+			BundleInstaller bundleInstaller = new BundleInstaller(bundleContext, new BundleInstaller.Options().downloads(cache));
+
+			Bundle bundle = bundleInstaller.installBundle(url, false);
+			assertThat(bundle.getLocation()).isEqualTo(url.toString());
+			assertThat(bundle.getSymbolicName()).isEqualTo("download.cache.test");
+			bundle.uninstall();
+
+			bundleInstaller.installBundle(url, false);
+			assertThat(server.downloads).hasValue(1);
+		}
+	}
+}
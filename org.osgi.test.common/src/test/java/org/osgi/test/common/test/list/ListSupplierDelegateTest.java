@@ -0,0 +1,118 @@
+/*******************************************************************************
+ * Copyright (c) Contributors to the Eclipse Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+
+package org.osgi.test.common.test.list;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.osgi.test.common.list.ListSupplierDelegate;
+
+public class ListSupplierDelegateTest {
+
+	List<String>	source;
+	AtomicInteger	supplied;
+	AtomicInteger	version;
+
+	@BeforeEach
+	void beforeEach() {
+		source = new ArrayList<>();
+		source.add("a");
+		source.add("b");
+		supplied = new AtomicInteger();
+		version = new AtomicInteger();
+	}
+
+	List<String> supply() {
+		supplied.incrementAndGet();
+		return new ArrayList<>(source);
+	}
+
+	@Test
+	void unversioned_suppliesOnEveryCall() {
+		List<String> sut = new ListSupplierDelegate<>(this::supply);
+
+		for (int i = 0; i < sut.size(); i++) {
+			sut.get(i);
+		}
+		assertThat(supplied).hasValue(5);
+	}
+
+	@Test
+	void versioned_suppliesOnlyWhenVersionChanges() {
+		List<String> sut = new ListSupplierDelegate<>(this::supply, version::get);
+
+		for (int i = 0; i < sut.size(); i++) {
+			sut.get(i);
+		}
+		assertThat(sut).containsExactly("a", "b");
+		assertThat(supplied).hasValue(1);
+
+		source.add("c");
+		assertThat(sut).as("unchanged version")
+			.containsExactly("a", "b");
+
+		version.incrementAndGet();
+		assertThat(sut).as("changed version")
+			.containsExactly("a", "b", "c");
+		assertThat(supplied).hasValue(2);
+	}
+
+	@Test
+	void versioned_modificationsDoNotAffectSnapshot() {
+		List<String> sut = new ListSupplierDelegate<>(this::supply, version::get);
+
+		assertThat(sut.add("c")).isTrue();
+		assertThat(sut.remove(0)).isEqualTo("a");
+		sut.sort(Comparator.reverseOrder());
+		Iterator<String> iterator = sut.iterator();
+		iterator.next();
+		iterator.remove();
+
+		assertThat(sut).containsExactly("a", "b");
+		assertThat(source).containsExactly("a", "b");
+		assertThat(supplied).hasValue(1);
+	}
+
+	@Test
+	void versioned_iteratorsAndSubListsReadTheSnapshot() {
+		List<String> sut = new ListSupplierDelegate<>(this::supply, version::get);
+
+		assertThat(sut.iterator()).toIterable()
+			.containsExactly("a", "b");
+		ListIterator<String> listIterator = sut.listIterator(2);
+		assertThat(listIterator.previous()).isEqualTo("b");
+		listIterator.set("x");
+		listIterator.add("y");
+		List<String> subList = sut.subList(1, 2);
+		assertThat(subList).containsExactly("b");
+		subList.clear();
+		assertThat(subList).containsExactly("b");
+
+		assertThat(sut).containsExactly("a", "b");
+		assertThat(supplied).hasValue(1);
+	}
+}
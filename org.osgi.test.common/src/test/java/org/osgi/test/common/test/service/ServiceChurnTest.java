@@ -0,0 +1,113 @@
+/*******************************************************************************
+ * Copyright (c) Contributors to the Eclipse Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+
+package org.osgi.test.common.test.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.time.Duration;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.FrameworkUtil;
+import org.osgi.test.common.service.ServiceChurn;
+import org.osgi.test.common.service.ServiceConfiguration;
+
+public class ServiceChurnTest {
+
+	BundleContext bundleContext;
+
+	@BeforeEach
+	void beforeEach() {
+		bundleContext = FrameworkUtil.getBundle(ServiceChurnTest.class)
+			.getBundleContext();
+	}
+
+	ServiceConfiguration<Runnable> observer(ServiceChurn<Runnable> churn) {
+		return new ServiceConfiguration<>(Runnable.class, churn.getFilter(), new String[0], 0, 0L)
+			.init(bundleContext);
+	}
+
+	@Test
+	void run_observerSeesEveryEvent() throws Exception {
+		ServiceChurn<Runnable> churn = new ServiceChurn<Runnable>(bundleContext, Runnable.class, () -> () -> {})
+			.threads(4)
+			.cycles(200);
+
+		try (ServiceConfiguration<Runnable> observer = observer(churn)) {
+			ServiceChurn.Result result = churn.run(observer);
+
+			assertThat(result.getRegistrations()).isEqualTo(800L);
+			assertThat(result.getModifications()).isEqualTo(800L);
+			assertThat(result.getUnregistrations()).isEqualTo(800L);
+			assertThat(result.getEvents()).isEqualTo(2400L);
+			assertThat(result.getObservedEvents()).isEqualTo(2400L);
+			assertThat(result.getLostEvents()).isZero();
+			assertThat(result.getDuplicatedEvents()).isZero();
+			assertThat(result.getThroughput()).isPositive();
+			assertThat(observer.isEmpty()).isTrue();
+		}
+	}
+
+	@Test
+	void run_countsLostEventsPerRegistration() throws Exception {
+		ServiceChurn<Runnable> churn = new ServiceChurn<Runnable>(bundleContext, Runnable.class, () -> () -> {})
+			.threads(2)
+			.cycles(50);
+
+		// the modification ends the match, so the observer removes the
+		// service on the modification and never sees it modified
+		try (ServiceConfiguration<Runnable> observer = new ServiceConfiguration<>(Runnable.class,
+			"(&" + churn.getFilter() + "(" + ServiceChurn.MODIFIED + "=0))", new String[0], 0, 0L)
+				.init(bundleContext)) {
+			ServiceChurn.Result result = churn.run(observer);
+
+			assertThat(result.getEvents()).isEqualTo(300L);
+			assertThat(result.getObservedEvents()).isEqualTo(200L);
+			assertThat(result.getLostEvents()).isEqualTo(100L);
+			assertThat(result.getDuplicatedEvents()).isZero();
+		}
+	}
+
+	@Test
+	void run_isPacedByRate() throws Exception {
+		ServiceChurn<Runnable> churn = new ServiceChurn<Runnable>(bundleContext, Runnable.class, () -> () -> {})
+			.cycles(11)
+			.rate(100);
+
+		ServiceChurn.Result result = churn.run(null);
+
+		assertThat(result.getEvents()).isEqualTo(33L);
+		assertThat(result.getElapsed()).isGreaterThanOrEqualTo(Duration.ofMillis(100L));
+		assertThat(result.getObservedEvents()).isEqualTo(-1L);
+		assertThat(result.getLostEvents()).isZero();
+		assertThat(bundleContext.getServiceReferences(Runnable.class, churn.getFilter())).isEmpty();
+	}
+
+	@Test
+	void run_reportsServiceFactoryFailure() throws Exception {
+		ServiceChurn<Runnable> churn = new ServiceChurn<Runnable>(bundleContext, Runnable.class, () -> {
+			throw new IllegalStateException("broken");
+		}).threads(2);
+
+		assertThatThrownBy(() -> churn.run(null)).isInstanceOf(IllegalStateException.class)
+			.hasMessage("broken");
+	}
+}
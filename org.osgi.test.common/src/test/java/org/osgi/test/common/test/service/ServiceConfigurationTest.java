@@ -0,0 +1,256 @@
+/*******************************************************************************
+ * Copyright (c) Contributors to the Eclipse Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+
+package org.osgi.test.common.test.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInfo;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.Constants;
+import org.osgi.framework.FrameworkUtil;
+import org.osgi.framework.ServiceReference;
+import org.osgi.framework.ServiceRegistration;
+import org.osgi.test.common.context.CloseableBundleContext;
+import org.osgi.test.common.dictionary.Dictionaries;
+import org.osgi.test.common.service.ServiceArrival;
+import org.osgi.test.common.service.ServiceConfiguration;
+import org.osgi.test.common.service.ServicePromises;
+import org.osgi.util.promise.Promise;
+
+public class ServiceConfigurationTest {
+	static final AtomicInteger	counter	= new AtomicInteger();
+
+	BundleContext				bundleContext;
+	ExecutorService				executor;
+	String						testName;
+
+	@BeforeEach
+	void beforeEach(TestInfo testInfo) {
+		bundleContext = CloseableBundleContext.proxy(FrameworkUtil.getBundle(ServiceConfigurationTest.class)
+			.getBundleContext());
+		executor = Executors.newSingleThreadExecutor();
+		testName = testInfo.getTestMethod()
+			.get()
+			.getName() + "." + counter.incrementAndGet();
+	}
+
+	@AfterEach
+	void afterEach() throws Exception {
+		executor.shutdownNow();
+		executor.awaitTermination(5, TimeUnit.SECONDS);
+		((AutoCloseable) bundleContext).close();
+	}
+
+	ServiceConfiguration<Runnable> configuration(int cardinality, long timeout) {
+		return new ServiceConfiguration<>(Runnable.class, "(test=%s)", new String[] {
+			testName
+		}, cardinality, timeout);
+	}
+
+	void register(int count) {
+		for (int i = 0; i < count; i++) {
+			bundleContext.registerService(Runnable.class, () -> {}, Dictionaries.dictionaryOf("test", testName));
+		}
+	}
+
+	@ParameterizedTest
+	@ValueSource(ints = {
+		1, 10, 100
+	})
+	void init_returnsWhenLateServicesArrive(int cardinality) throws Exception {
+		executor.execute(() -> register(cardinality));
+
+		long start = System.nanoTime();
+		try (ServiceConfiguration<Runnable> configuration = configuration(cardinality, 5000L).init(bundleContext)) {
+			long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+			assertThat(configuration.size()).isEqualTo(cardinality);
+			assertThat(configuration.getServices()).hasSize(cardinality)
+				.doesNotContainNull();
+			// far below the timeout, so a missed wake up fails
+			assertThat(elapsed).as("init latency for %s services", cardinality)
+				.isLessThan(1000L);
+		}
+	}
+
+	@Test
+	void init_returnsImmediatelyWhenServicesPresent() throws Exception {
+		register(10);
+
+		try (ServiceConfiguration<Runnable> configuration = configuration(10, 0L).init(bundleContext)) {
+			assertThat(configuration.size()).isEqualTo(10);
+		}
+	}
+
+	@Test
+	void init_failsWhenServicesDoNotArrive() throws Exception {
+		register(1);
+
+		assertThatThrownBy(() -> configuration(2, 50L).init(bundleContext)).isInstanceOf(AssertionError.class)
+			.hasMessageContaining("1/2 services")
+			.hasMessageContaining("didn't arrive within 50ms");
+	}
+
+	@Test
+	void onArrival_isCalledForEachWait() throws Exception {
+		List<ServiceArrival> arrivals = new CopyOnWriteArrayList<>();
+		executor.execute(() -> register(1));
+
+		try (ServiceConfiguration<Runnable> configuration = configuration(1, 5000L).onArrival(arrivals::add)
+			.init(bundleContext)) {
+			assertThat(arrivals).singleElement()
+				.satisfies(arrival -> {
+					assertThat(arrival.isArrived()).isTrue();
+					assertThat(arrival.getFilter()).isEqualTo(configuration.getFilter());
+					assertThat(arrival.getCardinality()).isEqualTo(1);
+					assertThat(arrival.getTimeout()).isEqualTo(5000L);
+					assertThat(arrival.getTrackingCount()).isEqualTo(1);
+					assertThat(arrival.getHeadroom()).isEqualTo(Duration.ofMillis(5000L)
+						.minus(arrival.getWaited()));
+				});
+		}
+
+		assertThatThrownBy(() -> configuration(2, 50L).onArrival(arrivals::add)
+			.init(bundleContext)).isInstanceOf(AssertionError.class);
+		assertThat(arrivals).hasSize(2)
+			.last()
+			.satisfies(arrival -> {
+				assertThat(arrival.isArrived()).isFalse();
+				assertThat(arrival.getWaited()).isGreaterThanOrEqualTo(Duration.ofMillis(50L));
+				assertThat(arrival.getHeadroom()
+					.isNegative()).isTrue();
+			});
+	}
+
+	@Test
+	void await_reportsThisWaitToItsListener() throws Exception {
+		List<ServiceArrival> configured = new CopyOnWriteArrayList<>();
+		List<ServiceArrival> waits = new CopyOnWriteArrayList<>();
+		register(1);
+
+		try (ServiceConfiguration<Runnable> configuration = configuration(1, 5000L).onArrival(configured::add)
+			.init(bundleContext)) {
+			configuration.await(waits::add);
+			configuration.await(Instant.now()
+				.plusSeconds(5L), waits::add);
+			assertThat(waits).hasSize(2)
+				.allSatisfy(arrival -> assertThat(arrival.isArrived()).isTrue());
+			assertThat(configured).hasSize(3);
+		}
+	}
+
+	@Test
+	void getServices_areInRankingOrderAsServicesChange() throws Exception {
+		Runnable low = () -> {};
+		Runnable high = () -> {};
+		Runnable first = () -> {};
+		Runnable second = () -> {};
+		ServiceRegistration<Runnable> lowRegistration = bundleContext.registerService(Runnable.class, low,
+			Dictionaries.dictionaryOf("test", testName, Constants.SERVICE_RANKING, -5));
+		bundleContext.registerService(Runnable.class, high,
+			Dictionaries.dictionaryOf("test", testName, Constants.SERVICE_RANKING, 5));
+		bundleContext.registerService(Runnable.class, first, Dictionaries.dictionaryOf("test", testName));
+		ServiceRegistration<Runnable> secondRegistration = bundleContext.registerService(Runnable.class, second,
+			Dictionaries.dictionaryOf("test", testName));
+
+		try (ServiceConfiguration<Runnable> configuration = configuration(4, 0L).init(bundleContext)) {
+			assertThat(configuration.getServices()).containsExactly(low, second, first, high);
+			assertThat(configuration.getServiceReferences()).isSorted();
+
+			lowRegistration.setProperties(Dictionaries.dictionaryOf("test", testName, Constants.SERVICE_RANKING, 10));
+			assertThat(configuration.getServices()).containsExactly(second, first, high, low);
+			assertThat(configuration.getServiceReferences()).isSorted();
+
+			secondRegistration.unregister();
+			assertThat(configuration.getServices()).containsExactly(first, high, low);
+			assertThat(configuration.getServiceReferences()).isSorted();
+		}
+	}
+
+	@Test
+	void servicePromises_resolvedWhenServicesArrive() throws Exception {
+		try (ServiceConfiguration<Runnable> configuration = configuration(0, 0L).init(bundleContext)) {
+			ServicePromises<Runnable> promises = ServicePromises.of(configuration);
+			Promise<Runnable> service = promises.service();
+			Promise<List<Runnable>> services = promises.services(3);
+			assertThat(service.isDone()).isFalse();
+
+			register(1);
+			assertThat(service.isDone()).isTrue();
+			assertThat(service.getValue()).isSameAs(configuration.getService());
+			assertThat(services.isDone()).isFalse();
+
+			register(2);
+			assertThat(services.isDone()).isTrue();
+			assertThat(services.getValue()).containsExactlyElementsOf(configuration.getServices());
+		}
+	}
+
+	@Test
+	void servicePromises_removedWhenServiceGoes() throws Exception {
+		ServiceRegistration<Runnable> registration = bundleContext.registerService(Runnable.class, () -> {},
+			Dictionaries.dictionaryOf("test", testName));
+		try (ServiceConfiguration<Runnable> configuration = configuration(1, 0L).init(bundleContext)) {
+			ServiceReference<Runnable> reference = configuration.getServiceReference();
+			ServicePromises<Runnable> promises = ServicePromises.of(configuration);
+			Promise<ServiceReference<Runnable>> removed = promises.removed(reference);
+			assertThat(removed.isDone()).isFalse();
+
+			registration.unregister();
+			assertThat(removed.isDone()).isTrue();
+			assertThat(removed.getValue()).isSameAs(reference);
+			assertThat(promises.removed(reference)
+				.isDone()).isTrue();
+		}
+	}
+
+	@Test
+	void servicePromises_failedWhenClosed() throws Exception {
+		ServiceRegistration<Runnable> registration = bundleContext.registerService(Runnable.class, () -> {},
+			Dictionaries.dictionaryOf("test", testName));
+		ServiceConfiguration<Runnable> configuration = configuration(1, 0L).init(bundleContext);
+		ServicePromises<Runnable> promises = ServicePromises.of(configuration);
+		Promise<List<Runnable>> services = promises.services(2);
+		Promise<ServiceReference<Runnable>> removed = promises.removed(configuration.getServiceReference());
+		configuration.close();
+
+		assertThat(services.isDone()).isTrue();
+		assertThat(services.getFailure()).isInstanceOf(IllegalStateException.class);
+		assertThat(removed.isDone()).isTrue();
+		assertThat(removed.getValue()).isSameAs(registration.getReference());
+		assertThat(promises.service()
+			.getFailure()).isInstanceOf(IllegalStateException.class);
+		assertThatThrownBy(() -> promises.services(-1)).isInstanceOf(IllegalArgumentException.class);
+	}
+}
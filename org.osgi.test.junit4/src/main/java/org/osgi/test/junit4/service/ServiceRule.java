@@ -31,6 +31,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 
 import org.junit.rules.MethodRule;
 import org.junit.runners.model.FrameworkMethod;
@@ -60,6 +61,9 @@ import org.osgi.test.common.service.ServiceConfigurationKey;
  * 	// use foo
  * }
  * </pre>
+ * <p>
+ * A field of type {@code Supplier<S>} is injected lazily: the services are
+ * only tracked and waited for when {@link Supplier#get()} is first called.
  */
 public class ServiceRule implements AutoCloseable, MethodRule {
 
@@ -118,6 +122,15 @@ public class ServiceRule implements AutoCloseable, MethodRule {
 		}
 	}
 
+	/**
+	 * A parameterized {@code Supplier<S>} field is injected lazily. A raw
+	 * {@code Supplier} field is still injected with a {@code Supplier}
+	 * service.
+	 */
+	static boolean isLazy(Class<?> memberType, Type genericMemberType) {
+		return Supplier.class.equals(memberType) && (genericMemberType instanceof ParameterizedType);
+	}
+
 	static <X> ServiceConfiguration<X> getServiceUseConfiguration(
 		InjectService injectService,
 		Class<X> serviceType,
@@ -136,7 +149,8 @@ public class ServiceRule implements AutoCloseable, MethodRule {
 
 		Type serviceType = serviceUseParameter.service();
 		if (serviceType.equals(InjectService.class)) {
-			if (List.class.equals(memberType) || ServiceAware.class.equals(memberType)) {
+			if (List.class.equals(memberType) || ServiceAware.class.equals(memberType)
+				|| isLazy(memberType, genericMemberType)) {
 				if (genericMemberType instanceof ParameterizedType) {
 					serviceType = ((ParameterizedType) genericMemberType).getActualTypeArguments()[0];
 					if (serviceType instanceof WildcardType) {
@@ -152,14 +166,20 @@ public class ServiceRule implements AutoCloseable, MethodRule {
 
 		if (!(serviceType instanceof Class)) {
 			throw new IllegalStateException(
-				"The only generic types allowed are List<S> and ServiceAware<S>: " + serviceType);
+				"The only generic types allowed are List<S>, ServiceAware<S> and Supplier<S>: " + serviceType);
+		}
+
+		if (isLazy(memberType, genericMemberType)) {
+			final Class<?> lazyServiceType = (Class<?>) serviceType;
+			return (Supplier<?>) () -> getServiceUseConfiguration(serviceUseParameter, lazyServiceType, bundleContext,
+				configurations).getService();
 		}
 
 		ServiceConfiguration<?> configuration = getServiceUseConfiguration(serviceUseParameter,
 			(Class<?>) serviceType, bundleContext, configurations);
 
 		if (List.class.equals(memberType)) {
-			return new ListSupplierDelegate<>(configuration::getServices);
+			return new ListSupplierDelegate<>(configuration::getServices, configuration::getChangeCount);
 		}
 		if (ServiceAware.class.equals(memberType)) {
 			return configuration;
@@ -0,0 +1,53 @@
+/*******************************************************************************
+ * Copyright (c) Contributors to the Eclipse Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+
+package org.osgi.test.junit4.test.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.function.Supplier;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.osgi.test.common.annotation.InjectService;
+import org.osgi.test.junit4.service.ServiceRule;
+import org.osgi.test.junit4.test.types.Foo;
+
+public class LazyServiceTest {
+
+	@Rule
+	public ServiceRule	sur	= new ServiceRule();
+
+	@InjectService(filter = "(foo=lazy)", timeout = 5000)
+	Supplier<Foo>		unused;
+	@InjectService(filter = "(foo=lazy)", timeout = 100)
+	Supplier<Foo>		missing;
+
+	@Test
+	public void testUnusedSupplier() throws Exception {
+		assertThat(unused).isNotNull();
+	}
+
+	@Test
+	public void testMissingService() throws Exception {
+		assertThatThrownBy(missing::get).isInstanceOf(AssertionError.class)
+			.hasMessageContaining("(foo=lazy)");
+	}
+
+}
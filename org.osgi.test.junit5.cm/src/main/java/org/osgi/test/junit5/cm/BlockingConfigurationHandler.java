@@ -20,6 +20,8 @@ package org.osgi.test.junit5.cm;
 
 import java.io.IOException;
 import java.util.Dictionary;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import org.osgi.service.cm.Configuration;
 
@@ -30,5 +32,27 @@ public interface BlockingConfigurationHandler {
 
 	boolean delete(Configuration configuration, long timeout) throws InterruptedException, IOException;
 
-
+	/**
+	 * Update several configurations and wait for all their update events.
+	 * <p>
+	 * All configurations are updated before waiting, so their events are
+	 * awaited together within a single timeout rather than one timeout per
+	 * configuration. Configurations whose properties do not differ are not
+	 * updated and not waited for.
+	 *
+	 * @param configurations the new properties of each configuration
+	 * @param timeout the time to wait for all update events in milliseconds
+	 * @return {@code true} if all update events were received in time
+	 * @since 1.3
+	 */
+	default boolean updateAll(Map<Configuration, Dictionary<String, Object>> configurations, long timeout)
+		throws InterruptedException, IOException {
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+		boolean isOk = true;
+		for (Map.Entry<Configuration, Dictionary<String, Object>> entry : configurations.entrySet()) {
+			long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+			isOk &= update(entry.getKey(), entry.getValue(), Math.max(remaining, 0L));
+		}
+		return isOk;
+	}
 }
@@ -21,11 +21,13 @@ package org.osgi.test.junit5.cm;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Dictionary;
-import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -37,14 +39,23 @@ import org.osgi.service.cm.ConfigurationEvent;
 import org.osgi.service.cm.ConfigurationListener;
 import org.osgi.test.common.context.ContextHelper;
 
+/**
+ * A {@link BlockingConfigurationHandler} waiting for the
+ * {@link ConfigurationEvent}s of the changes it makes.
+ * <p>
+ * The events are counted per PID. Each change expects the next event of its
+ * PID, so any number of threads can wait for changes of the same or of
+ * different PIDs while the Configuration Admin event thread delivers the
+ * events.
+ */
 public class BlockingConfigurationHandlerImpl
 	implements ConfigurationListener, BlockingConfigurationHandler, CloseableResource {
 
-	private final Map<String, CountDownLatch>	updateMap	= new HashMap<String, CountDownLatch>();
-	private final Map<String, CountDownLatch>	deleteMap	= new HashMap<String, CountDownLatch>();
+	private final ConcurrentMap<String, PidEvents>	updates	= new ConcurrentHashMap<>();
+	private final ConcurrentMap<String, PidEvents>	deletes	= new ConcurrentHashMap<>();
 
-	private final ServiceRegistration<?>		reg;
-	private final AtomicBoolean					closed		= new AtomicBoolean(false);
+	private final ServiceRegistration<?>			reg;
+	private final AtomicBoolean						closed	= new AtomicBoolean(false);
 
 	public BlockingConfigurationHandlerImpl() {
 		this(Optional.empty());
@@ -68,13 +79,29 @@ public class BlockingConfigurationHandlerImpl
 
 		assertFalse(closed.get(), "BlockingConfigurationHandler was closed");
 
-		CountDownLatch latch = createCountdownLatchUpdate(configuration.getPid());
-		boolean updatedBecauseDifferent = configuration.updateIfDifferent(dictionary);
-		if (!updatedBecauseDifferent) {
-			updateMap.remove(configuration.getPid());
-			return true;
+		long deadline = deadline(timeout);
+		Expectation expectation = expectUpdate(configuration, dictionary);
+		return (expectation == null) || expectation.await(deadline);
+	}
+
+	@Override
+	public boolean updateAll(Map<Configuration, Dictionary<String, Object>> configurations, long timeout)
+		throws InterruptedException, IOException {
+
+		assertFalse(closed.get(), "BlockingConfigurationHandler was closed");
+
+		long deadline = deadline(timeout);
+		List<Expectation> expectations = new ArrayList<>(configurations.size());
+		for (Map.Entry<Configuration, Dictionary<String, Object>> entry : configurations.entrySet()) {
+			Expectation expectation = expectUpdate(entry.getKey(), entry.getValue());
+			if (expectation != null) {
+				expectations.add(expectation);
+			}
+		}
+		boolean isOk = true;
+		for (Expectation expectation : expectations) {
+			isOk &= expectation.await(deadline);
 		}
-		boolean isOk = latch.await(timeout, TimeUnit.MILLISECONDS);
 		return isOk;
 	}
 
@@ -83,40 +110,124 @@ public class BlockingConfigurationHandlerImpl
 
 		assertFalse(closed.get(), "BlockingConfigurationHandler was closed");
 
-		CountDownLatch latch = createCountdownLatchDelete(configuration.getPid());
-		configuration.delete();
-		boolean isOk = latch.await(timeout, TimeUnit.MILLISECONDS);
-		return isOk;
+		long deadline = deadline(timeout);
+		Expectation expectation = expect(deletes, configuration.getPid());
+		try {
+			configuration.delete();
+		} catch (IOException | RuntimeException e) {
+			expectation.cancel();
+			throw e;
+		}
+		return expectation.await(deadline);
+	}
+
+	/**
+	 * Update the configuration if the properties differ.
+	 *
+	 * @return The expected update event, or {@code null} if the configuration
+	 *         was not updated.
+	 */
+	private Expectation expectUpdate(Configuration configuration, Dictionary<String, Object> dictionary)
+		throws IOException {
+		Expectation expectation = expect(updates, configuration.getPid());
+		boolean updatedBecauseDifferent;
+		try {
+			updatedBecauseDifferent = configuration.updateIfDifferent(dictionary);
+		} catch (IOException | RuntimeException e) {
+			expectation.cancel();
+			throw e;
+		}
+		if (!updatedBecauseDifferent) {
+			expectation.cancel();
+			return null;
+		}
+		return expectation;
 	}
 
-	private CountDownLatch createCountdownLatchUpdate(String pid) {
-		CountDownLatch countDownLatch = new CountDownLatch(1);
-		updateMap.put(pid, countDownLatch);
-		return countDownLatch;
+	private static Expectation expect(ConcurrentMap<String, PidEvents> events, String pid) {
+		PidEvents pidEvents = events.computeIfAbsent(pid, k -> new PidEvents());
+		return new Expectation(pidEvents, pidEvents.expect());
 	}
 
-	private CountDownLatch createCountdownLatchDelete(String pid) {
-		CountDownLatch countDownLatch = new CountDownLatch(1);
-		deleteMap.put(pid, countDownLatch);
-		return countDownLatch;
+	private static long deadline(long timeout) {
+		return System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
 	}
 
 	@Override
 	public void configurationEvent(ConfigurationEvent event) {
 		String pid = event.getPid();
+		PidEvents pidEvents = null;
 		if (event.getType() == ConfigurationEvent.CM_UPDATED) {
+			pidEvents = updates.get(pid);
+		} else if (event.getType() == ConfigurationEvent.CM_DELETED) {
+			pidEvents = deletes.get(pid);
+		}
+		if (pidEvents != null) {
+			pidEvents.signal();
+		}
+	}
 
-			CountDownLatch countDownLatch = updateMap.remove(pid);
-			if (countDownLatch != null) {
-				countDownLatch.countDown();
+	/**
+	 * The events of a PID. Every change expects the event following the
+	 * events expected by the changes before it.
+	 */
+	static final class PidEvents {
+		// guarded by this
+		private long	received;
+		// guarded by this
+		private long	expected;
+
+		synchronized long expect() {
+			// events of changes made by others must not satisfy this change
+			expected = Math.max(expected, received) + 1;
+			return expected;
+		}
+
+		synchronized void signal() {
+			received++;
+			notifyAll();
+		}
+
+		/**
+		 * The change expecting the event was not made. If no later change
+		 * expects an event, the expectation is withdrawn. Otherwise it is
+		 * counted as received so the later changes are not kept waiting.
+		 */
+		synchronized void cancel(long count) {
+			if (count == expected) {
+				expected--;
+			} else {
+				signal();
 			}
-		} else if (event.getType() == ConfigurationEvent.CM_DELETED) {
+		}
 
-			CountDownLatch countDownLatch = deleteMap.remove(pid);
-			if (countDownLatch != null) {
-				countDownLatch.countDown();
+		synchronized boolean await(long count, long deadline) throws InterruptedException {
+			while (received < count) {
+				long remaining = deadline - System.nanoTime();
+				if (remaining <= 0L) {
+					return false;
+				}
+				TimeUnit.NANOSECONDS.timedWait(this, remaining);
 			}
+			return true;
 		}
 	}
 
+	static final class Expectation {
+		private final PidEvents	events;
+		private final long		count;
+
+		Expectation(PidEvents events, long count) {
+			this.events = events;
+			this.count = count;
+		}
+
+		boolean await(long deadline) throws InterruptedException {
+			return events.await(count, deadline);
+		}
+
+		void cancel() {
+			events.cancel(count);
+		}
+	}
 }
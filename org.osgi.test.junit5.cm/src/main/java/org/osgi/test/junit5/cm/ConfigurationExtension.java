@@ -26,6 +26,7 @@ import java.lang.annotation.Annotation;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
 import java.util.Dictionary;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -155,7 +156,8 @@ public class ConfigurationExtension extends InjectingExtension<InjectConfigurati
 	}
 
 	private ConfigurationHolder handleWithConfiguration(ExtensionContext context, WithConfiguration configAnnotation,
-		ConfigurationAdmin configurationAdmin, boolean injecting) {
+		ConfigurationAdmin configurationAdmin, boolean injecting,
+		Map<Configuration, Dictionary<String, Object>> updates) {
 		try {
 			Configuration configBefore = ConfigUtil.getConfigsByServicePid(configurationAdmin, configAnnotation.pid(),
 				0l);
@@ -172,7 +174,7 @@ public class ConfigurationExtension extends InjectingExtension<InjectConfigurati
 
 			updateConfigurationRespectNew(context, configuration,
 				PropertiesConverter.of(context, configAnnotation.properties()),
-				configBefore == null, injecting);
+				configBefore == null, injecting, updates);
 
 			return new ConfigurationHolder(configuration, copyOfBefore);
 		} catch (Exception e) {
@@ -182,7 +184,8 @@ public class ConfigurationExtension extends InjectingExtension<InjectConfigurati
 	}
 
 	private ConfigurationHolder handleWithFactoryConfiguration(ExtensionContext context,
-		WithFactoryConfiguration configAnnotation, ConfigurationAdmin configurationAdmin, boolean injecting) {
+		WithFactoryConfiguration configAnnotation, ConfigurationAdmin configurationAdmin, boolean injecting,
+		Map<Configuration, Dictionary<String, Object>> updates) {
 
 		try {
 			Configuration configBefore;
@@ -212,7 +215,7 @@ public class ConfigurationExtension extends InjectingExtension<InjectConfigurati
 
 			updateConfigurationRespectNew(context, configuration,
 				PropertiesConverter.of(context, configAnnotation.properties()),
-				configBefore == null, injecting);
+				configBefore == null, injecting, updates);
 
 			return new ConfigurationHolder(configuration, createConfigurationCopy(configBefore));
 		} catch (Exception e) {
@@ -311,12 +314,12 @@ public class ConfigurationExtension extends InjectingExtension<InjectConfigurati
 				break;
 			case 2 :
 				configurationHolder = handleWithConfiguration(extensionContext, injectConfiguration.withConfig(),
-					configurationAdmin(extensionContext), true);
+					configurationAdmin(extensionContext), true, null);
 				configuration = configurationHolder.getCmConfiguration();
 				break;
 			case 4 :
 				configurationHolder = handleWithFactoryConfiguration(extensionContext,
-					injectConfiguration.withFactoryConfig(), configurationAdmin(extensionContext), true);
+					injectConfiguration.withFactoryConfig(), configurationAdmin(extensionContext), true, null);
 				configuration = configurationHolder.getCmConfiguration();
 				break;
 			default :
@@ -368,43 +371,59 @@ public class ConfigurationExtension extends InjectingExtension<InjectConfigurati
 		}
 	}
 
+	/**
+	 * Apply the configuration annotations of the active element. All updates
+	 * are issued before their events are awaited, so the element waits for
+	 * one Configuration Admin round trip rather than one per configuration.
+	 */
 	private List<ConfigurationHolder> handleAnnotationsOnActiveElement(ExtensionContext extensionContext) {
 		ConfigurationAdmin ca = configurationAdmin(extensionContext);
-		return extensionContext.getElement()
+		Map<Configuration, Dictionary<String, Object>> updates = new LinkedHashMap<>();
+		List<ConfigurationHolder> configHolders = extensionContext.getElement()
 			.map(AnnotationUtil::findAllConfigAnnotations)
 			.orElse(emptyList())
 			.stream()
-			.flatMap(annotation -> handleConfiguration(extensionContext, annotation, ca).stream())
+			.flatMap(annotation -> handleConfiguration(extensionContext, annotation, ca, updates).stream())
 			.collect(Collectors.toList());
+		if (!updates.isEmpty()) {
+			try {
+				getBlockingConfigurationHandler(extensionContext).updateAll(updates, 1000);
+			} catch (Exception e) {
+				throw new ParameterResolutionException("Unable to update Configurations.", e);
+			}
+		}
+		return configHolders;
 	}
 
 	private List<ConfigurationHolder> handleConfiguration(ExtensionContext extensionContext, Annotation an,
-		ConfigurationAdmin ca) {
+		ConfigurationAdmin ca, Map<Configuration, Dictionary<String, Object>> updates) {
 
 		ArrayList<ConfigurationHolder> configHolders = new ArrayList<>();
 		if (an instanceof WithConfigurations) {
 
 			WithConfigurations withConfigurations = (WithConfigurations) an;
 			for (WithConfiguration factoryConfigAnnotation : withConfigurations.value()) {
-				configHolders.add(handleWithConfiguration(extensionContext, factoryConfigAnnotation, ca, false));
+				configHolders.add(handleWithConfiguration(extensionContext, factoryConfigAnnotation, ca, false, updates));
 
 			}
 
 		} else if (an instanceof WithConfiguration) {
 
-			configHolders.add(handleWithConfiguration(extensionContext, (WithConfiguration) an, ca, false));
+			configHolders.add(handleWithConfiguration(extensionContext, (WithConfiguration) an, ca, false, updates));
 
 		} else if (an instanceof WithFactoryConfigurations) {
 
 			WithFactoryConfigurations withFactoryConfigurations = (WithFactoryConfigurations) an;
 			for (WithFactoryConfiguration factoryConfigAnnotation : withFactoryConfigurations.value()) {
-				configHolders.add(handleWithFactoryConfiguration(extensionContext, factoryConfigAnnotation, ca, false));
+				configHolders.add(
+					handleWithFactoryConfiguration(extensionContext, factoryConfigAnnotation, ca, false, updates));
 			}
 
 		} else if (an instanceof WithFactoryConfiguration) {
 
 			configHolders
-				.add(handleWithFactoryConfiguration(extensionContext, (WithFactoryConfiguration) an, ca, false));
+				.add(handleWithFactoryConfiguration(extensionContext, (WithFactoryConfiguration) an, ca, false,
+					updates));
 		}
 		return configHolders;
 	}
@@ -442,28 +461,42 @@ public class ConfigurationExtension extends InjectingExtension<InjectConfigurati
 		Dictionary<String, Object> newConfigurationProperties, boolean isNewConfiguration)
 		throws InterruptedException, IOException {
 		updateConfigurationRespectNew(DO_NOT_USE_CONTEXT, configurationToBeUpdated, newConfigurationProperties,
-			isNewConfiguration, false);
+			isNewConfiguration, false, null);
 	}
 
+	/**
+	 * Update the configuration if necessary. If {@code updates} is not
+	 * {@code null}, the update is only added to it and the caller applies all
+	 * collected updates together.
+	 */
 	private void updateConfigurationRespectNew(ExtensionContext extensionContext,
 		Configuration configurationToBeUpdated, Dictionary<String, Object> newConfigurationProperties,
-		boolean isNewConfiguration, boolean injecting) throws InterruptedException, IOException {
+		boolean isNewConfiguration, boolean injecting, Map<Configuration, Dictionary<String, Object>> updates)
+		throws InterruptedException, IOException {
 		if (configurationToBeUpdated != null) {
-			BlockingConfigurationHandler blockingConfigHandler = getBlockingConfigurationHandler(extensionContext);
+			Dictionary<String, Object> properties = null;
 			if (newConfigurationProperties != null) {
 				if (ConfigUtil.isDictionaryWithNotSetMarker(newConfigurationProperties)) {
 					// We don't call update if the configuration exists, or if
 					// it is being injected
 					if (isNewConfiguration && !injecting) {
-						blockingConfigHandler.update(configurationToBeUpdated, Dictionaries.dictionaryOf(), 1000);
+						properties = Dictionaries.dictionaryOf();
 					}
 				} else {
 					// has relevant Properties to update
-					blockingConfigHandler.update(configurationToBeUpdated, newConfigurationProperties, 1000);
+					properties = newConfigurationProperties;
 				}
 			} else if (isNewConfiguration) {
 				// is new created Configuration. must be updated
-				blockingConfigHandler.update(configurationToBeUpdated, Dictionaries.dictionaryOf(), 1000);
+				properties = Dictionaries.dictionaryOf();
+			}
+			if (properties == null) {
+				return;
+			}
+			if (updates != null) {
+				updates.put(configurationToBeUpdated, properties);
+			} else {
+				getBlockingConfigurationHandler(extensionContext).update(configurationToBeUpdated, properties, 1000);
 			}
 		}
 	}
@@ -17,7 +17,7 @@
  *******************************************************************************/
 
 @org.osgi.annotation.bundle.Export
-@org.osgi.annotation.versioning.Version("1.2.0")
+@org.osgi.annotation.versioning.Version("1.3.0")
 
 @org.osgi.service.cm.annotations.RequireConfigurationAdmin
 package org.osgi.test.junit5.cm;
@@ -0,0 +1,118 @@
+/*******************************************************************************
+ * Copyright (c) Contributors to the Eclipse Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+
+package org.osgi.test.junit5.cm.test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.Dictionary;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.osgi.service.cm.Configuration;
+import org.osgi.service.cm.ConfigurationAdmin;
+import org.osgi.test.common.annotation.InjectService;
+import org.osgi.test.common.dictionary.Dictionaries;
+import org.osgi.test.junit5.cm.BlockingConfigurationHandlerImpl;
+
+public class BlockingConfigurationHandlerTest {
+
+	static final String					PID	= "blocking.handler.pid";
+
+	@InjectService
+	ConfigurationAdmin					ca;
+
+	BlockingConfigurationHandlerImpl	handler;
+
+	@BeforeEach
+	void createHandler() {
+		handler = new BlockingConfigurationHandlerImpl(Optional.of(getClass()));
+	}
+
+	@AfterEach
+	void closeHandler() throws Throwable {
+		for (int i = 0; i < 4; i++) {
+			Configuration configuration = ca.getConfiguration(PID + i, null);
+			if (configuration.getProperties() != null) {
+				handler.delete(configuration, 3000);
+			}
+		}
+		handler.close();
+	}
+
+	@Test
+	void updateAll_waits_for_all_configurations() throws Exception {
+		Map<Configuration, Dictionary<String, Object>> configurations = new LinkedHashMap<>();
+		for (int i = 0; i < 4; i++) {
+			configurations.put(ca.getConfiguration(PID + i, null), Dictionaries.dictionaryOf("index", i));
+		}
+
+		assertThat(handler.updateAll(configurations, 3000)).isTrue();
+
+		for (int i = 0; i < 4; i++) {
+			assertThat(ca.getConfiguration(PID + i, null)
+				.getProperties()
+				.get("index")).isEqualTo(i);
+		}
+	}
+
+	@Test
+	void updateAll_skips_unchanged_configurations() throws Exception {
+		Configuration configuration = ca.getConfiguration(PID + 0, null);
+		assertThat(handler.update(configuration, Dictionaries.dictionaryOf("index", 0), 3000)).isTrue();
+
+		Map<Configuration, Dictionary<String, Object>> configurations = new LinkedHashMap<>();
+		configurations.put(configuration, Dictionaries.dictionaryOf("index", 0));
+		configurations.put(ca.getConfiguration(PID + 1, null), Dictionaries.dictionaryOf("index", 1));
+
+		assertThat(handler.updateAll(configurations, 3000)).isTrue();
+		assertThat(ca.getConfiguration(PID + 1, null)
+			.getProperties()
+			.get("index")).isEqualTo(1);
+	}
+
+	@Test
+	void concurrent_updates_of_one_pid_are_all_awaited() throws Exception {
+		Configuration configuration = ca.getConfiguration(PID + 0, null);
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<Boolean>> results = new ArrayList<>();
+			for (int i = 0; i < 8; i++) {
+				int value = i;
+				Callable<Boolean> update = () -> handler.update(configuration, Dictionaries.dictionaryOf("value", value),
+					3000);
+				results.add(executor.submit(update));
+			}
+			for (Future<Boolean> result : results) {
+				assertThat(result.get()).isTrue();
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+}
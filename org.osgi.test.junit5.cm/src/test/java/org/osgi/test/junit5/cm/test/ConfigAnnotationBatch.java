@@ -0,0 +1,68 @@
+/*******************************************************************************
+ * Copyright (c) Contributors to the Eclipse Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+
+package org.osgi.test.junit5.cm.test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+import org.osgi.service.cm.Configuration;
+import org.osgi.service.cm.ConfigurationAdmin;
+import org.osgi.test.common.annotation.InjectService;
+import org.osgi.test.common.annotation.Property;
+import org.osgi.test.common.annotation.config.WithConfiguration;
+import org.osgi.test.common.annotation.config.WithFactoryConfiguration;
+
+@WithConfiguration(pid = ConfigAnnotationBatch.PID, properties = @Property(key = "name", value = "single"))
+@WithFactoryConfiguration(factoryPid = ConfigAnnotationBatch.FACTORY_PID, name = "a", properties = @Property(key = "name", value = "a"))
+@WithFactoryConfiguration(factoryPid = ConfigAnnotationBatch.FACTORY_PID, name = "b", properties = @Property(key = "name", value = "b"))
+@WithFactoryConfiguration(factoryPid = ConfigAnnotationBatch.FACTORY_PID, name = "c", properties = @Property(key = "name", value = "c"))
+@WithFactoryConfiguration(factoryPid = ConfigAnnotationBatch.FACTORY_PID, properties = @Property(key = "name", value = "unnamed"))
+public class ConfigAnnotationBatch {
+
+	static final String	PID			= "batch.pid";
+	static final String	FACTORY_PID	= "batch.factory.pid";
+
+	@InjectService
+	ConfigurationAdmin	ca;
+
+	@Test
+	@WithFactoryConfiguration(factoryPid = FACTORY_PID, name = "d", properties = @Property(key = "name", value = "d"))
+	@WithFactoryConfiguration(factoryPid = FACTORY_PID, name = "e", properties = @Property(key = "name", value = "e"))
+	public void all_configurations_are_applied() throws Exception {
+		Configuration[] configurations = ca.listConfigurations("(service.factoryPid=" + FACTORY_PID + ")");
+		assertThat(configurations).hasSize(6)
+			.extracting(c -> c.getProperties()
+				.get("name"))
+			.containsExactlyInAnyOrder("a", "b", "c", "d", "e", "unnamed");
+
+		assertThat(ca.listConfigurations("(service.pid=" + PID + ")")).singleElement()
+			.extracting(c -> c.getProperties()
+				.get("name"))
+			.isEqualTo("single");
+	}
+
+	@Test
+	public void method_configurations_are_restored() throws Exception {
+		Configuration[] configurations = ca.listConfigurations("(service.factoryPid=" + FACTORY_PID + ")");
+		assertThat(configurations).hasSize(4)
+			.extracting(c -> c.getProperties()
+				.get("name"))
+			.containsExactlyInAnyOrder("a", "b", "c", "unnamed");
+	}
+}
@@ -18,6 +18,8 @@
 
 package org.osgi.test.junit5.context;
 
+import java.util.function.Consumer;
+
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.junit.jupiter.api.extension.ExtensionContext;
 import org.junit.jupiter.api.extension.ExtensionContext.Namespace;
@@ -28,6 +30,7 @@ import org.osgi.framework.BundleContext;
 import org.osgi.test.common.annotation.InjectBundleContext;
 import org.osgi.test.common.context.CloseableBundleContext;
 import org.osgi.test.common.context.ContextHelper;
+import org.osgi.test.common.context.ResourceReport;
 import org.osgi.test.common.inject.TargetType;
 import org.osgi.test.common.install.BundleInstaller;
 import org.osgi.test.junit5.inject.InjectingExtension;
@@ -67,6 +70,31 @@ public class BundleContextExtension extends InjectingExtension<InjectBundleConte
 	@Deprecated
 	public static final String	INSTALL_BUNDLE_KEY	= BundleInstallerExtension.INSTALL_BUNDLE_KEY;
 
+	/**
+	 * Configuration parameter naming a file to which a report of the
+	 * resources acquired and leaked by each test scope is written when the
+	 * test plan completes.
+	 * <p>
+	 * For each scope the report records, by kind of resource, how many
+	 * resources were acquired through the injected bundle context and how
+	 * many were still held when the scope ended, together with their types.
+	 * Scopes are listed with the most leaks first. The report is written as
+	 * CSV if the file name ends with {@code .csv} and as JSON otherwise.
+	 * Nothing is recorded if this parameter is not set.
+	 *
+	 * @since 1.2
+	 */
+	public static final String	RESOURCE_REPORT	= "org.osgi.test.junit5.context.resourceReport";
+
+	/**
+	 * Configuration parameter for capturing the stack trace of every n-th
+	 * resource acquisition in a JSON {@link #RESOURCE_REPORT}. The default is
+	 * {@code 0}, which captures no stack traces.
+	 *
+	 * @since 1.2
+	 */
+	public static final String	RESOURCE_REPORT_SAMPLING	= "org.osgi.test.junit5.context.resourceReport.sampling";
+
 	public BundleContextExtension() {
 		super(InjectBundleContext.class, BundleContext.class);
 	}
@@ -74,7 +102,8 @@ public class BundleContextExtension extends InjectingExtension<InjectBundleConte
 	public static BundleContext getBundleContext(ExtensionContext extensionContext) {
 		BundleContext bundleContext = getStore(extensionContext)
 			.getOrComputeIfAbsent(BUNDLE_CONTEXT_KEY,
-				key -> new CloseableResourceBundleContext(getParentBundleContext(extensionContext)),
+				key -> new CloseableResourceBundleContext(getParentBundleContext(extensionContext),
+					ResourceLeakReport.reporter(extensionContext), ResourceLeakReport.sampling(extensionContext)),
 				CloseableResourceBundleContext.class)
 			.get();
 		return bundleContext;
@@ -103,7 +132,12 @@ public class BundleContextExtension extends InjectingExtension<InjectBundleConte
 		private final BundleContext bundleContext;
 
 		CloseableResourceBundleContext(BundleContext bundleContext) {
-			this.bundleContext = CloseableBundleContext.proxy(bundleContext);
+			this(bundleContext, null, 0);
+		}
+
+		CloseableResourceBundleContext(BundleContext bundleContext, Consumer<? super ResourceReport> reporter,
+			int stackTraceSampling) {
+			this.bundleContext = CloseableBundleContext.proxy(bundleContext, reporter, stackTraceSampling);
 		}
 
 		@Override
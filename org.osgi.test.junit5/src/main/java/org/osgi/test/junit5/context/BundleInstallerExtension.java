@@ -18,14 +18,19 @@
 
 package org.osgi.test.junit5.context;
 
+import java.nio.file.Paths;
+
 import org.junit.jupiter.api.extension.ExtensionContext;
 import org.junit.jupiter.api.extension.ExtensionContext.Namespace;
 import org.junit.jupiter.api.extension.ExtensionContext.Store;
+import org.junit.jupiter.api.extension.ExtensionContext.Store.CloseableResource;
 import org.junit.jupiter.api.extension.ParameterResolutionException;
 import org.osgi.framework.BundleContext;
 import org.osgi.test.common.annotation.InjectBundleInstaller;
 import org.osgi.test.common.inject.TargetType;
+import org.osgi.test.common.install.BundleCache;
 import org.osgi.test.common.install.BundleInstaller;
+import org.osgi.test.common.install.DownloadCache;
 import org.osgi.test.junit5.inject.InjectingExtension;
 
 /**
@@ -55,7 +60,42 @@ import org.osgi.test.junit5.inject.InjectingExtension;
  */
 public class BundleInstallerExtension extends InjectingExtension<InjectBundleInstaller> {
 
-	public static final String	INSTALL_BUNDLE_KEY	= "bundle.installer";
+	public static final String	INSTALL_BUNDLE_KEY		= "bundle.installer";
+
+	/**
+	 * Configuration parameter enabling a {@link BundleCache} shared by all
+	 * bundle installers of the test plan. With the cache, bundles with the
+	 * same location and content are installed once and kept installed across
+	 * test classes; each scope releases its bundles to the cache instead of
+	 * uninstalling them. The default is {@code false}.
+	 *
+	 * @since 1.2
+	 */
+	public static final String	BUNDLE_CACHE			= "org.osgi.test.junit5.context.bundleCache";
+
+	/**
+	 * Configuration parameter naming the file to which the install timings of
+	 * the bundles installed by the bundle installers of the test plan are
+	 * written, grouped by test class. The report is written as CSV if the
+	 * file name ends with {@code .csv} and as JSON otherwise. There is no
+	 * report by default.
+	 *
+	 * @see org.osgi.test.common.install.InstallTiming
+	 * @since 1.2
+	 */
+	public static final String	INSTALL_TIMING_REPORT	= "org.osgi.test.junit5.context.installTimingReport";
+
+	/**
+	 * Configuration parameter naming a directory in which the jars of bundles
+	 * installed from {@code http:}, {@code https:} and {@code file:} URLs, for
+	 * example by {@link org.osgi.test.common.annotation.InjectInstalledBundle},
+	 * are cached. A jar is only downloaded again if it changed. The directory
+	 * can be kept across test runs. There is no download cache by default.
+	 *
+	 * @see DownloadCache
+	 * @since 1.2
+	 */
+	public static final String	DOWNLOAD_CACHE			= "org.osgi.test.junit5.context.downloadCache";
 
 	public BundleInstallerExtension() {
 		super(InjectBundleInstaller.class, BundleInstaller.class);
@@ -63,8 +103,51 @@ public class BundleInstallerExtension extends InjectingExtension<InjectBundleIns
 
 	public static BundleInstaller getBundleInstaller(ExtensionContext extensionContext) {
 		return getStore(extensionContext).getOrComputeIfAbsent(INSTALL_BUNDLE_KEY,
-			key -> new BundleInstaller(BundleContextExtension.getBundleContext(extensionContext)),
-			BundleInstaller.class);
+			key -> newBundleInstaller(extensionContext), BundleInstaller.class);
+	}
+
+	private static BundleInstaller newBundleInstaller(ExtensionContext extensionContext) {
+		BundleContext bundleContext = BundleContextExtension.getBundleContext(extensionContext);
+		BundleCache cache = null;
+		if (extensionContext.getConfigurationParameter(BUNDLE_CACHE, Boolean::parseBoolean)
+			.orElse(false)) {
+			cache = extensionContext.getRoot()
+				.getStore(Namespace.create(BundleInstallerExtension.class))
+				.getOrComputeIfAbsent(BundleCache.class, key -> new CloseableResourceBundleCache(bundleContext),
+					CloseableResourceBundleCache.class)
+				.get();
+		}
+		DownloadCache downloads = extensionContext.getConfigurationParameter(DOWNLOAD_CACHE)
+			.map(directory -> extensionContext.getRoot()
+				.getStore(Namespace.create(BundleInstallerExtension.class))
+				.getOrComputeIfAbsent(DownloadCache.class, key -> new DownloadCache(Paths.get(directory)),
+					DownloadCache.class))
+			.orElse(null);
+		BundleInstaller bundleInstaller = new BundleInstaller(bundleContext, new BundleInstaller.Options().cache(cache)
+			.downloads(downloads)
+			.recorder(InstallTimingReport.recorder(extensionContext)));
+		if (cache != null) {
+			getStore(extensionContext).put(INSTALL_BUNDLE_KEY + ".release",
+				(CloseableResource) bundleInstaller::close);
+		}
+		return bundleInstaller;
+	}
+
+	static class CloseableResourceBundleCache implements CloseableResource {
+		private final BundleCache cache;
+
+		CloseableResourceBundleCache(BundleContext bundleContext) {
+			this.cache = new BundleCache(bundleContext);
+		}
+
+		@Override
+		public void close() throws Exception {
+			cache.close();
+		}
+
+		BundleCache get() {
+			return cache;
+		}
 	}
 
 	static Store getStore(ExtensionContext extensionContext) {
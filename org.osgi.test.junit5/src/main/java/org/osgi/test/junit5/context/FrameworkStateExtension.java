@@ -0,0 +1,110 @@
+/*******************************************************************************
+ * Copyright (c) Contributors to the Eclipse Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+
+package org.osgi.test.junit5.context;
+
+import org.junit.jupiter.api.extension.BeforeAllCallback;
+import org.junit.jupiter.api.extension.ExtensionContext;
+import org.junit.jupiter.api.extension.ExtensionContext.Namespace;
+import org.junit.jupiter.api.extension.ExtensionContext.Store.CloseableResource;
+import org.osgi.test.common.context.ContextHelper;
+import org.osgi.test.common.context.FrameworkSnapshot;
+import org.osgi.test.common.context.FrameworkSnapshot.Diff;
+
+/**
+ * A JUnit 5 Extension which restores the framework to its state before a test
+ * class after the test class.
+ * <p>
+ * The {@link BundleContextExtension} only cleans up what was done through the
+ * bundle context it injects. This extension also undoes the side effects of
+ * the code under test: bundles installed, started or stopped and start levels
+ * changed by the test class are undone by a {@link FrameworkSnapshot} taken
+ * before all tests of the class. Only what changed is restored, which is far
+ * cheaper than restarting the framework.
+ * <p>
+ * The framework is restored when the store of the test class is closed, after
+ * the resources which other extensions such as the
+ * {@link BundleContextExtension} stored for the test class were closed. The
+ * extension must therefore be registered before them, which is the case when
+ * it is declared on the test class.
+ * <p>
+ * What was restored is published as a report entry of the test class. Set
+ * the configuration parameter {@value #FAIL_ON_CHANGE} to {@code true} to
+ * also fail the test class when it changed the framework state.
+ * <p>
+ * Example:
+ *
+ * <pre>
+ * &#64;ExtendWith(FrameworkStateExtension.class)
+ * class MyTests {
+ * 	// ...
+ * }
+ * </pre>
+ *
+ * @since 1.2
+ */
+public class FrameworkStateExtension implements BeforeAllCallback {
+
+	/**
+	 * Configuration parameter for failing a test class which changed the
+	 * framework state. The framework state is restored either way. The
+	 * default is {@code false}.
+	 */
+	public static final String		FAIL_ON_CHANGE	= "org.osgi.test.junit5.context.frameworkState.failOnChange";
+
+	/**
+	 * The key of the report entry listing what was restored.
+	 */
+	public static final String		REPORT_KEY		= "frameworkState.restored";
+
+	private static final Namespace	NAMESPACE		= Namespace.create(FrameworkStateExtension.class);
+	private static final String		SNAPSHOT_KEY	= "framework.snapshot";
+
+	@Override
+	public void beforeAll(ExtensionContext extensionContext) throws Exception {
+		// Store resources are closed in reverse order, so the snapshot is
+		// restored after the resources stored later for the test class
+		extensionContext.getStore(NAMESPACE)
+			.put(SNAPSHOT_KEY, new Restore(extensionContext,
+				FrameworkSnapshot.take(ContextHelper.getBundleContext(extensionContext.getRequiredTestClass()))));
+	}
+
+	static class Restore implements CloseableResource {
+		private final ExtensionContext	extensionContext;
+		private final FrameworkSnapshot	snapshot;
+
+		Restore(ExtensionContext extensionContext, FrameworkSnapshot snapshot) {
+			this.extensionContext = extensionContext;
+			this.snapshot = snapshot;
+		}
+
+		@Override
+		public void close() {
+			Diff diff = snapshot.restore();
+			if (diff.isEmpty()) {
+				return;
+			}
+			extensionContext.publishReportEntry(REPORT_KEY, diff.toString());
+			if (extensionContext.getConfigurationParameter(FAIL_ON_CHANGE)
+				.map(Boolean::parseBoolean)
+				.orElse(false)) {
+				throw new AssertionError(extensionContext.getDisplayName() + " changed the framework state: " + diff);
+			}
+		}
+	}
+}
@@ -0,0 +1,170 @@
+/*******************************************************************************
+ * Copyright (c) Contributors to the Eclipse Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+
+package org.osgi.test.junit5.context;
+
+import static org.osgi.test.junit5.internal.ReportFile.csv;
+import static org.osgi.test.junit5.internal.ReportFile.json;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.extension.ExtensionContext;
+import org.junit.jupiter.api.extension.ExtensionContext.Namespace;
+import org.junit.jupiter.api.extension.ExtensionContext.Store.CloseableResource;
+import org.osgi.test.common.install.InstallTiming;
+import org.osgi.test.junit5.internal.ReportFile;
+
+/**
+ * Collects the {@link InstallTiming}s of the bundles installed during a test
+ * plan and writes them to a report file when the test plan completes.
+ * <p>
+ * The report is held in the store of the root extension context. It groups
+ * the timings by test class and lists the test classes which spent the most
+ * time installing bundles first, and within a test class the slowest bundles
+ * first. The report is written as CSV if the report file name ends with
+ * {@code .csv} and as JSON otherwise.
+ *
+ * @see BundleInstallerExtension#INSTALL_TIMING_REPORT
+ */
+class InstallTimingReport implements CloseableResource {
+
+	private static final Namespace	NAMESPACE	= Namespace.create(InstallTimingReport.class);
+
+	private final Path				path;
+	private final Queue<Timing>		timings		= new ConcurrentLinkedQueue<>();
+
+	InstallTimingReport(Path path) {
+		this.path = path;
+	}
+
+	/**
+	 * Return a recorder of the timings of the test class of the specified
+	 * scope, or {@code null} if no report is configured.
+	 */
+	static Consumer<InstallTiming> recorder(ExtensionContext extensionContext) {
+		return extensionContext.getConfigurationParameter(BundleInstallerExtension.INSTALL_TIMING_REPORT)
+			.map(path -> {
+				InstallTimingReport report = extensionContext.getRoot()
+					.getStore(NAMESPACE)
+					.getOrComputeIfAbsent(InstallTimingReport.class, key -> new InstallTimingReport(Paths.get(path)),
+						InstallTimingReport.class);
+				String testClass = extensionContext.getTestClass()
+					.map(Class::getName)
+					.orElse("");
+				return (Consumer<InstallTiming>) timing -> report.timings.add(new Timing(testClass, timing));
+			})
+			.orElse(null);
+	}
+
+	@Override
+	public void close() throws IOException {
+		Map<String, List<InstallTiming>> byClass = new LinkedHashMap<>();
+		for (Timing t : timings) {
+			byClass.computeIfAbsent(t.testClass, k -> new ArrayList<>())
+				.add(t.timing);
+		}
+		Comparator<InstallTiming> slowest = Comparator.comparing(InstallTiming::getTotalTime)
+			.reversed();
+		byClass.values()
+			.forEach(list -> list.sort(slowest));
+		List<Map.Entry<String, List<InstallTiming>>> sorted = new ArrayList<>(byClass.entrySet());
+		sorted.sort(Comparator.comparing((Map.Entry<String, List<InstallTiming>> e) -> total(e.getValue()))
+			.reversed());
+		ReportFile.write(path, writer -> writeCsv(writer, sorted), writer -> writeJson(writer, sorted));
+	}
+
+	private static void writeCsv(Writer writer, List<Map.Entry<String, List<InstallTiming>>> classes)
+		throws IOException {
+		writer.write("testClass,symbolicName,location,sizeBytes,openMs,installMs,resolveMs,startMs,totalMs\n");
+		for (Map.Entry<String, List<InstallTiming>> entry : classes) {
+			for (InstallTiming timing : entry.getValue()) {
+				writer.write(String.format("%s,%s,%s,%s,%s,%s,%s,%s,%s\n", csv(entry.getKey()),
+					csv(String.valueOf(timing.getSymbolicName())), csv(timing.getLocation()), timing.getSize(),
+					millis(timing.getOpenTime()), millis(timing.getInstallTime()), millis(timing.getResolveTime()),
+					millis(timing.getStartTime()), millis(timing.getTotalTime())));
+			}
+		}
+	}
+
+	private static void writeJson(Writer writer, List<Map.Entry<String, List<InstallTiming>>> classes)
+		throws IOException {
+		writer.write("{\n  \"classes\": [");
+		String separator = "\n";
+		for (Map.Entry<String, List<InstallTiming>> entry : classes) {
+			writer.write(separator);
+			writer.write(String.format("    {\"testClass\": %s, \"totalMs\": %s, \"bundles\": [", json(entry.getKey()),
+				millis(total(entry.getValue()))));
+			String bundleSeparator = "\n";
+			for (InstallTiming timing : entry.getValue()) {
+				writer.write(bundleSeparator);
+				writer.write(String.format(
+					"      {\"symbolicName\": %s, \"location\": %s, \"sizeBytes\": %s, \"openMs\": %s, \"installMs\": %s, \"resolveMs\": %s, \"startMs\": %s, \"totalMs\": %s}",
+					json(String.valueOf(timing.getSymbolicName())), json(timing.getLocation()), timing.getSize(),
+					millis(timing.getOpenTime()), millis(timing.getInstallTime()), millis(timing.getResolveTime()),
+					millis(timing.getStartTime()), millis(timing.getTotalTime())));
+				bundleSeparator = ",\n";
+			}
+			writer.write("\n    ]}");
+			separator = ",\n";
+		}
+		if (!classes.isEmpty()) {
+			writer.write("\n  ");
+		}
+		writer.write("]\n}\n");
+	}
+
+	private static Duration total(List<InstallTiming> timings) {
+		Duration total = Duration.ZERO;
+		for (InstallTiming timing : timings) {
+			total = total.plus(timing.getTotalTime());
+		}
+		return total;
+	}
+
+	private static String millis(Duration duration) {
+		return String.format(Locale.ROOT, "%.3f", duration.toNanos() / 1_000_000.0);
+	}
+
+	@Override
+	public String toString() {
+		return "InstallTimingReport[" + path + "]";
+	}
+
+	static class Timing {
+		final String		testClass;
+		final InstallTiming	timing;
+
+		Timing(String testClass, InstallTiming timing) {
+			this.testClass = testClass;
+			this.timing = timing;
+		}
+	}
+}
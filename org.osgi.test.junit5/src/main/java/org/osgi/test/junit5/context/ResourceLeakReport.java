@@ -0,0 +1,196 @@
+/*******************************************************************************
+ * Copyright (c) Contributors to the Eclipse Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+
+package org.osgi.test.junit5.context;
+
+import static java.util.stream.Collectors.toList;
+import static org.osgi.test.junit5.internal.ReportFile.csv;
+import static org.osgi.test.junit5.internal.ReportFile.json;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.extension.ExtensionContext;
+import org.junit.jupiter.api.extension.ExtensionContext.Namespace;
+import org.junit.jupiter.api.extension.ExtensionContext.Store.CloseableResource;
+import org.osgi.test.common.context.ResourceReport;
+import org.osgi.test.common.context.ResourceReport.Kind;
+import org.osgi.test.junit5.internal.ReportFile;
+
+/**
+ * Collects the {@link ResourceReport}s of the bundle context scopes of a test
+ * plan and writes them to a report file when the test plan completes.
+ * <p>
+ * The report is held in the store of the root extension context. It lists
+ * the scopes with the most leaks first, as CSV if the report file name ends
+ * with {@code .csv} and as JSON otherwise. The JSON report also contains the
+ * aggregate of all scopes, the sampled leak sites and the time spent closing
+ * each scope.
+ *
+ * @see BundleContextExtension#RESOURCE_REPORT
+ */
+class ResourceLeakReport implements CloseableResource {
+
+	private static final Namespace	NAMESPACE	= Namespace.create(ResourceLeakReport.class);
+
+	private final Path				path;
+	private final Queue<Scope>		scopes		= new ConcurrentLinkedQueue<>();
+
+	ResourceLeakReport(Path path) {
+		this.path = path;
+	}
+
+	/**
+	 * Return a reporter recording the resources of the specified scope, or
+	 * {@code null} if no report is configured.
+	 */
+	static Consumer<ResourceReport> reporter(ExtensionContext extensionContext) {
+		return extensionContext.getConfigurationParameter(BundleContextExtension.RESOURCE_REPORT)
+			.map(path -> {
+				ResourceLeakReport report = extensionContext.getRoot()
+					.getStore(NAMESPACE)
+					.getOrComputeIfAbsent(ResourceLeakReport.class, key -> new ResourceLeakReport(Paths.get(path)),
+						ResourceLeakReport.class);
+				String scope = extensionContext.getUniqueId();
+				return (Consumer<ResourceReport>) resources -> report.scopes.add(new Scope(scope, resources));
+			})
+			.orElse(null);
+	}
+
+	static int sampling(ExtensionContext extensionContext) {
+		return extensionContext.getConfigurationParameter(BundleContextExtension.RESOURCE_REPORT_SAMPLING)
+			.map(Integer::parseInt)
+			.orElse(0);
+	}
+
+	@Override
+	public void close() throws IOException {
+		List<Scope> sorted = new ArrayList<>(scopes);
+		sorted.sort(Comparator.comparingLong((Scope s) -> s.resources.getLeaked())
+			.reversed());
+		ReportFile.write(path, writer -> writeCsv(writer, sorted), writer -> writeJson(writer, sorted));
+	}
+
+	private static void writeCsv(Writer writer, List<Scope> scopes) throws IOException {
+		writer.write("scope,kind,acquired,leaked,types\n");
+		for (Scope scope : scopes) {
+			for (Kind kind : Kind.values()) {
+				ResourceReport resources = scope.resources;
+				if (resources.getAcquired(kind) == 0L && resources.getLeaked(kind) == 0L) {
+					continue;
+				}
+				StringBuilder types = new StringBuilder();
+				resources.getLeakedTypes(kind)
+					.forEach((type, count) -> types.append((types.length() == 0) ? "" : " ")
+						.append(type)
+						.append('=')
+						.append(count));
+				writer.write(String.format("%s,%s,%s,%s,%s\n", csv(scope.scope), kind, resources.getAcquired(kind),
+					resources.getLeaked(kind), csv(types.toString())));
+			}
+		}
+	}
+
+	private static void writeJson(Writer writer, List<Scope> scopes) throws IOException {
+		writer.write("{\n  \"total\": ");
+		writeJsonResources(writer, ResourceReport.aggregate(scopes.stream()
+			.map(scope -> scope.resources)
+			.collect(toList())), "  ");
+		writer.write(",\n  \"scopes\": [");
+		String separator = "\n";
+		for (Scope scope : scopes) {
+			writer.write(separator);
+			writer.write(String.format("    {\"scope\": %s, \"leaked\": %s, \"refreshTimeouts\": %s, \"teardownMicros\": {",
+				json(scope.scope), scope.resources.getLeaked(), scope.resources.getRefreshTimeouts()));
+			String phaseSeparator = "";
+			for (Map.Entry<String, Duration> phase : scope.resources.getTeardownTimes()
+				.entrySet()) {
+				writer.write(String.format("%s%s: %s", phaseSeparator, json(phase.getKey()), phase.getValue()
+					.toNanos() / 1000L));
+				phaseSeparator = ", ";
+			}
+			writer.write("}, \"resources\": ");
+			writeJsonResources(writer, scope.resources, "    ");
+			writer.write("}");
+			separator = ",\n";
+		}
+		if (!scopes.isEmpty()) {
+			writer.write("\n  ");
+		}
+		writer.write("]\n}\n");
+	}
+
+	private static void writeJsonResources(Writer writer, ResourceReport resources, String indent)
+		throws IOException {
+		writer.write("{");
+		String separator = "\n";
+		for (Kind kind : Kind.values()) {
+			writer.write(separator);
+			writer.write(String.format("%s  %s: {\"acquired\": %s, \"leaked\": %s, \"types\": {", indent,
+				json(kind.toString()), resources.getAcquired(kind), resources.getLeaked(kind)));
+			String typeSeparator = "";
+			for (Map.Entry<String, Long> type : resources.getLeakedTypes(kind)
+				.entrySet()) {
+				writer.write(String.format("%s%s: %s", typeSeparator, json(type.getKey()), type.getValue()));
+				typeSeparator = ", ";
+			}
+			writer.write("}, \"sites\": [");
+			String siteSeparator = "";
+			for (StackTraceElement[] site : resources.getLeakSites(kind)) {
+				writer.write(siteSeparator);
+				writer.write("[");
+				String frameSeparator = "";
+				for (StackTraceElement frame : site) {
+					writer.write(frameSeparator);
+					writer.write(json(frame.toString()));
+					frameSeparator = ", ";
+				}
+				writer.write("]");
+				siteSeparator = ", ";
+			}
+			writer.write("]}");
+			separator = ",\n";
+		}
+		writer.write("\n" + indent + "}");
+	}
+
+	@Override
+	public String toString() {
+		return "ResourceLeakReport[" + path + "]";
+	}
+
+	static class Scope {
+		final String			scope;
+		final ResourceReport	resources;
+
+		Scope(String scope, ResourceReport resources) {
+			this.scope = scope;
+			this.resources = resources;
+		}
+	}
+}
@@ -20,6 +20,7 @@ package org.osgi.test.junit5.inject;
 
 import static java.util.Objects.requireNonNull;
 import static java.util.stream.Collectors.joining;
+import static java.util.stream.Collectors.toList;
 import static org.junit.platform.commons.support.AnnotationSupport.findAnnotation;
 import static org.junit.platform.commons.support.AnnotationSupport.isAnnotated;
 import static org.osgi.test.common.inject.FieldInjector.findAnnotatedFields;
@@ -30,8 +31,11 @@ import java.lang.annotation.Annotation;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
 import java.lang.reflect.Parameter;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map.Entry;
 
 import org.junit.jupiter.api.TestInstance;
 import org.junit.jupiter.api.TestInstance.Lifecycle;
@@ -71,13 +75,15 @@ public abstract class InjectingExtension<INJECTION extends Annotation>
 		List<Field> fields = findAnnotatedFields(extensionContext.getRequiredTestClass(), annotation(),
 			m -> Modifier.isStatic(m.getModifiers()));
 
+		List<Entry<Field, Object>> injections = new ArrayList<>();
 		fields.stream()
 			.filter(field -> supportsField(field, extensionContext))
-			.forEach(field -> setField(field, null, resolveField(field, extensionContext)));
+			.forEach(field -> injections.add(new SimpleImmutableEntry<>(field, null)));
 		if (isLifecyclePerClass(extensionContext)) {
-			injectNonStaticFields(extensionContext, extensionContext.getRequiredTestInstance());
+			findNonStaticFields(extensionContext, extensionContext.getRequiredTestInstance(), injections);
 		}
-		injectNonStaticFields(extensionContext);
+		findNonStaticFields(extensionContext, injections);
+		injectFields(extensionContext, injections);
 	}
 
 	@Override
@@ -85,10 +91,12 @@ public abstract class InjectingExtension<INJECTION extends Annotation>
 
 	@Override
 	public void beforeEach(ExtensionContext extensionContext) throws Exception {
+		List<Entry<Field, Object>> injections = new ArrayList<>();
 		if (!isLifecyclePerClass(extensionContext)) {
-			injectNonStaticFields(extensionContext, extensionContext.getRequiredTestInstance());
+			findNonStaticFields(extensionContext, extensionContext.getRequiredTestInstance(), injections);
 		}
-		injectNonStaticFields(extensionContext);
+		findNonStaticFields(extensionContext, injections);
+		injectFields(extensionContext, injections);
 	}
 
 	@Override
@@ -196,7 +204,31 @@ public abstract class InjectingExtension<INJECTION extends Annotation>
 	protected abstract Object resolveValue(TargetType targetType, INJECTION injection,
 		ExtensionContext extensionContext) throws ParameterResolutionException;
 
-	private void injectNonStaticFields(ExtensionContext extensionContext) {
+	/**
+	 * Prepare the resolution of the specified {@link Field}s for the specified
+	 * {@link ExtensionContext}.
+	 * <p>
+	 * Called with all the fields to be injected for the extension context
+	 * before any of them is resolved. Subclasses may override this to start
+	 * work for all the fields at once. The default implementation does
+	 * nothing.
+	 *
+	 * @since 1.1
+	 */
+	protected void prepareFields(List<Field> fields, ExtensionContext extensionContext) {}
+
+	private void injectFields(ExtensionContext extensionContext, List<Entry<Field, Object>> injections) {
+		if (injections.isEmpty()) {
+			return;
+		}
+		prepareFields(injections.stream()
+			.map(Entry::getKey)
+			.collect(toList()), extensionContext);
+		injections.forEach(injection -> setField(injection.getKey(), injection.getValue(),
+			resolveField(injection.getKey(), extensionContext)));
+	}
+
+	private void findNonStaticFields(ExtensionContext extensionContext, List<Entry<Field, Object>> injections) {
 		if (!extensionContext.getTestInstances()
 			.isPresent()) {
 			return;
@@ -211,18 +243,19 @@ public abstract class InjectingExtension<INJECTION extends Annotation>
 			final Class<?> testClass = instance.getClass();
 			boolean perInstance = !isLifecyclePerClass(testClass);
 			if (perInstance) {
-				injectNonStaticFields(extensionContext, instance);
+				findNonStaticFields(extensionContext, instance, injections);
 			}
 		}
 	}
 
-	private void injectNonStaticFields(ExtensionContext extensionContext, Object instance) {
+	private void findNonStaticFields(ExtensionContext extensionContext, Object instance,
+		List<Entry<Field, Object>> injections) {
 		final Class<?> testClass = instance.getClass();
 		List<Field> fields = findAnnotatedNonStaticFields(testClass, annotation());
 
 		fields.stream()
 			.filter(field -> supportsField(field, extensionContext))
-			.forEach(field -> setField(field, instance, resolveField(field, extensionContext)));
+			.forEach(field -> injections.add(new SimpleImmutableEntry<>(field, instance)));
 	}
 
 	protected boolean isLifecyclePerClass(ExtensionContext context) {
@@ -0,0 +1,102 @@
+/*******************************************************************************
+ * Copyright (c) Contributors to the Eclipse Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+
+package org.osgi.test.junit5.internal;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Writes the report files of the extensions.
+ * <p>
+ * A report is written as CSV if the report file name ends with {@code .csv}
+ * and as JSON otherwise. This package is not exported.
+ */
+public final class ReportFile {
+	private ReportFile() {}
+
+	/**
+	 * The content of a report in one format.
+	 */
+	@FunctionalInterface
+	public interface Content {
+		void write(Writer writer) throws IOException;
+	}
+
+	/**
+	 * Write a report file, creating its directory if needed.
+	 *
+	 * @param path the report file
+	 * @param csv writes the report as CSV
+	 * @param json writes the report as JSON
+	 * @throws IOException if the report cannot be written
+	 */
+	public static void write(Path path, Content csv, Content json) throws IOException {
+		Path parent = path.toAbsolutePath()
+			.getParent();
+		if (parent != null) {
+			Files.createDirectories(parent);
+		}
+		try (Writer writer = Files.newBufferedWriter(path, UTF_8)) {
+			if (path.getFileName()
+				.toString()
+				.endsWith(".csv")) {
+				csv.write(writer);
+			} else {
+				json.write(writer);
+			}
+		}
+	}
+
+	/**
+	 * @return the value as a quoted CSV field
+	 */
+	public static String csv(String value) {
+		return '"' + value.replace("\"", "\"\"") + '"';
+	}
+
+	/**
+	 * @return the value as a JSON string
+	 */
+	public static String json(String value) {
+		StringBuilder sb = new StringBuilder(value.length() + 2).append('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			switch (c) {
+				case '"' :
+				case '\\' :
+					sb.append('\\')
+						.append(c);
+					break;
+				default :
+					if (c < ' ') {
+						sb.append(String.format("\\u%04x", (int) c));
+					} else {
+						sb.append(c);
+					}
+					break;
+			}
+		}
+		return sb.append('"')
+			.toString();
+	}
+}
@@ -0,0 +1,148 @@
+/*******************************************************************************
+ * Copyright (c) Contributors to the Eclipse Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+
+package org.osgi.test.junit5.service;
+
+import static org.osgi.test.junit5.internal.ReportFile.csv;
+import static org.osgi.test.junit5.internal.ReportFile.json;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.extension.ExtensionContext;
+import org.junit.jupiter.api.extension.ExtensionContext.Namespace;
+import org.junit.jupiter.api.extension.ExtensionContext.Store.CloseableResource;
+import org.osgi.test.common.service.ServiceArrival;
+import org.osgi.test.junit5.internal.ReportFile;
+
+/**
+ * Collects the {@link ServiceArrival}s of a test plan and writes them to a
+ * report file when the test plan completes.
+ * <p>
+ * The report is held in the store of the root extension context. It lists the
+ * arrivals slowest first, as CSV if the report file name ends with
+ * {@code .csv} and as JSON otherwise. The JSON report also summarizes the
+ * slowest arrivals.
+ *
+ * @see ServiceExtension#ARRIVAL_REPORT
+ */
+class ServiceArrivalReport implements CloseableResource {
+
+	private static final Namespace	NAMESPACE	= Namespace.create(ServiceArrivalReport.class);
+
+	private final Path				path;
+	private final int				top;
+	private final Queue<Arrival>	arrivals	= new ConcurrentLinkedQueue<>();
+
+	ServiceArrivalReport(Path path, int top) {
+		this.path = path;
+		this.top = top;
+	}
+
+	/**
+	 * Return a listener recording the arrivals of the specified scope, or
+	 * {@code null} if no report is configured.
+	 */
+	static Consumer<ServiceArrival> listener(ExtensionContext extensionContext) {
+		return extensionContext.getConfigurationParameter(ServiceExtension.ARRIVAL_REPORT)
+			.map(path -> {
+				int top = extensionContext.getConfigurationParameter(ServiceExtension.ARRIVAL_REPORT_TOP)
+					.map(Integer::parseInt)
+					.orElse(10);
+				ServiceArrivalReport report = extensionContext.getRoot()
+					.getStore(NAMESPACE)
+					.getOrComputeIfAbsent(ServiceArrivalReport.class,
+						key -> new ServiceArrivalReport(Paths.get(path), top), ServiceArrivalReport.class);
+				String scope = extensionContext.getUniqueId();
+				return (Consumer<ServiceArrival>) arrival -> report.arrivals.add(new Arrival(scope, arrival));
+			})
+			.orElse(null);
+	}
+
+	@Override
+	public void close() throws IOException {
+		List<Arrival> sorted = new ArrayList<>(arrivals);
+		sorted.sort(Comparator.comparing((Arrival a) -> a.arrival.getWaited())
+			.reversed());
+		ReportFile.write(path, writer -> writeCsv(writer, sorted), writer -> writeJson(writer, sorted));
+	}
+
+	private static void writeCsv(Writer writer, List<Arrival> arrivals) throws IOException {
+		writer.write("scope,filter,cardinality,timeoutMs,waitedMs,headroomMs,trackingCount,arrived\n");
+		for (Arrival a : arrivals) {
+			ServiceArrival arrival = a.arrival;
+			writer.write(String.format("%s,%s,%s,%s,%s,%s,%s,%s\n", csv(a.scope), csv(arrival.getFilter()
+				.toString()), arrival.getCardinality(), arrival.getTimeout(), millis(arrival.getWaited()),
+				millis(arrival.getHeadroom()), arrival.getTrackingCount(), arrival.isArrived()));
+		}
+	}
+
+	private void writeJson(Writer writer, List<Arrival> arrivals) throws IOException {
+		writer.write("{\n  \"slowest\": [");
+		writeJsonArray(writer, arrivals.subList(0, Math.min(top, arrivals.size())));
+		writer.write("],\n  \"arrivals\": [");
+		writeJsonArray(writer, arrivals);
+		writer.write("]\n}\n");
+	}
+
+	private static void writeJsonArray(Writer writer, List<Arrival> arrivals) throws IOException {
+		String separator = "\n";
+		for (Arrival a : arrivals) {
+			ServiceArrival arrival = a.arrival;
+			writer.write(separator);
+			writer.write(String.format(
+				"    {\"scope\": %s, \"filter\": %s, \"cardinality\": %s, \"timeoutMs\": %s, \"waitedMs\": %s, \"headroomMs\": %s, \"trackingCount\": %s, \"arrived\": %s}",
+				json(a.scope), json(arrival.getFilter()
+					.toString()),
+				arrival.getCardinality(), arrival.getTimeout(), millis(arrival.getWaited()),
+				millis(arrival.getHeadroom()), arrival.getTrackingCount(), arrival.isArrived()));
+			separator = ",\n";
+		}
+		if (!arrivals.isEmpty()) {
+			writer.write("\n  ");
+		}
+	}
+
+	private static long millis(Duration duration) {
+		return duration.toMillis();
+	}
+
+	@Override
+	public String toString() {
+		return "ServiceArrivalReport[" + path + "]";
+	}
+
+	static class Arrival {
+		final String			scope;
+		final ServiceArrival	arrival;
+
+		Arrival(String scope, ServiceArrival arrival) {
+			this.scope = scope;
+			this.arrival = arrival;
+		}
+	}
+}
@@ -18,18 +18,30 @@
 
 package org.osgi.test.junit5.service;
 
+import static org.junit.platform.commons.support.AnnotationSupport.findAnnotation;
+import static org.junit.platform.commons.support.AnnotationSupport.isAnnotated;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
 import java.lang.reflect.Type;
 import java.lang.reflect.WildcardType;
+import java.time.Instant;
+import java.util.Arrays;
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 import org.junit.jupiter.api.extension.ExtensionContext;
 import org.junit.jupiter.api.extension.ExtensionContext.Namespace;
 import org.junit.jupiter.api.extension.ExtensionContext.Store;
 import org.junit.jupiter.api.extension.ExtensionContext.Store.CloseableResource;
 import org.junit.jupiter.api.extension.ParameterResolutionException;
+import org.osgi.framework.BundleContext;
 import org.osgi.test.common.annotation.InjectService;
+import org.osgi.test.common.context.ContextHelper;
 import org.osgi.test.common.inject.TargetType;
 import org.osgi.test.common.list.ListSupplierDelegate;
+import org.osgi.test.common.service.ServiceArrival;
 import org.osgi.test.common.service.ServiceAware;
 import org.osgi.test.common.service.ServiceConfiguration;
 import org.osgi.test.common.service.ServiceConfigurationKey;
@@ -54,9 +66,68 @@ import org.osgi.test.junit5.inject.InjectingExtension;
  * 	}
  * }
  * </pre>
+ * <p>
+ * An element of type {@code Supplier<S>} is injected lazily: the services are
+ * only tracked and waited for when {@link Supplier#get()} is first called, so
+ * tests which do not use the service do not wait for it.
  */
 public class ServiceExtension extends InjectingExtension<InjectService> {
 
+	/**
+	 * Configuration parameter to share service trackers across test scopes.
+	 * <p>
+	 * When set to {@code true}, a single tracker is opened for each distinct
+	 * service configuration and shared by all test classes and nested scopes
+	 * of the test plan. Repeated injections of an already available service
+	 * then avoid opening a new tracker and waiting for the service. The shared
+	 * trackers use the bundle context of the test bundle rather than the
+	 * context of the test scope and are closed when the test plan completes.
+	 * The default is {@code false}.
+	 *
+	 * @since 1.3
+	 */
+	public static final String	SHARED_TRACKERS			= "org.osgi.test.junit5.service.sharedTrackers";
+
+	/**
+	 * Configuration parameter to resolve the services of a test scope
+	 * concurrently.
+	 * <p>
+	 * When set to {@code true}, the trackers for all {@code @InjectService}
+	 * fields of a test scope, and for the {@code @InjectService} parameters of
+	 * the test method, are opened before any of them is waited on. The
+	 * services then arrive in parallel and each element waits at most its
+	 * timeout measured from when all the trackers were opened. A scope with
+	 * several slow services therefore waits for the slowest service rather
+	 * than for the sum of them. Failures are still reported for the element
+	 * whose services did not arrive. The default is {@code false}.
+	 *
+	 * @since 1.3
+	 */
+	public static final String	CONCURRENT_RESOLUTION	= "org.osgi.test.junit5.service.concurrentResolution";
+
+	/**
+	 * Configuration parameter naming a file to which a report of how long
+	 * each service configuration waited for its services is written when the
+	 * test plan completes.
+	 * <p>
+	 * For each wait the report records the test scope, filter, cardinality,
+	 * timeout, time waited, the time left of the timeout and the tracking
+	 * count of the tracker, slowest first. The report is written as CSV if
+	 * the file name ends with {@code .csv} and as JSON otherwise. Nothing is
+	 * recorded if this parameter is not set.
+	 *
+	 * @since 1.3
+	 */
+	public static final String	ARRIVAL_REPORT			= "org.osgi.test.junit5.service.arrivalReport";
+
+	/**
+	 * Configuration parameter for the number of slowest waits summarized in
+	 * a JSON {@link #ARRIVAL_REPORT}. The default is {@code 10}.
+	 *
+	 * @since 1.3
+	 */
+	public static final String	ARRIVAL_REPORT_TOP		= "org.osgi.test.junit5.service.arrivalReport.top";
+
 	public ServiceExtension() {
 		super(InjectService.class);
 	}
@@ -70,7 +141,7 @@ public class ServiceExtension extends InjectingExtension<InjectService> {
 		throws ParameterResolutionException {
 		Type valueType;
 		Type upperBoundType = null;
-		if (targetType.matches(List.class) || targetType.matches(ServiceAware.class)) {
+		if (targetType.matches(List.class) || targetType.matches(ServiceAware.class) || isLazy(targetType)) {
 			if (targetType.hasParameterizedTypes()) {
 				valueType = targetType.getFirstGenericTypes()
 					.get();
@@ -129,6 +200,12 @@ public class ServiceExtension extends InjectingExtension<InjectService> {
 		throws ParameterResolutionException {
 		final Type serviceType = extractServiceType(targetType, injectService);
 
+		if (isLazy(targetType)) {
+			return (Supplier<?>) () -> getServiceConfiguration((Class<?>) serviceType, injectService.filter(),
+				injectService.filterArguments(), injectService.cardinality(), injectService.timeout(),
+				extensionContext).getService();
+		}
+
 		ServiceConfiguration<?> configuration = getServiceConfiguration((Class<?>) serviceType, injectService.filter(),
 			injectService.filterArguments(), injectService.cardinality(), injectService.timeout(), extensionContext);
 
@@ -136,21 +213,103 @@ public class ServiceExtension extends InjectingExtension<InjectService> {
 			return configuration;
 		}
 		if (targetType.matches(List.class)) {
-			return new ListSupplierDelegate<>(configuration::getServices);
+			return new ListSupplierDelegate<>(configuration::getServices, configuration::getChangeCount);
 		}
 		return configuration.getService();
 	}
 
 	public static <S> ServiceConfiguration<S> getServiceConfiguration(Class<S> serviceType, String format,
 		String[] args, int cardinality, long timeout, ExtensionContext extensionContext) {
-		@SuppressWarnings("unchecked")
-		ServiceConfiguration<S> serviceConfiguration = getStore(extensionContext)
-			.getOrComputeIfAbsent(new ServiceConfigurationKey<>(serviceType, format, args, cardinality, timeout),
-				key -> new CloseableServiceConfiguration<>(
-					new ServiceConfiguration<>(key).init(BundleContextExtension.getBundleContext(extensionContext))),
-				CloseableServiceConfiguration.class)
-			.get();
-		return serviceConfiguration;
+		return getCloseableServiceConfiguration(
+			new ServiceConfigurationKey<>(serviceType, format, args, cardinality, timeout), null, extensionContext)
+				.get();
+	}
+
+	/**
+	 * Get the configuration for the key from the store of the extension
+	 * context, creating it if necessary. If a deadline is specified, a newly
+	 * created configuration is only opened and the services are awaited when
+	 * the configuration is first used.
+	 */
+	@SuppressWarnings("unchecked")
+	static <S> CloseableServiceConfiguration<S> getCloseableServiceConfiguration(ServiceConfigurationKey<S> key,
+		Instant deadline, ExtensionContext extensionContext) {
+		return getStore(extensionContext).getOrComputeIfAbsent(key, k -> {
+			Consumer<ServiceArrival> arrivalListener = ServiceArrivalReport.listener(extensionContext);
+			if (isSharedTrackers(extensionContext)) {
+				return SharedServiceConfigurations.get(extensionContext)
+					.acquire(k, ContextHelper.getBundleContext(extensionContext.getRequiredTestClass()), deadline,
+						arrivalListener);
+			}
+			ServiceConfiguration<S> serviceConfiguration = new ServiceConfiguration<>(k).onArrival(arrivalListener);
+			BundleContext bundleContext = BundleContextExtension.getBundleContext(extensionContext);
+			if (deadline == null) {
+				return new CloseableServiceConfiguration<>(serviceConfiguration.init(bundleContext));
+			}
+			return new CloseableServiceConfiguration<>(serviceConfiguration.open(bundleContext), deadline);
+		}, CloseableServiceConfiguration.class);
+	}
+
+	@Override
+	public void beforeEach(ExtensionContext extensionContext) throws Exception {
+		if (isConcurrentResolution(extensionContext)) {
+			Instant start = Instant.now();
+			extensionContext.getTestMethod()
+				.map(Method::getParameters)
+				.ifPresent(parameters -> Arrays.stream(parameters)
+					.filter(parameter -> isAnnotated(parameter, annotation()))
+					.forEach(parameter -> openServiceConfiguration(TargetType.of(parameter),
+						findAnnotation(parameter, annotation()).get(), start, extensionContext)));
+		}
+		super.beforeEach(extensionContext);
+	}
+
+	@Override
+	protected void prepareFields(List<Field> fields, ExtensionContext extensionContext) {
+		if (isConcurrentResolution(extensionContext)) {
+			Instant start = Instant.now();
+			fields.forEach(field -> openServiceConfiguration(TargetType.of(field),
+				findAnnotation(field, annotation()).get(), start, extensionContext));
+		}
+	}
+
+	private void openServiceConfiguration(TargetType targetType, InjectService injectService, Instant start,
+		ExtensionContext extensionContext) {
+		if (isLazy(targetType)) {
+			return;
+		}
+		try {
+			final Type serviceType = extractServiceType(targetType, injectService);
+			getCloseableServiceConfiguration(
+				new ServiceConfigurationKey<>((Class<?>) serviceType, injectService.filter(),
+					injectService.filterArguments(), injectService.cardinality(), injectService.timeout()),
+				start.plusMillis(injectService.timeout()), extensionContext);
+		} catch (RuntimeException e) {
+			// Reported when the element is resolved
+		}
+	}
+
+	/**
+	 * A parameterized {@code Supplier<S>} element is injected lazily. A raw
+	 * {@code Supplier} element is still injected with a {@code Supplier}
+	 * service.
+	 */
+	static boolean isLazy(TargetType targetType) {
+		return targetType.matches(Supplier.class) && targetType.hasParameterizedTypes();
+	}
+
+	static boolean isConcurrentResolution(ExtensionContext extensionContext) {
+		return extensionContext.getConfigurationParameter(CONCURRENT_RESOLUTION)
+			.map(Boolean::parseBoolean)
+			.orElse(Boolean.FALSE)
+			.booleanValue();
+	}
+
+	static boolean isSharedTrackers(ExtensionContext extensionContext) {
+		return extensionContext.getConfigurationParameter(SHARED_TRACKERS)
+			.map(Boolean::parseBoolean)
+			.orElse(Boolean.FALSE)
+			.booleanValue();
 	}
 
 	static Store getStore(ExtensionContext extensionContext) {
@@ -159,24 +318,47 @@ public class ServiceExtension extends InjectingExtension<InjectService> {
 
 	public static class CloseableServiceConfiguration<S> implements CloseableResource {
 
-		private final ServiceConfiguration<S> serviceConfiguration;
+		private final ServiceConfiguration<S>			serviceConfiguration;
+		private final Consumer<? super ServiceArrival>	arrivalListener;
+		private volatile Instant						deadline;
 
 		CloseableServiceConfiguration(ServiceConfiguration<S> serviceConfiguration) {
+			this(serviceConfiguration, null);
+		}
+
+		CloseableServiceConfiguration(ServiceConfiguration<S> serviceConfiguration, Instant deadline) {
+			this(serviceConfiguration, deadline, null);
+		}
+
+		/**
+		 * @param arrivalListener the listener for the deferred wait of this
+		 *            scope, in addition to the arrival listener of the
+		 *            configuration; may be {@code null}
+		 */
+		CloseableServiceConfiguration(ServiceConfiguration<S> serviceConfiguration, Instant deadline,
+			Consumer<? super ServiceArrival> arrivalListener) {
 			this.serviceConfiguration = serviceConfiguration;
+			this.arrivalListener = arrivalListener;
+			this.deadline = deadline;
 		}
 
 		@Override
 		public void close() throws Exception {
-			get().close();
+			serviceConfiguration.close();
 		}
 
 		public ServiceConfiguration<S> get() {
+			Instant deadline = this.deadline;
+			if (deadline != null) {
+				serviceConfiguration.await(deadline, arrivalListener);
+				this.deadline = null;
+			}
 			return serviceConfiguration;
 		}
 
 		@Override
 		public String toString() {
-			return get().toString();
+			return serviceConfiguration.toString();
 		}
 	}
 }
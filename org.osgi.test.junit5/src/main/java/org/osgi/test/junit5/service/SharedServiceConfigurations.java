@@ -0,0 +1,137 @@
+/*******************************************************************************
+ * Copyright (c) Contributors to the Eclipse Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+
+package org.osgi.test.junit5.service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.extension.ExtensionContext;
+import org.junit.jupiter.api.extension.ExtensionContext.Namespace;
+import org.junit.jupiter.api.extension.ExtensionContext.Store.CloseableResource;
+import org.osgi.framework.BundleContext;
+import org.osgi.test.common.service.ServiceArrival;
+import org.osgi.test.common.service.ServiceConfiguration;
+import org.osgi.test.common.service.ServiceConfigurationKey;
+import org.osgi.test.junit5.service.ServiceExtension.CloseableServiceConfiguration;
+
+/**
+ * A pool of open {@link ServiceConfiguration}s shared by all test scopes of a
+ * test plan.
+ * <p>
+ * The pool is held in the store of the root extension context. Each scope
+ * acquires a reference to the shared configuration for a key. Closing a
+ * reference does not close the configuration: configurations stay open for
+ * the whole test plan so later test classes can reuse them, and are all closed
+ * when the root context is closed.
+ */
+class SharedServiceConfigurations implements CloseableResource {
+
+	private static final Namespace																NAMESPACE	= Namespace
+		.create(SharedServiceConfigurations.class);
+
+	// guarded by this
+	private final Map<BundleContext, Map<ServiceConfigurationKey<?>, ServiceConfiguration<?>>>	shared		= new HashMap<>();
+
+	static SharedServiceConfigurations get(ExtensionContext extensionContext) {
+		return extensionContext.getRoot()
+			.getStore(NAMESPACE)
+			.getOrComputeIfAbsent(SharedServiceConfigurations.class, key -> new SharedServiceConfigurations(),
+				SharedServiceConfigurations.class);
+	}
+
+	/**
+	 * Acquire a reference to the shared configuration for the specified key,
+	 * opening it if necessary. The configuration stays open until the test
+	 * plan completes.
+	 * <p>
+	 * If the shared configuration is already satisfied this is just a map
+	 * lookup. Otherwise this waits for the services to arrive, or, if a
+	 * deadline is specified, the reference waits until the deadline when it
+	 * is first used. Every wait, including one that finds the configuration
+	 * already satisfied, is reported to the arrival listener of the acquiring
+	 * scope.
+	 *
+	 * @param key the service configuration key
+	 * @param bundleContext the bundle context used to track the services; must
+	 *            outlive the test plan
+	 * @param deadline the deadline for the services to arrive; may be
+	 *            {@code null}
+	 * @param arrivalListener the arrival listener of the acquiring scope; may
+	 *            be {@code null}
+	 * @return the reference to the shared configuration
+	 * @throws AssertionError if the services did not arrive within the
+	 *             timeout
+	 */
+	<S> CloseableServiceConfiguration<S> acquire(ServiceConfigurationKey<S> key, BundleContext bundleContext,
+		Instant deadline, Consumer<? super ServiceArrival> arrivalListener) {
+		ServiceConfiguration<S> configuration;
+		synchronized (this) {
+			@SuppressWarnings("unchecked")
+			ServiceConfiguration<S> existing = (ServiceConfiguration<S>) shared
+				.computeIfAbsent(bundleContext, context -> new HashMap<>())
+				.computeIfAbsent(key, k -> new ServiceConfiguration<>(k).open(bundleContext));
+			configuration = existing;
+		}
+		if ((deadline == null) || configuration.isSatisfied()) {
+			configuration.await(arrivalListener);
+			return new SharedReference<>(configuration, null, null);
+		}
+		return new SharedReference<>(configuration, deadline, arrivalListener);
+	}
+
+	@Override
+	public void close() {
+		List<ServiceConfiguration<?>> toClose = new ArrayList<>();
+		synchronized (this) {
+			shared.values()
+				.forEach(configurations -> toClose.addAll(configurations.values()));
+			shared.clear();
+		}
+		for (ServiceConfiguration<?> configuration : toClose) {
+			try {
+				configuration.close();
+			} catch (IllegalStateException ise) {
+				// Swallow this as it means the framework is stopping
+			}
+		}
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "SharedServiceConfigurations" + shared;
+	}
+
+	/**
+	 * A reference to a shared configuration. Closing it leaves the shared
+	 * configuration open.
+	 */
+	static class SharedReference<S> extends CloseableServiceConfiguration<S> {
+		SharedReference(ServiceConfiguration<S> configuration, Instant deadline,
+			Consumer<? super ServiceArrival> arrivalListener) {
+			super(configuration, deadline, arrivalListener);
+		}
+
+		@Override
+		public void close() {}
+	}
+}
@@ -0,0 +1,92 @@
+/*******************************************************************************
+ * Copyright (c) Contributors to the Eclipse Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+
+package org.osgi.test.junit5.test;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.platform.engine.discovery.DiscoverySelectors.selectClass;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.engine.JupiterTestEngine;
+import org.junit.platform.testkit.engine.EngineTestKit;
+
+/**
+ * Runs a test class with a report configured and reads the report file.
+ */
+public abstract class AbstractReportTest {
+	private final String	reportParameter;
+	private final Class<?>	reportedClass;
+	private final long		succeeded;
+
+	protected AbstractReportTest(String reportParameter, Class<?> reportedClass, long succeeded) {
+		this.reportParameter = reportParameter;
+		this.reportedClass = reportedClass;
+		this.succeeded = succeeded;
+	}
+
+	/**
+	 * Run the reported class with the report written to a CSV file in a
+	 * sub-directory which does not exist yet.
+	 *
+	 * @param parameters additional configuration parameter names and values
+	 * @return the lines of the report
+	 */
+	protected List<String> csvReport(Path dir, String... parameters) throws Exception {
+		return Files.readAllLines(execute(dir.resolve("reports/report.csv"), parameters), UTF_8);
+	}
+
+	/**
+	 * Run the reported class with the report written to a JSON file.
+	 *
+	 * @param parameters additional configuration parameter names and values
+	 * @return the report
+	 */
+	protected String jsonReport(Path dir, String... parameters) throws Exception {
+		return new String(Files.readAllBytes(execute(dir.resolve("report.json"), parameters)), UTF_8);
+	}
+
+	private Path execute(Path report, String... parameters) {
+		EngineTestKit.Builder builder = EngineTestKit.engine(new JupiterTestEngine())
+			.configurationParameter(reportParameter, report.toString());
+		for (int i = 0; i < parameters.length; i += 2) {
+			builder.configurationParameter(parameters[i], parameters[i + 1]);
+		}
+		builder.selectors(selectClass(reportedClass))
+			.execute()
+			.testEvents()
+			.assertStatistics(stats -> stats.succeeded(succeeded));
+		return report;
+	}
+
+	@Test
+	void noReport_byDefault(@TempDir Path dir) throws Exception {
+		EngineTestKit.engine(new JupiterTestEngine())
+			.selectors(selectClass(reportedClass))
+			.execute()
+			.testEvents()
+			.assertStatistics(stats -> stats.succeeded(succeeded));
+
+		assertThat(dir).isEmptyDirectory();
+	}
+}
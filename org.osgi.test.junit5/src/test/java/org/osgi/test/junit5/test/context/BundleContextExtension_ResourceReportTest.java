@@ -0,0 +1,82 @@
+/*******************************************************************************
+ * Copyright (c) Contributors to the Eclipse Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+
+package org.osgi.test.junit5.test.context;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceListener;
+import org.osgi.test.common.annotation.InjectBundleContext;
+import org.osgi.test.junit5.context.BundleContextExtension;
+import org.osgi.test.junit5.test.AbstractReportTest;
+import org.osgi.test.junit5.test.types.Foo;
+
+public class BundleContextExtension_ResourceReportTest extends AbstractReportTest {
+
+	public BundleContextExtension_ResourceReportTest() {
+		super(BundleContextExtension.RESOURCE_REPORT, LeakingTest.class, 2);
+	}
+
+	static class LeakingTest {
+		@InjectBundleContext
+		BundleContext bundleContext;
+
+		@Test
+		void leaks() {
+			bundleContext.registerService(Foo.class, new Foo() {}, null);
+			ServiceListener listener = event -> {};
+			bundleContext.addServiceListener(listener);
+		}
+
+		@Test
+		void cleansUp() {
+			bundleContext.registerService(Foo.class, new Foo() {}, null)
+				.unregister();
+		}
+	}
+
+	@Test
+	void csvReport_listsLeaksPerScope(@TempDir Path dir) throws Exception {
+		List<String> lines = csvReport(dir, BundleContextExtension.RESOURCE_REPORT_SAMPLING, "0");
+		assertThat(lines).first()
+			.isEqualTo("scope,kind,acquired,leaked,types");
+		assertThat(lines).anySatisfy(line -> assertThat(line).contains("leaks()")
+			.contains(",SERVICE_REGISTRATION,1,1,")
+			.contains(Foo.class.getName() + "=1"))
+			.anySatisfy(line -> assertThat(line).contains("leaks()")
+				.contains(",SERVICE_LISTENER,1,1,"))
+			.anySatisfy(line -> assertThat(line).contains("cleansUp()")
+				.contains(",SERVICE_REGISTRATION,1,0,"));
+	}
+
+	@Test
+	void jsonReport_aggregatesAndSamplesLeakSites(@TempDir Path dir) throws Exception {
+		String json = jsonReport(dir, BundleContextExtension.RESOURCE_REPORT_SAMPLING, "1");
+		assertThat(json).startsWith("{")
+			.contains("\"total\": {", "\"scopes\": [",
+				"\"SERVICE_REGISTRATION\": {\"acquired\": 2, \"leaked\": 1, \"types\": {\"" + Foo.class.getName()
+					+ "\": 1}",
+				LeakingTest.class.getName() + ".leaks(", "\"refreshTimeouts\": 0, \"teardownMicros\": {\"nested\": ");
+	}
+}
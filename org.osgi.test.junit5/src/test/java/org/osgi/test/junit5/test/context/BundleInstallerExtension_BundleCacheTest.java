@@ -0,0 +1,103 @@
+/*******************************************************************************
+ * Copyright (c) Contributors to the Eclipse Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+
+package org.osgi.test.junit5.test.context;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.platform.engine.discovery.DiscoverySelectors.selectClass;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.engine.JupiterTestEngine;
+import org.junit.platform.testkit.engine.EngineTestKit;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.FrameworkUtil;
+import org.osgi.test.common.annotation.InjectInstalledBundle;
+import org.osgi.test.junit5.context.BundleInstallerExtension;
+
+public class BundleInstallerExtension_BundleCacheTest {
+	static final List<Bundle> installed = new CopyOnWriteArrayList<>();
+
+	@BeforeEach
+	void beforeEach() {
+		installed.clear();
+	}
+
+	static class FirstTest {
+		@InjectInstalledBundle(value = "tb1.jar", start = true)
+		Bundle bundle;
+
+		@Test
+		void test() {
+			assertThat(bundle.getState()).isEqualTo(Bundle.ACTIVE);
+			installed.add(bundle);
+		}
+	}
+
+	static class SecondTest {
+		@InjectInstalledBundle(value = "tb1.jar", start = true)
+		Bundle bundle;
+
+		@Test
+		void test() {
+			assertThat(bundle.getState()).isEqualTo(Bundle.ACTIVE);
+			installed.add(bundle);
+		}
+	}
+
+	private static void execute(boolean cache) {
+		EngineTestKit.engine(new JupiterTestEngine())
+			.configurationParameter(BundleInstallerExtension.BUNDLE_CACHE, Boolean.toString(cache))
+			.selectors(selectClass(FirstTest.class), selectClass(SecondTest.class))
+			.execute()
+			.testEvents()
+			.assertStatistics(stats -> stats.started(2)
+				.succeeded(2));
+	}
+
+	@Test
+	void cache_installsOnceAcrossTestClasses() {
+		execute(true);
+
+		assertThat(installed).hasSize(2);
+		assertThat(installed.get(0)).as("cached bundle")
+			.isSameAs(installed.get(1));
+		assertThat(installed.get(0)
+			.getState()).as("uninstalled at the end of the test plan")
+				.isEqualTo(Bundle.UNINSTALLED);
+		BundleContext bundleContext = FrameworkUtil.getBundle(getClass())
+			.getBundleContext();
+		assertThat(bundleContext.getBundle(installed.get(0)
+			.getLocation())).isNull();
+	}
+
+	@Test
+	void noCache_installsPerTestClass() {
+		execute(false);
+
+		assertThat(installed).hasSize(2);
+		assertThat(installed.get(0)
+			.getBundleId()).isNotEqualTo(installed.get(1)
+				.getBundleId());
+		assertThat(installed).allSatisfy(bundle -> assertThat(bundle.getState()).isEqualTo(Bundle.UNINSTALLED));
+	}
+}
@@ -0,0 +1,102 @@
+/*******************************************************************************
+ * Copyright (c) Contributors to the Eclipse Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+
+package org.osgi.test.junit5.test.context;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.test.common.annotation.InjectBundleContext;
+import org.osgi.test.common.annotation.InjectBundleInstaller;
+import org.osgi.test.common.annotation.InjectInstalledBundle;
+import org.osgi.test.common.install.BundleInstaller;
+import org.osgi.test.common.install.InstallTiming;
+import org.osgi.test.junit5.context.BundleInstallerExtension;
+import org.osgi.test.junit5.test.AbstractReportTest;
+
+public class BundleInstallerExtension_InstallTimingReportTest extends AbstractReportTest {
+
+	public BundleInstallerExtension_InstallTimingReportTest() {
+		super(BundleInstallerExtension.INSTALL_TIMING_REPORT, InstallingTest.class, 1);
+	}
+
+	static class InstallingTest {
+		@InjectInstalledBundle(value = "tb1.jar", start = true)
+		Bundle bundle;
+
+		@Test
+		void installs(@InjectBundleInstaller
+		BundleInstaller bundleInstaller) {
+			bundleInstaller.installBundle("innerTest.jar", false);
+		}
+	}
+
+	@InjectBundleContext
+	BundleContext bundleContext;
+
+	@Test
+	void recorder_receivesEachStep() {
+		List<InstallTiming> timings = new ArrayList<>();
+		Bundle bundle = new BundleInstaller(bundleContext, new BundleInstaller.Options().recorder(timings::add))
+			.installBundle("tb1.jar", true);
+
+		assertThat(timings).singleElement()
+			.satisfies(timing -> {
+				assertThat(timing.getSymbolicName()).isEqualTo(bundle.getSymbolicName());
+				assertThat(timing.getLocation()).isEqualTo(bundle.getLocation());
+				assertThat(timing.getSize()).isPositive();
+				assertThat(timing.getOpenTime()).isPositive();
+				assertThat(timing.getInstallTime()).isPositive();
+				assertThat(timing.getResolveTime()).isPositive();
+				assertThat(timing.getStartTime()).isPositive();
+				assertThat(timing.getTotalTime()).isEqualTo(timing.getOpenTime()
+					.plus(timing.getInstallTime())
+					.plus(timing.getResolveTime())
+					.plus(timing.getStartTime()));
+			});
+	}
+
+	@Test
+	void csvReport_listsBundlesPerTestClass(@TempDir Path dir) throws Exception {
+		List<String> lines = csvReport(dir);
+		assertThat(lines).first()
+			.isEqualTo("testClass,symbolicName,location,sizeBytes,openMs,installMs,resolveMs,startMs,totalMs");
+		assertThat(lines).hasSize(3)
+			.anySatisfy(line -> assertThat(line).startsWith("\"" + InstallingTest.class.getName() + "\",")
+				.contains("\"org.osgi.test.junit5.tb1\""))
+			.anySatisfy(line -> assertThat(line).startsWith("\"" + InstallingTest.class.getName() + "\",")
+				.contains("\"org.osgi.test.junit5.innerTest\"")
+				.as("not resolved or started")
+				.contains(",0.000,0.000,"));
+	}
+
+	@Test
+	void jsonReport_groupsByTestClass(@TempDir Path dir) throws Exception {
+		String json = jsonReport(dir);
+		assertThat(json).startsWith("{")
+			.contains("\"classes\": [", "\"testClass\": \"" + InstallingTest.class.getName() + "\"",
+				"\"symbolicName\": \"org.osgi.test.junit5.tb1\"", "\"sizeBytes\": ");
+	}
+}
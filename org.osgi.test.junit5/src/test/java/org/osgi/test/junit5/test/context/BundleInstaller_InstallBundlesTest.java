@@ -0,0 +1,97 @@
+/*******************************************************************************
+ * Copyright (c) Contributors to the Eclipse Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+
+package org.osgi.test.junit5.test.context;
+
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.net.URL;
+
+import org.junit.jupiter.api.Test;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.FrameworkUtil;
+import org.osgi.test.common.annotation.InjectBundleInstaller;
+import org.osgi.test.common.install.BundleInstaller;
+import org.osgi.test.common.install.BundleInstaller.EmbeddedLocation;
+import org.osgi.test.common.install.BundleInstaller.InstallResult;
+
+public class BundleInstaller_InstallBundlesTest {
+
+	@InjectBundleInstaller
+	BundleInstaller bundleInstaller;
+
+	@Test
+	void installBundles_startsInDependencyOrder() throws Exception {
+		EmbeddedLocation tb2 = EmbeddedLocation.of(bundleInstaller.getBundleContext(), "tb2.jar");
+		EmbeddedLocation tb1 = EmbeddedLocation.of(bundleInstaller.getBundleContext(), "tb1.jar");
+
+		InstallResult result = bundleInstaller.installBundles(asList(tb2, tb1.getURL(bundleInstaller.getBundleContext())));
+
+		assertThat(result.isResolved()).isTrue();
+		assertThat(result.getBundles()).extracting(Bundle::getSymbolicName)
+			.containsExactly("org.osgi.test.junit5.tb2", "org.osgi.test.junit5.tb1");
+		assertThat(result.getStartOrder()).extracting(Bundle::getSymbolicName)
+			.containsExactly("org.osgi.test.junit5.tb1", "org.osgi.test.junit5.tb2");
+		assertThat(result.getBundles()).allSatisfy(bundle -> {
+			assertThat(bundle.getState()).isEqualTo(Bundle.ACTIVE);
+			assertThat(result.getInstallTime(bundle)).isPositive();
+			assertThat(result.getStartTime(bundle)).isPositive();
+		});
+		assertThat(result.getElapsed()).isGreaterThanOrEqualTo(result.getResolveTime());
+	}
+
+	@Test
+	void installBundles_withoutStart_resolvesOnly() {
+		InstallResult result = bundleInstaller.installBundles(
+			asList(EmbeddedLocation.of(bundleInstaller.getBundleContext(), "tb2.jar"),
+				EmbeddedLocation.of(bundleInstaller.getBundleContext(), "tb1.jar")),
+			false);
+
+		assertThat(result.isResolved()).isTrue();
+		assertThat(result.getStartOrder()).isEmpty();
+		assertThat(result.getBundles()).allSatisfy(bundle -> {
+			assertThat(bundle.getState()).isEqualTo(Bundle.RESOLVED);
+			assertThat(result.getStartTime(bundle)).isZero();
+		});
+	}
+
+	@Test
+	void installBundles_failure_uninstallsInstalledBundles() throws Exception {
+		BundleContext bundleContext = FrameworkUtil.getBundle(getClass())
+			.getBundleContext();
+		URL tb1 = EmbeddedLocation.of(bundleContext, "tb1.jar")
+			.getURL(bundleContext);
+		URL missing = new URL(tb1, "missing.jar");
+
+		assertThatThrownBy(() -> new BundleInstaller(bundleContext).installBundles(asList(tb1, missing)))
+			.isInstanceOf(IOException.class);
+
+		assertThat(bundleContext.getBundle(tb1.toString())).as("installed before the failure")
+			.isNull();
+	}
+
+	@Test
+	void installBundles_rejectsOtherLocations() {
+		assertThatIllegalArgumentException().isThrownBy(() -> bundleInstaller.installBundles(asList("tb1.jar")));
+	}
+}
@@ -0,0 +1,208 @@
+/*******************************************************************************
+ * Copyright (c) Contributors to the Eclipse Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+
+package org.osgi.test.junit5.test.context;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.platform.engine.discovery.DiscoverySelectors.selectClass;
+import static org.osgi.test.junit5.test.TestUtil.getBundle;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.engine.JupiterTestEngine;
+import org.junit.platform.engine.reporting.ReportEntry;
+import org.junit.platform.testkit.engine.EngineTestKit;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.Constants;
+import org.osgi.framework.FrameworkUtil;
+import org.osgi.framework.startlevel.BundleStartLevel;
+import org.osgi.framework.startlevel.FrameworkStartLevel;
+import org.osgi.test.common.annotation.InjectBundleContext;
+import org.osgi.test.common.context.FrameworkSnapshot;
+import org.osgi.test.junit5.context.FrameworkStateExtension;
+import org.osgi.test.junit5.test.types.Foo;
+
+public class FrameworkStateExtensionTest {
+	static final String	INSTALLED	= "framework.state.installed";
+	static final String	EXISTING	= "framework.state.existing";
+
+	BundleContext		bundleContext;
+	Bundle				existing;
+
+	@BeforeEach
+	void beforeEach() throws Exception {
+		bundleContext = FrameworkUtil.getBundle(getClass())
+			.getBundleContext();
+		existing = bundleContext.installBundle(EXISTING, getBundle("tb1.jar"));
+		existing.start();
+	}
+
+	@AfterEach
+	void afterEach() throws Exception {
+		existing.uninstall();
+	}
+
+	@ExtendWith(FrameworkStateExtension.class)
+	static class SideEffectsTest {
+		@Test
+		void test() throws Exception {
+			BundleContext bundleContext = FrameworkUtil.getBundle(getClass())
+				.getBundleContext();
+			bundleContext.installBundle(INSTALLED, getBundle("innerTest.jar"))
+				.start();
+			Bundle existing = bundleContext.getBundle(EXISTING);
+			existing.stop();
+			existing.adapt(BundleStartLevel.class)
+				.setStartLevel(existing.adapt(BundleStartLevel.class)
+					.getStartLevel() + 1);
+		}
+	}
+
+	@ExtendWith(FrameworkStateExtension.class)
+	static class InjectedContextTest {
+		@InjectBundleContext
+		static BundleContext bundleContext;
+
+		@Test
+		void test() throws Exception {
+			bundleContext.installBundle(INSTALLED, getBundle("innerTest.jar"))
+				.start();
+			bundleContext.registerService(Foo.class, new Foo() {}, null);
+		}
+	}
+
+	@Test
+	void afterAll_ignoresResourcesOfInjectedBundleContext() throws Exception {
+		EngineTestKit.engine(new JupiterTestEngine())
+			.selectors(selectClass(InjectedContextTest.class))
+			.configurationParameter(FrameworkStateExtension.FAIL_ON_CHANGE, "true")
+			.execute()
+			.allEvents()
+			.assertStatistics(stats -> stats.failed(0)
+				.reportingEntryPublished(0));
+
+		assertThat(bundleContext.getBundle(INSTALLED)).as("installed bundle")
+			.isNull();
+	}
+
+	@Test
+	void afterAll_restoresFrameworkState() throws Exception {
+		int startLevel = existing.adapt(BundleStartLevel.class)
+			.getStartLevel();
+
+		EngineTestKit.engine(new JupiterTestEngine())
+			.selectors(selectClass(SideEffectsTest.class))
+			.execute()
+			.testEvents()
+			.assertStatistics(stats -> stats.succeeded(1));
+
+		assertThat(bundleContext.getBundle(INSTALLED)).as("installed bundle")
+			.isNull();
+		assertThat(existing.getState()).as("stopped bundle")
+			.isEqualTo(Bundle.ACTIVE);
+		assertThat(existing.adapt(BundleStartLevel.class)
+			.getStartLevel()).as("start level")
+				.isEqualTo(startLevel);
+	}
+
+	@Test
+	void afterAll_reportsRestoredChanges() throws Exception {
+		EngineTestKit.engine(new JupiterTestEngine())
+			.selectors(selectClass(SideEffectsTest.class))
+			.execute()
+			.containerEvents()
+			.assertStatistics(stats -> stats.succeeded(2)
+				.reportingEntryPublished(1))
+			.reportingEntryPublished()
+			.map(event -> event.getRequiredPayload(ReportEntry.class))
+			.forEach(entry -> assertThat(entry.getKeyValuePairs()).containsKey(FrameworkStateExtension.REPORT_KEY)
+				.hasEntrySatisfying(FrameworkStateExtension.REPORT_KEY,
+					diff -> assertThat(diff).contains("innerTest")));
+	}
+
+	@Test
+	void afterAll_failsOnChangeWhenConfigured() throws Exception {
+		EngineTestKit.engine(new JupiterTestEngine())
+			.selectors(selectClass(SideEffectsTest.class))
+			.configurationParameter(FrameworkStateExtension.FAIL_ON_CHANGE, "true")
+			.execute()
+			.containerEvents()
+			.assertStatistics(stats -> stats.failed(1));
+
+		assertThat(bundleContext.getBundle(INSTALLED)).as("installed bundle")
+			.isNull();
+	}
+
+	@Test
+	void restore_keepsAutostartOfBundlesStartedByStartLevel() throws Exception {
+		FrameworkStartLevel frameworkStartLevel = bundleContext.getBundle(Constants.SYSTEM_BUNDLE_LOCATION)
+			.adapt(FrameworkStartLevel.class);
+		int startLevel = frameworkStartLevel.getStartLevel();
+		BundleStartLevel bundleStartLevel = existing.adapt(BundleStartLevel.class);
+		bundleStartLevel.setStartLevel(startLevel + 1);
+		setStartLevel(frameworkStartLevel, startLevel);
+		assertThat(existing.getState()).as("above the start level")
+			.isEqualTo(Bundle.RESOLVED);
+
+		FrameworkSnapshot snapshot = FrameworkSnapshot.take(bundleContext);
+		setStartLevel(frameworkStartLevel, startLevel + 1);
+		assertThat(existing.getState()).as("started by the start level")
+			.isEqualTo(Bundle.ACTIVE);
+
+		assertThat(snapshot.restore()
+			.isFrameworkStartLevelChanged()).isTrue();
+		assertThat(frameworkStartLevel.getStartLevel()).isEqualTo(startLevel);
+		assertThat(existing.getState()).as("stopped by the start level")
+			.isEqualTo(Bundle.RESOLVED);
+		assertThat(bundleStartLevel.isPersistentlyStarted()).as("autostart setting")
+			.isTrue();
+		assertThat(snapshot.diff()).as("restored")
+			.matches(FrameworkSnapshot.Diff::isEmpty, "is empty");
+	}
+
+	static void setStartLevel(FrameworkStartLevel frameworkStartLevel, int startLevel) throws Exception {
+		CountDownLatch changed = new CountDownLatch(1);
+		frameworkStartLevel.setStartLevel(startLevel, event -> changed.countDown());
+		assertThat(changed.await(10, TimeUnit.SECONDS)).as("start level changed")
+			.isTrue();
+	}
+
+	@Test
+	void diff_listsOnlyChanges() throws Exception {
+		FrameworkSnapshot snapshot = FrameworkSnapshot.take(bundleContext);
+		assertThat(snapshot.diff()).as("unchanged")
+			.matches(FrameworkSnapshot.Diff::isEmpty, "is empty");
+
+		existing.stop();
+		FrameworkSnapshot.Diff diff = snapshot.diff();
+		assertThat(diff.getStateChangedBundles()).containsExactly(existing);
+		assertThat(diff.getInstalledBundles()).isEmpty();
+
+		assertThat(snapshot.restore()
+			.getStateChangedBundles()).containsExactly(existing);
+		assertThat(existing.getState()).isEqualTo(Bundle.ACTIVE);
+		assertThat(snapshot.diff()).as("restored")
+			.matches(FrameworkSnapshot.Diff::isEmpty, "is empty");
+	}
+}
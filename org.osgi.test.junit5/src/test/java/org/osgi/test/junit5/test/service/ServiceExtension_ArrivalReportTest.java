@@ -0,0 +1,74 @@
+/*******************************************************************************
+ * Copyright (c) Contributors to the Eclipse Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+
+package org.osgi.test.junit5.test.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.osgi.test.common.annotation.InjectService;
+import org.osgi.test.junit5.service.ServiceExtension;
+import org.osgi.test.junit5.test.AbstractReportTest;
+import org.osgi.test.junit5.test.types.Bar;
+import org.osgi.test.junit5.test.types.Foo;
+
+public class ServiceExtension_ArrivalReportTest extends AbstractReportTest {
+
+	public ServiceExtension_ArrivalReportTest() {
+		super(ServiceExtension.ARRIVAL_REPORT, ReportedTest.class, 1);
+	}
+
+	static class ReportedTest {
+		@InjectService
+		Bar bar;
+
+		@Test
+		void test(@InjectService(cardinality = 0) Foo foo) {
+			assertThat(bar).isNotNull();
+		}
+	}
+
+	@Test
+	void csvReport_listsEachWait(@TempDir Path dir) throws Exception {
+		List<String> lines = csvReport(dir, ServiceExtension.ARRIVAL_REPORT_TOP, "1");
+		assertThat(lines).hasSize(3)
+			.first()
+			.isEqualTo("scope,filter,cardinality,timeoutMs,waitedMs,headroomMs,trackingCount,arrived");
+		assertThat(lines).anySatisfy(line -> assertThat(line).contains(Bar.class.getName())
+			.contains(ReportedTest.class.getSimpleName())
+			.contains(",1,200,")
+			.endsWith(",1,true"))
+			.anySatisfy(line -> assertThat(line).contains(Foo.class.getName())
+				.contains(",0,200,")
+				.endsWith(",true"));
+	}
+
+	@Test
+	void jsonReport_summarizesSlowest(@TempDir Path dir) throws Exception {
+		String json = jsonReport(dir, ServiceExtension.ARRIVAL_REPORT_TOP, "1");
+		assertThat(json).startsWith("{")
+			.contains("\"slowest\": [", "\"arrivals\": [", Bar.class.getName(), Foo.class.getName(),
+				"\"arrived\": true");
+		assertThat(json.split("\"waitedMs\"", -1)).as("1 slowest and 2 arrivals")
+			.hasSize(4);
+	}
+}
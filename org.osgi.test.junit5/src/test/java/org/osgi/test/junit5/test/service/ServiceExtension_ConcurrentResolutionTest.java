@@ -0,0 +1,98 @@
+/*******************************************************************************
+ * Copyright (c) Contributors to the Eclipse Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+
+package org.osgi.test.junit5.test.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.platform.engine.discovery.DiscoverySelectors.selectClass;
+import static org.junit.platform.testkit.engine.EventConditions.finishedWithFailure;
+import static org.junit.platform.testkit.engine.TestExecutionResultConditions.instanceOf;
+import static org.junit.platform.testkit.engine.TestExecutionResultConditions.message;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.engine.JupiterTestEngine;
+import org.junit.platform.testkit.engine.EngineTestKit;
+import org.junit.platform.testkit.engine.Events;
+import org.osgi.test.common.annotation.InjectService;
+import org.osgi.test.junit5.service.ServiceExtension;
+import org.osgi.test.junit5.test.types.Bar;
+import org.osgi.test.junit5.test.types.Foo;
+
+public class ServiceExtension_ConcurrentResolutionTest extends AbstractServiceExtensionTest {
+
+	static final AtomicReference<Object[]> injected = new AtomicReference<>();
+
+	static class LateServicesTest {
+		@InjectService(filter = "(case=successWhenLateServices)(late=1)", timeout = 2000)
+		Foo	foo1;
+		@InjectService(filter = "(case=successWhenLateServices)(late=2)", timeout = 2000)
+		Foo	foo2;
+
+		@Test
+		void test(@InjectService(filter = "(case=successWhenLateServices)(late=3)", timeout = 2000)
+		Foo foo3) {
+			injected.set(new Object[] {
+				foo1, foo2, foo3
+			});
+		}
+	}
+
+	Events execute(Class<?> testClass) {
+		return EngineTestKit.engine(new JupiterTestEngine())
+			.configurationParameter(ServiceExtension.CONCURRENT_RESOLUTION, "true")
+			.selectors(selectClass(testClass))
+			.execute()
+			.testEvents();
+	}
+
+	@Test
+	public void successWhenLateServices() throws Exception {
+		final Foo afoo = new Foo() {};
+		final Foo bfoo = new Foo() {};
+		final Foo cfoo = new Foo() {};
+		injected.set(null);
+
+		executor.schedule(() -> schedule(afoo, "late", "1"), 200, TimeUnit.MILLISECONDS);
+		executor.schedule(() -> schedule(bfoo, "late", "2"), 100, TimeUnit.MILLISECONDS);
+		executor.schedule(() -> schedule(cfoo, "late", "3"), 300, TimeUnit.MILLISECONDS);
+
+		execute(LateServicesTest.class).assertStatistics(stats -> stats.succeeded(1));
+
+		assertThat(injected.get()).containsExactly(afoo, bfoo, cfoo);
+	}
+
+	static class MissingServiceTest {
+		@InjectService
+		Bar	bar;
+		@InjectService(filter = "(case=failureIsReportedPerField)", timeout = 100)
+		Foo	foo;
+
+		@Test
+		void test() {}
+	}
+
+	@Test
+	public void failureIsReportedPerField() throws Exception {
+		execute(MissingServiceTest.class).assertThatEvents()
+			.haveExactly(1, finishedWithFailure(instanceOf(AssertionError.class),
+				message(m -> m.contains("(case=failureIsReportedPerField)") && m.contains("1/1 services"))));
+	}
+}
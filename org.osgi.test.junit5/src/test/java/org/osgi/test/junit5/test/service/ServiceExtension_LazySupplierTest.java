@@ -0,0 +1,109 @@
+/*******************************************************************************
+ * Copyright (c) Contributors to the Eclipse Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+
+package org.osgi.test.junit5.test.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.platform.engine.discovery.DiscoverySelectors.selectClass;
+import static org.junit.platform.testkit.engine.EventConditions.finishedWithFailure;
+import static org.junit.platform.testkit.engine.TestExecutionResultConditions.instanceOf;
+import static org.junit.platform.testkit.engine.TestExecutionResultConditions.message;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.engine.JupiterTestEngine;
+import org.junit.platform.testkit.engine.EngineTestKit;
+import org.junit.platform.testkit.engine.Events;
+import org.osgi.test.common.annotation.InjectService;
+import org.osgi.test.junit5.test.types.Foo;
+
+public class ServiceExtension_LazySupplierTest extends AbstractServiceExtensionTest {
+
+	static final AtomicReference<Object> injected = new AtomicReference<>();
+
+	Events execute(Class<?> testClass) {
+		return EngineTestKit.engine(new JupiterTestEngine())
+			.selectors(selectClass(testClass))
+			.execute()
+			.testEvents();
+	}
+
+	static class UnusedSupplierTest {
+		@InjectService(filter = "(case=unusedSupplier_doesNotWait)", timeout = 5000)
+		Supplier<Foo> foo;
+
+		@Test
+		void test(@InjectService(filter = "(case=unusedSupplier_doesNotWait)", timeout = 5000)
+		Supplier<Foo> fooParam) {
+			injected.set(fooParam);
+		}
+	}
+
+	@Test
+	public void unusedSupplier_doesNotWait() throws Exception {
+		injected.set(null);
+		long start = System.nanoTime();
+
+		execute(UnusedSupplierTest.class).assertStatistics(stats -> stats.succeeded(1));
+
+		assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(5000L);
+		assertThat(injected.get()).isInstanceOf(Supplier.class);
+	}
+
+	static class LateServiceTest {
+		@InjectService(filter = "(case=lateService_isWaitedForOnFirstUse)", timeout = 2000)
+		Supplier<? extends Foo> foo;
+
+		@Test
+		void test() {
+			injected.set(foo.get());
+		}
+	}
+
+	@Test
+	public void lateService_isWaitedForOnFirstUse() throws Exception {
+		final Foo afoo = new Foo() {};
+		injected.set(null);
+
+		executor.schedule(() -> schedule(afoo), 200, TimeUnit.MILLISECONDS);
+
+		execute(LateServiceTest.class).assertStatistics(stats -> stats.succeeded(1));
+
+		assertThat(injected.get()).isSameAs(afoo);
+	}
+
+	static class MissingServiceTest {
+		@InjectService(filter = "(case=missingService_failsOnFirstUse)", timeout = 100)
+		Supplier<Foo> foo;
+
+		@Test
+		void test() {
+			foo.get();
+		}
+	}
+
+	@Test
+	public void missingService_failsOnFirstUse() throws Exception {
+		execute(MissingServiceTest.class).assertThatEvents()
+			.haveExactly(1, finishedWithFailure(instanceOf(AssertionError.class),
+				message(m -> m.contains("(case=missingService_failsOnFirstUse)") && m.contains("1/1 services"))));
+	}
+}
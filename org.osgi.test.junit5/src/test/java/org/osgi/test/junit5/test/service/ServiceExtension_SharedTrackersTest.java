@@ -0,0 +1,134 @@
+/*******************************************************************************
+ * Copyright (c) Contributors to the Eclipse Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+
+package org.osgi.test.junit5.test.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.platform.engine.discovery.DiscoverySelectors.selectClass;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.engine.JupiterTestEngine;
+import org.junit.platform.testkit.engine.EngineTestKit;
+import org.osgi.test.common.annotation.InjectService;
+import org.osgi.test.common.service.ServiceAware;
+import org.osgi.test.junit5.service.ServiceExtension;
+import org.osgi.test.junit5.test.types.Bar;
+
+public class ServiceExtension_SharedTrackersTest {
+
+	static final AtomicReference<ServiceAware<Bar>>	first	= new AtomicReference<>();
+	static final AtomicReference<ServiceAware<Bar>>	second	= new AtomicReference<>();
+	static final AtomicReference<ServiceAware<Bar>>	nested	= new AtomicReference<>();
+
+	static class FirstTest {
+		@InjectService
+		ServiceAware<Bar> bar;
+
+		@Test
+		void test() {
+			assertThat(bar.getService()).isNotNull();
+			first.set(bar);
+		}
+	}
+
+	static class SecondTest {
+		@InjectService
+		ServiceAware<Bar> bar;
+
+		@Test
+		void test() {
+			assertThat(bar.getService()).isNotNull();
+			second.set(bar);
+		}
+
+		@Nested
+		class NestedTest {
+			@InjectService
+			ServiceAware<Bar> nestedBar;
+
+			@Test
+			void test() {
+				assertThat(nestedBar.getService()).isNotNull();
+				nested.set(nestedBar);
+			}
+		}
+	}
+
+	@BeforeEach
+	void beforeEach() {
+		first.set(null);
+		second.set(null);
+		nested.set(null);
+	}
+
+	EngineTestKit.Builder engine() {
+		return EngineTestKit.engine(new JupiterTestEngine())
+			.selectors(selectClass(FirstTest.class), selectClass(SecondTest.class));
+	}
+
+	@Test
+	void sharedTrackers_areReusedAcrossClassesAndScopes() {
+		engine().configurationParameter(ServiceExtension.SHARED_TRACKERS, "true")
+			.execute()
+			.testEvents()
+			.assertStatistics(stats -> stats.succeeded(3));
+
+		assertThat(first.get()).isNotNull()
+			.isSameAs(second.get())
+			.isSameAs(nested.get());
+	}
+
+	@Test
+	void sharedTrackers_reportArrivalsPerScope(@TempDir Path dir) throws Exception {
+		Path report = dir.resolve("arrivals.csv");
+		engine().configurationParameter(ServiceExtension.SHARED_TRACKERS, "true")
+			.configurationParameter(ServiceExtension.ARRIVAL_REPORT, report.toString())
+			.execute()
+			.testEvents()
+			.assertStatistics(stats -> stats.succeeded(3));
+
+		List<String> lines = Files.readAllLines(report);
+		assertThat(lines).anySatisfy(line -> assertThat(line).contains(FirstTest.class.getSimpleName())
+			.endsWith(",true"))
+			.anySatisfy(line -> assertThat(line).contains(SecondTest.class.getSimpleName())
+				.doesNotContain(SecondTest.NestedTest.class.getSimpleName())
+				.endsWith(",true"))
+			.anySatisfy(line -> assertThat(line).contains(SecondTest.NestedTest.class.getSimpleName())
+				.endsWith(",true"));
+	}
+
+	@Test
+	void trackers_areNotSharedByDefault() {
+		engine().execute()
+			.testEvents()
+			.assertStatistics(stats -> stats.succeeded(3));
+
+		assertThat(first.get()).isNotNull()
+			.isNotSameAs(second.get());
+		assertThat(second.get()).isNotNull()
+			.isNotSameAs(nested.get());
+	}
+}